@@ -1,9 +1,15 @@
 # Configuration
 $baseUrl = "http://localhost:8081"  # Updated to match application.properties port
 $userId = 20  # Replace with actual user ID
-$collectionInterval = 60  # Changed from 300 to 60 seconds (1 minute)
-$maxBatchSize = 3  # Reduced batch size
+$collectionInterval = 60  # Sampling interval; samples are buffered and uploaded on $uploadInterval
+$maxBatchSize = 3  # Until the server sends a control block
+$uploadInterval = 60  # Seconds between uploads; adjusted by the server's control block
+$useGzip = $false
+$maxPending = 720  # Frames (one per sample) kept while the server is unreachable; oldest are dropped beyond this
+$protocolVersion = 2  # Asks /api/logs/batch and /api/logs/delta for a control block (see CollectorControlService)
+$useDelta = $true  # Send only opened/changed/closed processes; falls back to full batches on servers without /api/logs/delta
 $maxRetries = 3    # Number of retries for failed requests
+$deviceFile = Join-Path $PSScriptRoot "collector-device.json"  # Device key from enrollment; keep private
 
 # Function to get authentication token
 function Get-AuthToken {
@@ -17,6 +23,60 @@ function Get-AuthToken {
     return $loginResponse.token
 }
 
+# Enrolls this machine once (password login) and keeps the device key for signing requests
+function Get-DeviceCredentials {
+    if (Test-Path $deviceFile) {
+        return Get-Content $deviceFile -Raw | ConvertFrom-Json
+    }
+
+    $token = Get-AuthToken
+    $device = Invoke-RestMethod -Method Post `
+        -Uri "$baseUrl/api/devices/enroll?machineName=$([Uri]::EscapeDataString($env:COMPUTERNAME))" `
+        -Headers @{ "Authorization" = "Bearer $token" }
+    $device | ConvertTo-Json | Set-Content -Path $deviceFile
+    Write-Host "Enrolled device $($device.deviceId)" -ForegroundColor Green
+    return $device
+}
+
+# Signs METHOD, path, timestamp and the body's SHA-256 with the device key (see DeviceSignatureFilter)
+function Get-SignedHeaders {
+    param ($device, [string]$method, [string]$path, [byte[]]$body)
+
+    $timestamp = [DateTimeOffset]::UtcNow.ToUnixTimeSeconds()
+    $sha256 = [System.Security.Cryptography.SHA256]::Create()
+    $bodyHash = -join ($sha256.ComputeHash($body) | ForEach-Object { $_.ToString("x2") })
+    $canonical = "$method`n$path`n$timestamp`n$bodyHash"
+
+    $hmac = New-Object System.Security.Cryptography.HMACSHA256 (,[Convert]::FromBase64String($device.secret))
+    $signature = [Convert]::ToBase64String($hmac.ComputeHash([Text.Encoding]::UTF8.GetBytes($canonical)))
+
+    return @{
+        "X-Device-Id" = $device.deviceId
+        "X-Device-Timestamp" = "$timestamp"
+        "X-Device-Signature" = $signature
+    }
+}
+
+# Applies the server's recommended upload interval, batch size and compression
+function Update-Control {
+    param ($control)
+
+    if ($null -eq $control) { return }
+    $script:uploadInterval = [int]$control.uploadIntervalSeconds
+    $script:maxBatchSize = [Math]::Max(1, [int]$control.maxBatchSize)
+    $script:useGzip = $control.compression -eq "gzip"
+}
+
+function Compress-Body {
+    param ([byte[]]$bytes)
+
+    $buffer = New-Object System.IO.MemoryStream
+    $gzip = New-Object System.IO.Compression.GZipStream($buffer, [System.IO.Compression.CompressionMode]::Compress)
+    $gzip.Write($bytes, 0, $bytes.Length)
+    $gzip.Close()
+    return $buffer.ToArray()
+}
+
 # Function to collect process data
 function Get-ProcessData {
     param ($userId)
@@ -63,13 +123,33 @@ function Write-ProcessLog {
     Write-Host "----------------------------------------" -ForegroundColor Cyan
 }
 
-# New function to split array into chunks
-function Split-Array {
-    param([array]$array, [int]$chunkSize)
-    
-    for ($i = 0; $i -lt $array.Count; $i += $chunkSize) {
-        $end = [Math]::Min($i + $chunkSize - 1, $array.Count - 1)
-        , ($array[$i..$end])
+# Posts a signed JSON body; returns ok and the response, or the HTTP status on failure
+function Send-Signed {
+    param ($device, [string]$path, [string]$jsonBody)
+
+    try {
+        # Sign and send the exact bytes so the server computes the same body digest
+        $bodyBytes = [Text.Encoding]::UTF8.GetBytes($jsonBody)
+        if ($useGzip) {
+            $bodyBytes = Compress-Body -bytes $bodyBytes
+        }
+        $headers = Get-SignedHeaders -device $device -method "POST" -path $path -body $bodyBytes
+        $headers["X-Collector-Protocol"] = "$protocolVersion"
+        if ($useGzip) {
+            $headers["Content-Encoding"] = "gzip"
+        }
+
+        $response = Invoke-RestMethod -Method Post `
+            -Uri "$baseUrl$path" `
+            -Headers $headers `
+            -Body $bodyBytes `
+            -ContentType "application/json; charset=utf-8"
+        Update-Control -control $response.control
+        return @{ ok = $true; response = $response }
+    }
+    catch {
+        $status = if ($_.Exception.Response) { [int]$_.Exception.Response.StatusCode } else { 0 }
+        return @{ ok = $false; status = $status; error = $_.Exception.Message }
     }
 }
 
@@ -77,78 +157,166 @@ function Split-Array {
 function Send-ProcessBatch {
     param (
         [array]$batch,
-        [hashtable]$headers,
+        $device,
         [int]$retryCount = 0
     )
     
-    try {
-        # Ensure batch is wrapped in array brackets
-        $jsonBody = if ($batch.Count -eq 1) {
-            "[$($batch | ConvertTo-Json)]"
-        } else {
-            $batch | ConvertTo-Json -Depth 10
-        }
-        
-        Write-Host "Sending JSON payload:" -ForegroundColor Gray
-        Write-Host $jsonBody -ForegroundColor Gray
-        
-        $response = Invoke-RestMethod -Method Post `
-            -Uri "$baseUrl/api/logs/batch" `
-            -Headers $headers `
-            -Body $jsonBody `
-            -ContentType "application/json"
-        
+    # Ensure batch is wrapped in array brackets
+    $jsonBody = if ($batch.Count -eq 1) {
+        "[$($batch | ConvertTo-Json)]"
+    } else {
+        $batch | ConvertTo-Json -Depth 10
+    }
+    
+    Write-Host "Sending JSON payload:" -ForegroundColor Gray
+    Write-Host $jsonBody -ForegroundColor Gray
+
+    $result = Send-Signed -device $device -path "/api/logs/batch" -jsonBody $jsonBody
+    if ($result.ok) {
         Write-Host "Successfully sent batch with $($batch.Count) logs" -ForegroundColor Green
         return $true
     }
-    catch {
-        if ($retryCount -lt $maxRetries) {
-            Write-Host "Retry attempt $($retryCount + 1) for batch..." -ForegroundColor Yellow
-            Start-Sleep -Seconds 2
-            return Send-ProcessBatch -batch $batch -headers $headers -retryCount ($retryCount + 1)
+    # 429 and 503 mean the server is shedding load; retrying right away only adds to it
+    if ($result.status -eq 429 -or $result.status -eq 503) {
+        Write-Host "Server busy ($($result.status)), backing off" -ForegroundColor Yellow
+        return $false
+    }
+    if ($retryCount -lt $maxRetries) {
+        Write-Host "Retry attempt $($retryCount + 1) for batch..." -ForegroundColor Yellow
+        Start-Sleep -Seconds 2
+        return Send-ProcessBatch -batch $batch -device $device -retryCount ($retryCount + 1)
+    }
+    Write-Host "Failed to send batch after $maxRetries attempts" -ForegroundColor Red
+    Write-Host "Error: $($result.error)" -ForegroundColor Red
+    return $false
+}
+
+# Builds one frame of the delta protocol: processes opened, retitled and closed since the previous sample
+function New-DeltaFrame {
+    param ([array]$samples, [hashtable]$previous, [long]$sequence, [string]$sampledAt)
+
+    $current = @{}
+    $opened = @()
+    $changed = @()
+    foreach ($sample in $samples) {
+        $key = "$($sample.processId)"
+        $current[$key] = $sample
+        $before = $previous[$key]
+        if ($null -eq $before) {
+            $opened += @{ processId = $key; processName = $sample.processName; windowTitle = $sample.windowTitle; applicationPath = $sample.applicationPath }
+        }
+        elseif ($before.windowTitle -ne $sample.windowTitle -or $before.processName -ne $sample.processName) {
+            $changed += @{ processId = $key; processName = $sample.processName; windowTitle = $sample.windowTitle }
+        }
+    }
+    $closed = @($previous.Keys | Where-Object { -not $current.ContainsKey($_) })
+
+    return [PSCustomObject]@{
+        samples = $samples
+        state = $current
+        body = @{ epoch = $epoch; sequence = $sequence; sampledAt = $sampledAt; intervalSeconds = $collectionInterval; opened = $opened; changed = $changed; closed = $closed }
+    }
+}
+
+# Rewrites a frame to list every open process, which resets the server's snapshot for this device
+function Set-FullFrame {
+    param ($frame)
+
+    $opened = @($frame.samples | ForEach-Object {
+        @{ processId = "$($_.processId)"; processName = $_.processName; windowTitle = $_.windowTitle; applicationPath = $_.applicationPath }
+    })
+    $frame.body = @{ epoch = $frame.body.epoch; sequence = $frame.body.sequence; full = $true; sampledAt = $frame.body.sampledAt; intervalSeconds = $collectionInterval; opened = $opened; changed = @(); closed = @() }
+}
+
+# Sends frames from the front of the queue; returns the number the server accepted, or -1 to back off
+function Send-Frames {
+    param ([System.Collections.ArrayList]$frames, $device)
+
+    $count = [Math]::Min($maxBatchSize, $frames.Count)
+    if ($useDelta) {
+        $jsonBody = @{ frames = @($frames.GetRange(0, $count) | ForEach-Object { $_.body }) } | ConvertTo-Json -Depth 10
+        $result = Send-Signed -device $device -path "/api/logs/delta" -jsonBody $jsonBody
+        if ($result.ok) {
+            Write-Host "Sent $count frames, $($result.response.processTracksQueued) samples expanded" -ForegroundColor Green
+            return $count
+        }
+        if ($result.status -eq 409) {
+            # The server lost track of this device (restart, gap); the next attempt carries the full list
+            Write-Host "Server requested a full resync" -ForegroundColor Yellow
+            Set-FullFrame -frame $frames[0]
+            return 0
         }
-        else {
-            Write-Host "Failed to send batch after $maxRetries attempts" -ForegroundColor Red
-            Write-Host "Error: $($_.Exception.Message)" -ForegroundColor Red
-            Write-Host "Response: $($_.Exception.Response.StatusCode) $($_.Exception.Response.StatusDescription)" -ForegroundColor Red
-            return $false
+        if ($result.status -eq 404) {
+            Write-Host "Server does not support delta uploads, sending full batches" -ForegroundColor Yellow
+            $script:useDelta = $false
+            return 0
         }
+        Write-Host "Delta upload failed: $($result.status) $($result.error)" -ForegroundColor Red
+        return -1
+    }
+
+    $batch = @($frames.GetRange(0, $count) | ForEach-Object { $_.samples })
+    if ($batch.Count -eq 0 -or (Send-ProcessBatch -batch $batch -device $device)) {
+        return $count
     }
+    return -1
 }
 
 # Main collection loop
 try {
-    $token = Get-AuthToken
-    $headers = @{
-        "Authorization" = "Bearer $token"
-        "Content-Type" = "application/json"
-    }
+    $device = Get-DeviceCredentials
+    $userId = $device.userId  # The server only accepts logs for the user the device is enrolled for
     
     Write-Host "Starting process collection..." -ForegroundColor Green
     
+    $frames = New-Object System.Collections.ArrayList
+    $previousState = $null
+    $sequence = 0
+    # Sequences restart with every run; the epoch tells the server this run's full frame starts over
+    $epoch = [Guid]::NewGuid().ToString("N")
+    $nextUpload = Get-Date
+
     while ($true) {
-        $processData = Get-ProcessData -userId $userId
-        
-        # Split processes into smaller batches
-        $batches = Split-Array -array $processData -chunkSize $maxBatchSize
-        
-        Write-Host "`nCollected $($processData.Count) processes, split into $($batches.Count) batches" -ForegroundColor Cyan
-        
-        $batchNumber = 1
-        foreach ($batch in $batches) {
-            Write-Host "`nProcessing batch $batchNumber of $($batches.Count)" -ForegroundColor Yellow
-            
-            foreach ($process in $batch) {
-                Write-ProcessLog -ProcessData $process
+        $sampledAt = (Get-Date).ToString("yyyy-MM-ddTHH:mm:ss")
+        $processData = @(Get-ProcessData -userId $userId)
+        foreach ($process in $processData) {
+            Write-ProcessLog -ProcessData $process
+        }
+
+        $sequence++
+        $frame = New-DeltaFrame -samples $processData -previous $(if ($previousState) { $previousState } else { @{} }) -sequence $sequence -sampledAt $sampledAt
+        # The first frame after a start is always full, since the server may hold a snapshot from an earlier run
+        if ($null -eq $previousState) {
+            Set-FullFrame -frame $frame
+        }
+        $previousState = $frame.state
+        [void]$frames.Add($frame)
+        if ($frames.Count -gt $maxPending) {
+            $frames.RemoveRange(0, $frames.Count - $maxPending)
+            Set-FullFrame -frame $frames[0]
+        }
+        Write-Host "`nCollected $($processData.Count) processes, $($frames.Count) frames pending" -ForegroundColor Cyan
+
+        if ((Get-Date) -ge $nextUpload) {
+            $backoff = $false
+            while ($frames.Count -gt 0) {
+                $sent = Send-Frames -frames $frames -device $device
+                if ($sent -lt 0) {
+                    $backoff = $true
+                    break
+                }
+                $frames.RemoveRange(0, $sent)
             }
-            
-            $success = Send-ProcessBatch -batch $batch -headers $headers
-            if (-not $success) {
-                Write-Host "Skipping remaining items in current batch..." -ForegroundColor Yellow
-                continue
+
+            # On failure double the wait (capped) and keep the frames for the next attempt
+            if ($backoff) {
+                $uploadInterval = [Math]::Min($uploadInterval * 2, 600)
+                Write-Host "Upload failed, next attempt in $uploadInterval seconds" -ForegroundColor Yellow
             }
-            
-            $batchNumber++
+            # Jitter keeps collectors that backed off together from returning together
+            $jitter = Get-Random -Minimum 0 -Maximum ([Math]::Max(1, [int]($uploadInterval / 10)))
+            $nextUpload = (Get-Date).AddSeconds($uploadInterval + $jitter)
+            Write-Host "Next upload in about $uploadInterval seconds (batch size $maxBatchSize, gzip $useGzip, delta $useDelta)" -ForegroundColor Gray
         }
         
         Write-Host "`nWaiting $collectionInterval seconds before next collection..." -ForegroundColor Gray
@@ -0,0 +1,23 @@
+package com.example.backendapp.config;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a scheduled job that works on this node's own in-memory state (a queue, cache or open
+ * connections) and so must run on every node. Jobs that touch shared data and must run once per
+ * cluster take a lease through {@link com.example.backendapp.service.ClusterLeaseService} instead.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface NodeLocal {
+
+    /**
+     * What node state the job works on.
+     */
+    String value();
+}
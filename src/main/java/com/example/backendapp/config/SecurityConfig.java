@@ -1,10 +1,14 @@
 package com.example.backendapp.config;
 
+import com.example.backendapp.security.BulkheadFilter;
+import com.example.backendapp.security.DeviceSignatureFilter;
 import com.example.backendapp.security.JwtAuthenticationFilter;
+import com.example.backendapp.security.RateLimitFilter;
 import com.example.backendapp.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
@@ -28,6 +32,15 @@ public class SecurityConfig {
     @Autowired
     private JwtAuthenticationFilter jwtAuthenticationFilter;
 
+    @Autowired
+    private DeviceSignatureFilter deviceSignatureFilter;
+
+    @Autowired
+    private RateLimitFilter rateLimitFilter;
+
+    @Autowired
+    private BulkheadFilter bulkheadFilter;
+
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
         http
@@ -53,6 +66,12 @@ public class SecurityConfig {
                 // SuperAdmin only endpoints
                 .requestMatchers("/api/system/**").hasAuthority("ROLE_SUPERADMIN")
                 
+                // Collector devices: enrolled by a logged-in user, then sign their own ingest requests
+                .requestMatchers("/api/devices/enroll").hasAnyAuthority("ROLE_SUPERADMIN", "ROLE_ADMIN", "ROLE_EMPLOYEE")
+                .requestMatchers("/api/devices/rotate").hasAuthority("ROLE_DEVICE")
+                .requestMatchers(HttpMethod.POST, "/api/logs/delta").hasAuthority("ROLE_DEVICE")
+                .requestMatchers(HttpMethod.POST, "/api/process-tracking/log").hasAnyAuthority("ROLE_SUPERADMIN", "ROLE_ADMIN", "ROLE_EMPLOYEE", "ROLE_DEVICE")
+
                 // Employee process tracking endpoints
                 .requestMatchers("/api/process-tracking/**").hasAnyAuthority("ROLE_SUPERADMIN", "ROLE_ADMIN", "ROLE_EMPLOYEE")
                 .requestMatchers("/api/security/**").hasAnyAuthority("ROLE_SUPERADMIN", "ROLE_ADMIN", "ROLE_EMPLOYEE")
@@ -65,11 +84,20 @@ public class SecurityConfig {
                 // Activities endpoints
                 .requestMatchers("/api/activities/user/**").hasAnyAuthority("ROLE_SUPERADMIN", "ROLE_ADMIN", "ROLE_EMPLOYEE")
                 .requestMatchers("/api/activities/all").hasAnyAuthority("ROLE_SUPERADMIN", "ROLE_ADMIN")
+
+                // Change feed for downstream consumers (BI, payroll)
+                .requestMatchers("/api/changes").hasAnyAuthority("ROLE_SUPERADMIN", "ROLE_ADMIN")
                 
                 // Any other endpoint requires authentication
                 .anyRequest().authenticated()
             )
-            .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
+            // Same position for both; the device filter is added first so it runs first
+            .addFilterBefore(deviceSignatureFilter, UsernamePasswordAuthenticationFilter.class)
+            .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
+            // Runs once the caller is known, before authorization and any controller work
+            .addFilterAfter(rateLimitFilter, UsernamePasswordAuthenticationFilter.class)
+            // Admission per workload class; requests that were throttled never take a permit
+            .addFilterAfter(bulkheadFilter, RateLimitFilter.class);
 
         return http.build();
     }
@@ -0,0 +1,44 @@
+package com.example.backendapp.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Coarse classes of request by cost and urgency, used to apply limits per class instead of per
+ * endpoint. Collector ingest must keep flowing while a dashboard runs heavy analytics, so the two
+ * are never limited together.
+ */
+public enum WorkloadClass {
+    INGEST,
+    ANALYTICS,
+    REPORTS,
+    AUTH,
+    ADMIN,
+    DEFAULT;
+
+    public static WorkloadClass of(HttpServletRequest request) {
+        return of(request.getRequestURI().substring(request.getContextPath().length()));
+    }
+
+    public static WorkloadClass of(String path) {
+        if (path.startsWith("/api/logs/") || path.equals("/api/process-tracking/log") || path.equals("/api/activities/log")
+                || path.startsWith("/api/devices/")) {
+            return INGEST;
+        }
+        if (path.startsWith("/api/reports") || path.equals("/api/activities/export")) {
+            return REPORTS;
+        }
+        if (path.startsWith("/api/analytics/") || path.equals("/api/process-tracking/analytics")
+                || path.startsWith("/api/security/") || path.equals("/api/activities/summary")
+                || path.equals("/api/activities/detailed-summary") || path.equals("/api/activities/security/tamper-report")
+                || path.equals("/api/activities/search") || path.equals("/api/activities/all") || path.equals("/api/changes")) {
+            return ANALYTICS;
+        }
+        if (path.startsWith("/api/users/")) {
+            return AUTH;
+        }
+        if (path.startsWith("/api/admin/") || path.startsWith("/api/activities/admin/")) {
+            return ADMIN;
+        }
+        return DEFAULT;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.backendapp.config;
+
+/**
+ * The workload class of the work running on the current thread. Set by BulkheadFilter for requests
+ * and by background workers for their own jobs; read by {@link WorkloadRoutingDataSource} to pick a
+ * connection pool. Threads without a class use the default pool.
+ */
+public final class WorkloadContext {
+
+    private static final ThreadLocal<WorkloadClass> CURRENT = new ThreadLocal<>();
+
+    private WorkloadContext() {
+    }
+
+    public static WorkloadClass current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Sets the class and returns the previous one, to be passed to {@link #restore}.
+     */
+    public static WorkloadClass enter(WorkloadClass workloadClass) {
+        WorkloadClass previous = CURRENT.get();
+        CURRENT.set(workloadClass);
+        return previous;
+    }
+
+    public static void restore(WorkloadClass previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.backendapp.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces the single Hikari pool with one sub-pool per bulkheaded workload class plus the default
+ * pool for everything else (schedulers, startup, admin). Every pool is configured from
+ * spring.datasource.hikari.* as the single auto-configured pool was (timeouts, leak detection, driver
+ * properties, ...); only the name and size differ. Sizes come from {@code bulkhead.<class>.connections},
+ * and the default pool keeps spring.datasource.hikari.maximum-pool-size.
+ */
+@Configuration
+@ConditionalOnProperty(name = "bulkhead.datasource.enabled", havingValue = "true", matchIfMissing = true)
+public class WorkloadDataSourceConfig {
+
+    public static final List<WorkloadClass> POOLED_CLASSES =
+        List.of(WorkloadClass.INGEST, WorkloadClass.ANALYTICS, WorkloadClass.REPORTS, WorkloadClass.AUTH);
+
+    @Bean
+    @Primary
+    public WorkloadRoutingDataSource dataSource(DataSourceProperties properties, Environment environment) {
+        Binder binder = Binder.get(environment);
+        HikariDataSource defaultPool = pool(properties, binder, "default",
+            environment.getProperty("spring.datasource.hikari.maximum-pool-size", Integer.class, 10));
+        Map<WorkloadClass, HikariDataSource> classPools = new EnumMap<>(WorkloadClass.class);
+        for (WorkloadClass workloadClass : POOLED_CLASSES) {
+            String prefix = "bulkhead." + workloadClass.name().toLowerCase();
+            classPools.put(workloadClass, pool(properties, binder, workloadClass.name().toLowerCase(),
+                environment.getProperty(prefix + ".connections", Integer.class, 4)));
+        }
+        return new WorkloadRoutingDataSource(defaultPool, classPools);
+    }
+
+    private static HikariDataSource pool(DataSourceProperties properties, Binder binder, String name, int size) {
+        HikariDataSource pool = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        // What @ConfigurationProperties("spring.datasource.hikari") does for the auto-configured pool
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        pool.setPoolName("pool-" + name);
+        pool.setMaximumPoolSize(size);
+        // Hikari leaves minimum-idle at -1 when unset; an explicit value is kept, but never above the size
+        pool.setMinimumIdle(pool.getMinimumIdle() >= 0 ? Math.min(pool.getMinimumIdle(), size) : Math.min(2, size));
+        return pool;
+    }
+}
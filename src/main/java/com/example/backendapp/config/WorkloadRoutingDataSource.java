@@ -0,0 +1,57 @@
+package com.example.backendapp.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hands out connections from the sub-pool of the current {@link WorkloadContext}, so a burst of
+ * analytics queries can exhaust only the analytics pool and never the one ingest writes through.
+ */
+public class WorkloadRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    private final Map<String, HikariDataSource> pools = new LinkedHashMap<>();
+
+    public WorkloadRoutingDataSource(HikariDataSource defaultPool, Map<WorkloadClass, HikariDataSource> classPools) {
+        pools.put("DEFAULT", defaultPool);
+        classPools.forEach((workloadClass, pool) -> pools.put(workloadClass.name(), pool));
+        setDefaultTargetDataSource(defaultPool);
+        setTargetDataSources(new LinkedHashMap<>(classPools));
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return WorkloadContext.current();
+    }
+
+    public Map<String, Map<String, Object>> getPoolStats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        pools.forEach((name, pool) -> {
+            Map<String, Object> view = new LinkedHashMap<>();
+            view.put("maxConnections", pool.getMaximumPoolSize());
+            HikariPoolMXBean bean = pool.getHikariPoolMXBean();
+            if (bean != null) {
+                view.put("active", bean.getActiveConnections());
+                view.put("idle", bean.getIdleConnections());
+                view.put("waitingThreads", bean.getThreadsAwaitingConnection());
+            }
+            stats.put(name, view);
+        });
+        return stats;
+    }
+
+    public int getThreadsAwaitingConnection(WorkloadClass workloadClass) {
+        HikariDataSource pool = pools.get(workloadClass.name());
+        HikariPoolMXBean bean = pool != null ? pool.getHikariPoolMXBean() : null;
+        return bean != null ? bean.getThreadsAwaitingConnection() : 0;
+    }
+
+    @Override
+    public void destroy() {
+        pools.values().forEach(HikariDataSource::close);
+    }
+}
@@ -3,22 +3,33 @@ package com.example.backendapp.controller;
 import com.example.backendapp.dto.ActivitySummaryDTO;
 import com.example.backendapp.entity.Activity;
 import com.example.backendapp.repository.ActivityRepository;
+import com.example.backendapp.service.ActivityExportService;
+import com.example.backendapp.service.ActivityQueryService;
+import com.example.backendapp.service.ActivitySearchService;
 import com.example.backendapp.service.ActivityTrackingService;
+import com.example.backendapp.service.UserStatusService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Collections;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 
 @RestController
@@ -31,6 +42,22 @@ public class ActivityController {
     @Autowired
     private ActivityRepository activityRepository;
 
+    @Autowired
+    private UserStatusService userStatusService;
+
+    @Autowired
+    private ActivityQueryService activityQueryService;
+
+    @Autowired
+    private ActivitySearchService activitySearchService;
+
+    @Autowired
+    private ActivityExportService activityExportService;
+
+    // Exports are the only long async requests; everything else keeps the container's default timeout
+    @Value("${activity.export.timeout-ms:3600000}")
+    private long exportTimeoutMillis;
+
     @PostMapping("/log")
     public ResponseEntity<?> logActivity(@RequestBody Activity activity) {
         return ResponseEntity.ok(activityService.logActivity(activity));
@@ -73,11 +100,18 @@ public class ActivityController {
 
     @GetMapping("/status")
     public ResponseEntity<?> getCurrentStatus(@RequestParam Long userId) {
-        Activity latestActivity = activityService.getLatestActivity(userId);
-        return ResponseEntity.ok(Map.of(
-            "status", latestActivity.getStatus(),
-            "lastActive", latestActivity.getCreatedAt()
-        ));
+        UserStatusService.UserStatus latest = userStatusService.getStatus(userId)
+            .orElseThrow(() -> new RuntimeException("No activity found for user: " + userId));
+        Map<String, Object> status = new HashMap<>();
+        status.put("status", latest.status());
+        status.put("lastActive", latest.lastActive());
+        status.put("applicationName", latest.applicationName());
+        return ResponseEntity.ok(status);
+    }
+
+    @GetMapping("/status/bulk")
+    public ResponseEntity<Map<Long, UserStatusService.UserStatus>> getBulkStatus(@RequestParam List<Long> userIds) {
+        return ResponseEntity.ok(userStatusService.getStatuses(userIds));
     }
 
     @GetMapping("/security/tamper-report")
@@ -98,47 +132,118 @@ public class ActivityController {
         return ResponseEntity.ok(activityService.getDetailedActivitySummary(userId, startDate, endDate));
     }
 
-    // Get all activities with filtering and pagination
+    // Get all activities with filtering and pagination.
+    // paging=keyset (or any cursor) switches to cursor pagination on (createdAt, id).
+    // total=exact|estimate|none; offset paging defaults to exact, keyset to none. Sizes above the cap are reduced (see pageSize).
     @GetMapping("/all")
     public ResponseEntity<Map<String, Object>> getAllActivities(
             @RequestParam(required = false) Long userId,
             @RequestParam(required = false) String activityType,
             @RequestParam(required = false) String applicationCategory,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "createdAt") String sortBy,
-            @RequestParam(defaultValue = "desc") String sortDirection) {
+            @RequestParam(defaultValue = "desc") String sortDirection,
+            @RequestParam(defaultValue = "offset") String paging,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String total) {
+        ActivityQueryService.Filter filter = new ActivityQueryService.Filter(
+            userId, activityType, applicationCategory, startDate, endDate);
         try {
-            // Create pageable object
-            Sort.Direction direction = Sort.Direction.fromString(sortDirection);
-            PageRequest pageRequest = PageRequest.of(page, size, Sort.by(direction, sortBy));
-            
-            // Get activities with filters
-            Page<Activity> activitiesPage = activityRepository.findActivitiesWithFilters(
-                userId, activityType, applicationCategory, pageRequest);
-
-            // Prepare response
-            Map<String, Object> response = new HashMap<>();
-            response.put("activities", activitiesPage.getContent());
-            response.put("currentPage", activitiesPage.getNumber());
-            response.put("totalItems", activitiesPage.getTotalElements());
-            response.put("totalPages", activitiesPage.getTotalPages());
-            response.put("timestamp", LocalDateTime.now());
-            
-            return ResponseEntity.ok(response);
+            if ("keyset".equalsIgnoreCase(paging) || cursor != null) {
+                ActivityQueryService.TotalMode totalMode = ActivityQueryService.TotalMode.valueOf(
+                    (total != null ? total : "none").toUpperCase());
+                return ResponseEntity.ok(activityQueryService.findKeyset(filter, cursor, size, sortDirection, totalMode));
+            }
+            ActivityQueryService.TotalMode totalMode = ActivityQueryService.TotalMode.valueOf(
+                (total != null ? total : "exact").toUpperCase());
+            return ResponseEntity.ok(activityQueryService.findPage(filter, page, size, sortBy, sortDirection, totalMode));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Collections.singletonMap("error", e.getMessage()));
         } catch (Exception e) {
-            Map<String, String> errorResponse = new HashMap<>();
-            errorResponse.put("error", "Failed to fetch activities: " + e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body(Collections.singletonMap("error", e.getMessage()));
         }
     }
 
+    // Full-text search over window titles and process names, e.g. q=payroll* with a user and time filter
+    @GetMapping("/search")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> searchActivities(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "any") String field,
+            @RequestParam(defaultValue = "false") boolean prefix,
+            @RequestParam(required = false) List<Long> userIds,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(defaultValue = "100") int limit) {
+        try {
+            return ResponseEntity.ok(activitySearchService.search(q, field, prefix,
+                userIds != null ? userIds : Collections.emptyList(), startDate, endDate, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Collections.singletonMap("error", e.getMessage()));
+        }
+    }
+
+    // Full export for a date range, streamed from a database cursor (format=csv|ndjson, gzip=true for .gz)
+    @GetMapping("/export")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> exportActivities(
+            @RequestParam(required = false) Long userId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            HttpServletRequest request) {
+        ActivityExportService.Format exportFormat;
+        try {
+            exportFormat = ActivityExportService.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Collections.singletonMap("error", "Unsupported format: " + format));
+        }
+        ActivityExportService.ExportSlot slot = activityExportService.tryAcquire();
+        if (slot == null) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .body(Collections.singletonMap("error", "Too many exports in progress, try again later"));
+        }
+        // The body may never run (timeout while queued, rejected task), so the slot is also released
+        // when the async request completes for any reason
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(ActivityExportService.class, new CallableProcessingInterceptor() {
+            @Override
+            public <T> void beforeConcurrentHandling(NativeWebRequest asyncRequest, Callable<T> task) {
+                if (asyncRequest instanceof AsyncWebRequest asyncWebRequest) {
+                    asyncWebRequest.setTimeout(exportTimeoutMillis);
+                }
+            }
+
+            @Override
+            public <T> void afterCompletion(NativeWebRequest asyncRequest, Callable<T> task) {
+                slot.release();
+            }
+        });
+
+        String extension = exportFormat == ActivityExportService.Format.CSV ? "csv" : "ndjson";
+        String filename = "activities-" + LocalDateTime.now().toLocalDate() + "." + extension + (gzip ? ".gz" : "");
+        MediaType contentType = gzip ? MediaType.parseMediaType("application/gzip")
+            : exportFormat == ActivityExportService.Format.CSV ? MediaType.parseMediaType("text/csv;charset=UTF-8")
+            : MediaType.parseMediaType("application/x-ndjson");
+
+        StreamingResponseBody body = outputStream ->
+            activityExportService.export(slot, userId, startDate, endDate, exportFormat, gzip, outputStream);
+        return ResponseEntity.ok()
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+            .contentType(contentType)
+            .body(body);
+    }
+
     // Get activity details by ID
     @GetMapping("/details/{id}")
     public ResponseEntity<?> getActivityDetails(@PathVariable Long id) {
         try {
             return activityRepository.findById(id)
+                .filter(activity -> !Boolean.TRUE.equals(activity.getTrackOnly()))
                 .map(activity -> {
                     Map<String, Object> details = new HashMap<>();
                     details.put("id", activity.getId());
@@ -228,17 +333,18 @@ public class ActivityController {
     }
     
     /**
-     * Get detailed information about orphaned activities
+     * Get detailed information about orphaned activities (at most {@code limit} rows)
      */
     @GetMapping("/admin/orphaned-details")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<?> getOrphanedActivitiesDetails() {
+    public ResponseEntity<?> getOrphanedActivitiesDetails(@RequestParam(defaultValue = "1000") int limit) {
         try {
-            List<Activity> orphanedActivities = activityService.getOrphanedActivitiesDetails();
+            List<Activity> orphanedActivities = activityService.getOrphanedActivitiesDetails(limit);
             
             Map<String, Object> response = new HashMap<>();
             response.put("orphanedActivities", orphanedActivities);
             response.put("count", orphanedActivities.size());
+            response.put("totalOrphaned", activityRepository.countOrphanedActivities());
             response.put("timestamp", LocalDateTime.now());
             
             return ResponseEntity.ok(response);
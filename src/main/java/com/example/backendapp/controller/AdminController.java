@@ -2,14 +2,27 @@ package com.example.backendapp.controller;
 
 import com.example.backendapp.service.UserService;
 import com.example.backendapp.service.ActivityTrackingService;
+import com.example.backendapp.service.BulkheadService;
+import com.example.backendapp.service.ChangeFeedService;
+import com.example.backendapp.service.ClusterLeaseService;
+import com.example.backendapp.service.CollectorControlService;
+import com.example.backendapp.service.CollectorDeviceService;
+import com.example.backendapp.service.IngestStagingQueue;
+import com.example.backendapp.service.PresenceStreamService;
+import com.example.backendapp.service.RateLimiterService;
 import com.example.backendapp.entity.User;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -22,6 +35,30 @@ public class AdminController {
     @Autowired
     private ActivityTrackingService activityService;
 
+    @Autowired
+    private PresenceStreamService presenceStreamService;
+
+    @Autowired
+    private CollectorDeviceService deviceService;
+
+    @Autowired
+    private RateLimiterService rateLimiterService;
+
+    @Autowired
+    private BulkheadService bulkheadService;
+
+    @Autowired
+    private CollectorControlService collectorControlService;
+
+    @Autowired
+    private ClusterLeaseService clusterLeaseService;
+
+    @Autowired
+    private ChangeFeedService changeFeedService;
+
+    @Autowired
+    private IngestStagingQueue ingestStagingQueue;
+
     @PostMapping("/init")
     public ResponseEntity<?> initializeAdmin(@RequestBody User adminUser) {
         try {
@@ -74,4 +111,72 @@ public class AdminController {
         // Complete user data removal
         return ResponseEntity.ok("User data purged");
     }
+
+    // Live presence for dashboards: one SSE connection instead of polling /api/activities/status per user
+    @GetMapping(value = "/presence/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamPresence(@RequestParam(required = false) List<Long> userIds) throws IOException {
+        return presenceStreamService.subscribe(userIds != null ? userIds : Collections.emptyList());
+    }
+
+    // Admitted/throttled counts per workload class and limiter decision latency
+    @GetMapping("/rate-limits")
+    public ResponseEntity<Map<String, Object>> getRateLimitStats() {
+        return ResponseEntity.ok(rateLimiterService.getStats());
+    }
+
+    // Per-class in-flight, queued and shed counts, queue wait, and connection sub-pool usage
+    @GetMapping("/bulkheads")
+    public ResponseEntity<Map<String, Object>> getBulkheadStats() {
+        return ResponseEntity.ok(bulkheadService.getStats());
+    }
+
+    // Upload interval and batch size currently recommended to collectors, with the signals behind them
+    @GetMapping("/collector-control")
+    public ResponseEntity<Map<String, Object>> getCollectorControl() {
+        return ResponseEntity.ok(collectorControlService.getStats());
+    }
+
+    @GetMapping("/cluster")
+    public ResponseEntity<Map<String, Object>> getCluster() {
+        return ResponseEntity.ok(clusterLeaseService.getStats());
+    }
+
+    @GetMapping("/change-feed")
+    public ResponseEntity<Map<String, Object>> getChangeFeed() {
+        return ResponseEntity.ok(changeFeedService.getStats());
+    }
+
+    @GetMapping("/ingest-staging")
+    public ResponseEntity<Map<String, Object>> getIngestStaging() {
+        return ResponseEntity.ok(ingestStagingQueue.getStats());
+    }
+
+    // Collector device credentials
+
+    @GetMapping("/devices")
+    public ResponseEntity<?> listDevices(@RequestParam(required = false) Long userId) {
+        return ResponseEntity.ok(deviceService.listDevices(userId));
+    }
+
+    @PostMapping("/devices")
+    public ResponseEntity<?> enrollDevice(@RequestParam Long userId, @RequestParam(required = false) String machineName) {
+        if (userService.findById(userId).isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "User not found"));
+        }
+        return ResponseEntity.status(HttpStatus.CREATED).body(deviceService.enroll(userId, machineName));
+    }
+
+    @PostMapping("/devices/{deviceId}/rotate")
+    public ResponseEntity<?> rotateDevice(@PathVariable String deviceId) {
+        return deviceService.rotate(deviceId)
+            .<ResponseEntity<?>>map(ResponseEntity::ok)
+            .orElse(ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Device not found or revoked")));
+    }
+
+    @DeleteMapping("/devices/{deviceId}")
+    public ResponseEntity<?> revokeDevice(@PathVariable String deviceId) {
+        return deviceService.revoke(deviceId)
+            ? ResponseEntity.ok(Map.of("message", "Device revoked"))
+            : ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Device not found"));
+    }
 }
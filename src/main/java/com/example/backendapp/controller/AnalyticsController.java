@@ -1,17 +1,20 @@
 package com.example.backendapp.controller;
 
+import com.example.backendapp.dto.analytics.OrganizationAnalyticsDTO;
 import com.example.backendapp.dto.analytics.ProductivityAnalyticsDTO;
 import com.example.backendapp.dto.analytics.TaskAnalyticsDTO;
 import com.example.backendapp.dto.analytics.WorkspaceAnalyticsDTO;
 import com.example.backendapp.service.AnalyticsService;
+import com.example.backendapp.service.ApplicationSketchService;
+import com.example.backendapp.service.OrganizationAnalyticsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
 
 @RestController
 @RequestMapping("/api/analytics")
@@ -20,6 +23,12 @@ public class AnalyticsController {
     @Autowired
     private AnalyticsService analyticsService;
 
+    @Autowired
+    private OrganizationAnalyticsService organizationAnalyticsService;
+
+    @Autowired
+    private ApplicationSketchService applicationSketchService;
+
     @GetMapping("/productivity")
     public ResponseEntity<ProductivityAnalyticsDTO> getProductivityAnalytics(
             @RequestParam Long userId,
@@ -58,10 +67,70 @@ public class AnalyticsController {
             @RequestParam Long userId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
-        Map<String, Object> metrics = new HashMap<>();
-        metrics.put("tasks", analyticsService.analyzeTaskCompletion(userId, startDate, endDate));
-        metrics.put("workspaces", analyticsService.analyzeWorkspaces(userId, startDate, endDate));
-        metrics.put("productivity", analyticsService.analyzeProductivity(userId, startDate, endDate));
-        return ResponseEntity.ok(metrics);
+        return ResponseEntity.ok(analyticsService.analyzeEfficiencyMetrics(userId, startDate, endDate));
+    }
+
+    // Organization and team analytics (admin only, see SecurityConfig /api/analytics/admin/**)
+
+    @GetMapping("/admin/org/summary")
+    public ResponseEntity<OrganizationAnalyticsDTO> getOrganizationSummary(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(defaultValue = "10") int topApps) {
+        return ResponseEntity.ok(organizationAnalyticsService.analyzeOrganization(startDate, endDate, topApps));
+    }
+
+    @GetMapping("/admin/org/productivity")
+    public ResponseEntity<ProductivityAnalyticsDTO> getOrganizationProductivity(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+        return ResponseEntity.ok(organizationAnalyticsService.analyzeOrganizationProductivity(startDate, endDate));
+    }
+
+    @GetMapping("/admin/org/categories")
+    public ResponseEntity<Map<String, Long>> getOrganizationCategoryMix(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+        return ResponseEntity.ok(organizationAnalyticsService.analyzeOrganizationCategoryMix(startDate, endDate));
+    }
+
+    @GetMapping("/admin/org/top-apps")
+    public ResponseEntity<Map<String, Long>> getOrganizationTopApplications(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(organizationAnalyticsService.analyzeOrganizationTopApplications(startDate, endDate, limit));
+    }
+
+    @GetMapping("/admin/team/summary")
+    public ResponseEntity<OrganizationAnalyticsDTO> getTeamSummary(
+            @RequestParam List<Long> userIds,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(defaultValue = "10") int topApps) {
+        return ResponseEntity.ok(organizationAnalyticsService.analyzeUsers(userIds, startDate, endDate, topApps));
+    }
+
+    // Sketch-backed answers carry their error bounds; exact=true runs the GROUP BY for comparison
+
+    @GetMapping("/admin/org/sketch/top-apps")
+    public ResponseEntity<Map<String, Object>> getSketchTopApplications(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(defaultValue = "false") boolean exact) {
+        return ResponseEntity.ok(exact
+            ? applicationSketchService.exactTopApplications(startDate, endDate, limit)
+            : applicationSketchService.topApplications(startDate, endDate, limit));
+    }
+
+    @GetMapping("/admin/org/sketch/distinct")
+    public ResponseEntity<Map<String, Object>> getSketchDistinctCounts(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(defaultValue = "false") boolean exact) {
+        return ResponseEntity.ok(exact
+            ? applicationSketchService.exactDistinctCounts(startDate, endDate)
+            : applicationSketchService.distinctCounts(startDate, endDate));
     }
 }
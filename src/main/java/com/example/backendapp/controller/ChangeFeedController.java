@@ -0,0 +1,30 @@
+package com.example.backendapp.controller;
+
+import com.example.backendapp.service.ChangeFeedService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.Map;
+
+/**
+ * Incremental sync for downstream systems. A consumer starts with {@code since=0}, then passes back
+ * the {@code nextCursor} of each page; with {@code waitSeconds} the request is held open until new
+ * changes commit instead of returning an empty page at once.
+ */
+@RestController
+@RequestMapping("/api/changes")
+public class ChangeFeedController {
+
+    @Autowired
+    private ChangeFeedService changeFeedService;
+
+    @GetMapping
+    public DeferredResult<ResponseEntity<Map<String, Object>>> getChanges(
+            @RequestParam(defaultValue = "0") long since,
+            @RequestParam(defaultValue = "0") int limit,
+            @RequestParam(defaultValue = "30") int waitSeconds) {
+        return changeFeedService.poll(since, limit, waitSeconds * 1000L);
+    }
+}
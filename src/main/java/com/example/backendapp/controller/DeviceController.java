@@ -0,0 +1,46 @@
+package com.example.backendapp.controller;
+
+import com.example.backendapp.entity.User;
+import com.example.backendapp.security.DeviceAuthenticationToken;
+import com.example.backendapp.service.CollectorDeviceService;
+import com.example.backendapp.service.UserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Self-service for collector machines. A user logs in once to enroll a machine; from then on the
+ * collector signs its requests (see DeviceSignatureFilter) and rotates its own key.
+ */
+@RestController
+@RequestMapping("/api/devices")
+public class DeviceController {
+
+    @Autowired
+    private CollectorDeviceService deviceService;
+
+    @Autowired
+    private UserService userService;
+
+    @PostMapping("/enroll")
+    public ResponseEntity<?> enroll(@RequestParam(required = false) String machineName, Authentication authentication) {
+        User user = userService.findUserByUsername(authentication.getName())
+            .orElseThrow(() -> new RuntimeException("User not found: " + authentication.getName()));
+        return ResponseEntity.status(HttpStatus.CREATED).body(deviceService.enroll(user.getId(), machineName));
+    }
+
+    // Signed with the current key; the old key keeps verifying for the rotation grace period
+    @PostMapping("/rotate")
+    public ResponseEntity<?> rotate(Authentication authentication) {
+        if (!(authentication instanceof DeviceAuthenticationToken device)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", "Only a signed device request can rotate its key"));
+        }
+        return deviceService.rotate(device.getDeviceId())
+            .<ResponseEntity<?>>map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
+    }
+}
@@ -2,17 +2,26 @@ package com.example.backendapp.controller;
 
 import com.example.backendapp.entity.Activity;
 import com.example.backendapp.entity.ProcessTrack;
+import com.example.backendapp.security.DeviceAuthenticationToken;
+import com.example.backendapp.service.CollectorControlService;
+import com.example.backendapp.service.CollectorSnapshotService;
 import com.example.backendapp.service.LogCollectorService;
 import com.example.backendapp.service.ProcessTrackingService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.net.URI;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 
 @RestController
 @RequestMapping("/api/logs")
@@ -25,68 +34,21 @@ public class LogCollectorController {
     @Autowired
     private ProcessTrackingService processTrackingService;
 
+    @Autowired
+    private CollectorControlService collectorControlService;
+
+    @Autowired
+    private CollectorSnapshotService collectorSnapshotService;
+
     @PostMapping("/batch")
-    public ResponseEntity<?> collectBatchLogs(@RequestBody List<Map<String, Object>> logs) {
+    public ResponseEntity<?> collectBatchLogs(@RequestBody List<Map<String, Object>> logs,
+                                              @RequestHeader(value = CollectorControlService.PROTOCOL_HEADER, required = false) Integer protocol) {
         System.out.println("\n=== Received Batch Log Request ===");
         System.out.println("Batch size: " + logs.size());
         
         try {
-            List<ProcessTrack> processTracks = new ArrayList<>();
-            List<Activity> activities = new ArrayList<>();
-
-            for (Map<String, Object> log : logs) {
-                // Validate required fields
-                if (!isValidLogEntry(log)) {
-                    System.err.println("Invalid log entry: " + log);
-                    continue;
-                }
-
-                // Create ProcessTrack with safe get methods
-                ProcessTrack processTrack = new ProcessTrack();
-                processTrack.setUserId(getLongValue(log, "userId"));
-                processTrack.setProcessName(getStringValue(log, "processName"));
-                processTrack.setWindowTitle(getStringValue(log, "windowTitle"));
-                processTrack.setProcessId(getStringValue(log, "processId"));
-                processTrack.setApplicationPath(getStringValue(log, "applicationPath", ""));
-                processTrack.setStartTime(getDateTimeValue(log, "startTime"));
-                processTrack.setEndTime(getDateTimeValue(log, "endTime"));
-                processTrack.setDurationSeconds(getLongValue(log, "durationSeconds"));
-                processTrack.setCategory(getStringValue(log, "category", "OTHER"));
-                processTrack.setIsProductiveApp(getBooleanValue(log, "isProductiveApp", true));
-                processTracks.add(processTrack);
-
-                // Create Activity
-                Activity activity = new Activity();
-                activity.setUserId(getLongValue(log, "userId"));
-                activity.setActivityType(getStringValue(log, "activityType", "PROCESS_MONITORING"));
-                activity.setDescription(getStringValue(log, "description", "Process monitoring: " + processTrack.getProcessName()));
-                activity.setProcessName(getStringValue(log, "processName"));
-                activity.setWindowTitle(getStringValue(log, "windowTitle"));
-                activity.setApplicationName(getStringValue(log, "processName"));
-                activity.setWorkspaceType(getStringValue(log, "workspaceType", "LOCAL"));
-                activity.setApplicationCategory(getStringValue(log, "applicationCategory", "SYSTEM"));
-                activity.setProcessId(getStringValue(log, "processId"));
-                activity.setDurationSeconds(getLongValue(log, "durationSeconds"));
-                activity.setStartTime(getDateTimeValue(log, "startTime"));
-                activity.setEndTime(getDateTimeValue(log, "endTime"));
-                
-                System.out.println("\nCreated Activity:");
-                System.out.println("UserId: " + activity.getUserId());
-                System.out.println("ActivityType: " + activity.getActivityType());
-                System.out.println("ProcessName: " + activity.getProcessName());
-                
-                activities.add(activity);
-            }
-
-            // Process valid entries
-            processTracks.forEach(processTrackingService::logProcess);
-            activities.forEach(logCollectorService::queueActivityLog);
-
-            return ResponseEntity.ok(Map.of(
-                "status", "success",
-                "processTracksQueued", processTracks.size(),
-                "activitiesQueued", activities.size()
-            ));
+            Map<String, Object> response = ingest(logs);
+            return respond(response, protocol);
         } catch (Exception e) {
             System.err.println("\nError in collectBatchLogs:");
             e.printStackTrace();
@@ -97,6 +59,139 @@ public class LogCollectorController {
         }
     }
 
+    /**
+     * Delta upload from a signed collector: frames of opened, changed and closed processes that the
+     * server expands against its snapshot of the device (see CollectorSnapshotService). Answers 409
+     * with the last applied sequence when the collector must send a full frame.
+     */
+    @PostMapping("/delta")
+    public ResponseEntity<?> collectDelta(@RequestBody Map<String, Object> request,
+                                          @RequestHeader(value = CollectorControlService.PROTOCOL_HEADER, required = false) Integer protocol) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (!(authentication instanceof DeviceAuthenticationToken device)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", "Delta uploads require a signed device"));
+        }
+        Object frames = request.get("frames");
+        if (!(frames instanceof List<?> frameList) || frameList.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "frames must be a non-empty list"));
+        }
+
+        Map<String, Object> response;
+        try {
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> typedFrames = (List<Map<String, Object>>) frameList;
+            // The snapshot only advances once the expanded samples are queued
+            response = collectorSnapshotService.apply(device.getDeviceId(), device.getUserId(), typedFrames, this::ingest);
+        } catch (CollectorSnapshotService.ResyncRequiredException e) {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("error", e.getMessage());
+            body.put("resync", true);
+            body.put("lastSequence", e.getLastSequence());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(body);
+        } catch (IllegalArgumentException | ClassCastException | DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Malformed delta frames: " + e.getMessage()));
+        }
+
+        response.put("framesReceived", frameList.size());
+        response.put("lastSequence", collectorSnapshotService.getLastSequence(device.getDeviceId()));
+        return respond(response, protocol);
+    }
+
+    /**
+     * Whether the rows of an upload have committed: PENDING, COMMITTED, PARTIALLY_COMMITTED or FAILED.
+     * Unknown receipts (expired, or lost with a restart before their rows were flushed) are 404.
+     */
+    @GetMapping("/receipts/{receiptId}")
+    public ResponseEntity<?> getReceipt(@PathVariable String receiptId) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        boolean admin = authentication.getAuthorities().stream()
+            .anyMatch(authority -> authority.getAuthority().equals("ROLE_ADMIN") || authority.getAuthority().equals("ROLE_SUPERADMIN"));
+        return logCollectorService.findReceipt(receiptId)
+            .filter(receipt -> admin || receipt.getOwner().equals(authentication.getName()))
+            .<ResponseEntity<?>>map(receipt -> ResponseEntity.ok(receipt.toMap()))
+            .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Receipt not found")));
+    }
+
+    private ResponseEntity<?> respond(Map<String, Object> response, Integer protocol) {
+        // Older collectors ignore unknown fields, but only send the block to ones that asked for it
+        if (protocol != null && protocol >= CollectorControlService.PROTOCOL_VERSION) {
+            response.put("control", collectorControlService.getControl());
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+            .location(URI.create("/api/logs/receipts/" + response.get("receiptId")))
+            .header(CollectorControlService.PROTOCOL_HEADER, String.valueOf(CollectorControlService.PROTOCOL_VERSION))
+            .body(response);
+    }
+
+    private Map<String, Object> ingest(List<Map<String, Object>> logs) {
+        List<ProcessTrack> processTracks = new ArrayList<>();
+        List<Activity> activities = new ArrayList<>();
+        Long deviceUserId = DeviceAuthenticationToken.currentDeviceUserId().orElse(null);
+
+        for (Map<String, Object> log : logs) {
+            // Validate required fields
+            if (!isValidLogEntry(log)) {
+                System.err.println("Invalid log entry: " + log);
+                continue;
+            }
+            // A signed device may only report for the user it was enrolled for
+            if (deviceUserId != null && !deviceUserId.equals(getLongValue(log, "userId"))) {
+                logger.warn("Log entry for another user rejected from device: {}", log.get("userId"));
+                continue;
+            }
+
+            // Create ProcessTrack with safe get methods
+            ProcessTrack processTrack = new ProcessTrack();
+            processTrack.setUserId(getLongValue(log, "userId"));
+            processTrack.setProcessName(getStringValue(log, "processName"));
+            processTrack.setWindowTitle(getStringValue(log, "windowTitle"));
+            processTrack.setProcessId(getStringValue(log, "processId"));
+            processTrack.setApplicationPath(getStringValue(log, "applicationPath", ""));
+            processTrack.setStartTime(getDateTimeValue(log, "startTime"));
+            processTrack.setEndTime(getDateTimeValue(log, "endTime"));
+            processTrack.setDurationSeconds(getLongValue(log, "durationSeconds"));
+            processTrack.setCategory(getStringValue(log, "category", "OTHER"));
+            processTrack.setIsProductiveApp(getBooleanValue(log, "isProductiveApp", true));
+            processTracks.add(processTrack);
+
+            // Create Activity
+            Activity activity = new Activity();
+            activity.setUserId(getLongValue(log, "userId"));
+            activity.setActivityType(getStringValue(log, "activityType", "PROCESS_MONITORING"));
+            activity.setDescription(getStringValue(log, "description", "Process monitoring: " + processTrack.getProcessName()));
+            activity.setProcessName(getStringValue(log, "processName"));
+            activity.setWindowTitle(getStringValue(log, "windowTitle"));
+            activity.setApplicationName(getStringValue(log, "processName"));
+            activity.setWorkspaceType(getStringValue(log, "workspaceType", "LOCAL"));
+            activity.setApplicationCategory(getStringValue(log, "applicationCategory", "SYSTEM"));
+            activity.setProcessId(getStringValue(log, "processId"));
+            activity.setDurationSeconds(getLongValue(log, "durationSeconds"));
+            activity.setStartTime(getDateTimeValue(log, "startTime"));
+            activity.setEndTime(getDateTimeValue(log, "endTime"));
+            // One row per sample: the activity carries the process-track fields as well
+            processTrackingService.attachProcessTrack(activity, processTrack);
+            
+            System.out.println("\nCreated Activity:");
+            System.out.println("UserId: " + activity.getUserId());
+            System.out.println("ActivityType: " + activity.getActivityType());
+            System.out.println("ProcessName: " + activity.getProcessName());
+            
+            activities.add(activity);
+        }
+
+        // Rows are written by the next flush; the receipt reports when they commit
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        LogCollectorService.IngestReceipt receipt = logCollectorService.openReceipt(authentication.getName());
+        logCollectorService.queueActivityLogs(activities, receipt);
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("status", "accepted");
+        response.put("receiptId", receipt.getId());
+        response.put("processTracksQueued", processTracks.size());
+        response.put("activitiesQueued", activities.size());
+        return response;
+    }
+
     // Add helper methods
     private boolean isValidLogEntry(Map<String, Object> log) {
         return log.containsKey("userId") && 
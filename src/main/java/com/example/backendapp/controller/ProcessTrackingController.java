@@ -1,12 +1,15 @@
 package com.example.backendapp.controller;
 
 import com.example.backendapp.entity.ProcessTrack;
+import com.example.backendapp.security.DeviceAuthenticationToken;
 import com.example.backendapp.service.ProcessTrackingService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import java.time.LocalDateTime;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/process-tracking")
@@ -17,6 +20,10 @@ public class ProcessTrackingController {
 
     @PostMapping("/log")
     public ResponseEntity<?> logProcess(@RequestBody ProcessTrack process) {
+        Long deviceUserId = DeviceAuthenticationToken.currentDeviceUserId().orElse(null);
+        if (deviceUserId != null && !deviceUserId.equals(process.getUserId())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", "Device is not enrolled for user " + process.getUserId()));
+        }
         return ResponseEntity.ok(processTrackingService.logProcess(process));
     }
 
@@ -0,0 +1,204 @@
+package com.example.backendapp.controller;
+
+import com.example.backendapp.service.ReportJobService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Asynchronous reports: submit, poll, download, cancel. Jobs are visible to the user who submitted
+ * them and to admins.
+ */
+@RestController
+@RequestMapping("/api/reports")
+public class ReportController {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+    @Autowired
+    private ReportJobService reportJobService;
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> submitReport(
+            @RequestParam String type,
+            @RequestParam(required = false) Long userId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            Authentication authentication) {
+        ReportJobService.ReportType reportType;
+        try {
+            reportType = ReportJobService.ReportType.valueOf(type.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Unknown report type: " + type));
+        }
+        // Raw activity exports are admin-only, as at /api/activities/export
+        if (reportType.isActivityExport() && !isAdmin(authentication)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", "Activity exports require an admin role"));
+        }
+        try {
+            ReportJobService.ReportJob job = reportJobService.submit(
+                authentication.getName(), reportType, userId, startDate, endDate);
+            return ResponseEntity.accepted()
+                .header(HttpHeaders.LOCATION, "/api/reports/" + job.getId())
+                .body(job.toMap());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (ReportJobService.ReportRejectedException e) {
+            HttpStatus status = e.isQueueFull() ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.TOO_MANY_REQUESTS;
+            return ResponseEntity.status(status).header(HttpHeaders.RETRY_AFTER, "30").body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping
+    public ResponseEntity<List<Map<String, Object>>> listReports(Authentication authentication) {
+        return ResponseEntity.ok(reportJobService.list(authentication.getName(), isAdmin(authentication)).stream()
+            .map(ReportJobService.ReportJob::toMap)
+            .toList());
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<Map<String, Object>> getReport(@PathVariable String jobId, Authentication authentication) {
+        return reportJobService.find(jobId, authentication.getName(), isAdmin(authentication))
+            .map(job -> ResponseEntity.ok(job.toMap()))
+            .orElse(ResponseEntity.notFound().build());
+    }
+
+    @DeleteMapping("/{jobId}")
+    public ResponseEntity<?> cancelReport(@PathVariable String jobId, Authentication authentication) {
+        return reportJobService.cancel(jobId, authentication.getName(), isAdmin(authentication))
+            ? ResponseEntity.noContent().build()
+            : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Serves a finished result with single-range support. On Tomcat the file is handed to the
+     * connector's sendfile; otherwise it is copied with FileChannel.transferTo.
+     */
+    @GetMapping("/{jobId}/download")
+    public void downloadReport(@PathVariable String jobId, Authentication authentication,
+                               HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Optional<ReportJobService.ReportJob> found = reportJobService.find(jobId, authentication.getName(), isAdmin(authentication));
+        if (found.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        ReportJobService.ReportJob job = found.get();
+        switch (job.getState()) {
+            case COMPLETED -> { }
+            case EXPIRED, CANCELLED -> {
+                response.sendError(HttpServletResponse.SC_GONE);
+                return;
+            }
+            default -> {
+                response.sendError(HttpServletResponse.SC_CONFLICT, "Report is " + job.getState());
+                return;
+            }
+        }
+
+        long length = job.getSizeBytes();
+        String etag = "\"" + job.getId() + "\"";
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, job.getCompletedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + job.getFilename() + "\"");
+        response.setContentType(job.getType().getContentType());
+
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            long[] bounds = parseRange(range, length);
+            if (bounds == null) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+        long count = end - start + 1;
+        response.setContentLengthLong(Math.max(count, 0));
+        if (count <= 0 || "HEAD".equals(request.getMethod())) {
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute("org.apache.tomcat.sendfile.filename", job.getFile().toString());
+            request.setAttribute("org.apache.tomcat.sendfile.start", start);
+            request.setAttribute("org.apache.tomcat.sendfile.end", end + 1);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(job.getFile(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (count > 0) {
+                long sent = channel.transferTo(position, count, target);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                count -= sent;
+            }
+        }
+    }
+
+    /**
+     * Parses a single "bytes=" range. Returns the inclusive bounds, an empty array when the header
+     * should be ignored (multiple ranges or another unit), or null when it cannot be satisfied.
+     */
+    private static long[] parseRange(String header, long length) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? length - 1 : Math.min(Long.parseLong(spec.substring(dash + 1)), length - 1);
+            }
+            return start <= end && start < length ? new long[] {start, end} : null;
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    private static boolean isAdmin(Authentication authentication) {
+        return authentication.getAuthorities().stream()
+            .anyMatch(authority -> "ROLE_ADMIN".equals(authority.getAuthority()) || "ROLE_SUPERADMIN".equals(authority.getAuthority()));
+    }
+}
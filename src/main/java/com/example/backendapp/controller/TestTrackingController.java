@@ -62,6 +62,7 @@ public class TestTrackingController {
     @GetMapping("/simulate-daily-report")
     public ResponseEntity<?> simulateDailyReport(@RequestParam Long userId) {
         Map<String, Object> report = new HashMap<>();
+        // Raw rows still come from the database; the aggregates are served from today's counters
         report.put("activities", activityService.getTodayActivities(userId));
         report.put("appUsage", activityService.getDailyApplicationUsage(userId));
         report.put("productiveTime", activityService.getProductiveTimeToday(userId));
@@ -0,0 +1,16 @@
+package com.example.backendapp.dto.analytics;
+
+import lombok.Builder;
+import lombok.Data;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@Builder
+public class OrganizationAnalyticsDTO {
+    private Integer userCount;
+    private Long activityCount;
+    private ProductivityAnalyticsDTO productivity;
+    private Map<String, Long> categoryMix;
+    private LinkedHashMap<String, Long> topApplications;
+}
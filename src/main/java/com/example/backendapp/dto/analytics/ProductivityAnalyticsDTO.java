@@ -6,7 +6,7 @@ import java.util.Map;
 import java.time.LocalDate;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 public class ProductivityAnalyticsDTO {
     private Map<LocalDate, Double> dailyProductivityScore;
     private Map<String, Long> applicationUsageTime;
@@ -1,5 +1,6 @@
 package com.example.backendapp.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
 import java.time.LocalDateTime;
@@ -77,6 +78,30 @@ public class Activity {
     @Column(name = "end_time")
     private LocalDateTime endTime;
 
+    // Process-track fields: rows with process_tracked = 1 are what the process_tracks view exposes
+    // (see V4__Unify_Process_Tracks_Into_Activities.sql), so a collector sample is written once
+    @JsonIgnore
+    @Column(name = "process_tracked", nullable = false)
+    private Boolean processTracked = false;
+
+    // Samples posted only to /api/process-tracking/log (and unpaired legacy tracks) are process tracks
+    // with no activity behind them; activity reads, counters and exports leave these rows out
+    @JsonIgnore
+    @Column(name = "track_only", nullable = false)
+    private Boolean trackOnly = false;
+
+    @JsonIgnore
+    @Column(name = "process_category")
+    private String processCategory;
+
+    @JsonIgnore
+    @Column(name = "is_productive_app")
+    private Boolean isProductiveApp;
+
+    @JsonIgnore
+    @Column(name = "application_path")
+    private String applicationPath;
+
     @Version
     private Long version;
 
@@ -97,6 +122,12 @@ public class Activity {
         if (tamperAttempt == null) {
             tamperAttempt = false;
         }
+        if (processTracked == null) {
+            processTracked = false;
+        }
+        if (trackOnly == null) {
+            trackOnly = false;
+        }
         if (version == null) {
             version = 0L;
         }
@@ -0,0 +1,48 @@
+package com.example.backendapp.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.ToString;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "collector_devices")
+@Data
+public class CollectorDevice {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "device_id", nullable = false, unique = true)
+    private String deviceId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "machine_name")
+    private String machineName;
+
+    // Base64 HMAC key; it has to be recoverable to verify signatures, so it cannot be hashed
+    @JsonIgnore
+    @ToString.Exclude
+    @Column(nullable = false)
+    private String secret;
+
+    @JsonIgnore
+    @ToString.Exclude
+    @Column(name = "previous_secret")
+    private String previousSecret;
+
+    @Column(name = "previous_valid_until")
+    private LocalDateTime previousValidUntil;
+
+    @Column(nullable = false)
+    private boolean active = true;
+
+    @Column(name = "enrolled_at", nullable = false, updatable = false)
+    private LocalDateTime enrolledAt = LocalDateTime.now();
+
+    @Column(name = "rotated_at")
+    private LocalDateTime rotatedAt;
+}
@@ -2,14 +2,20 @@ package com.example.backendapp.entity;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.Immutable;
 import java.time.LocalDateTime;
 
+/**
+ * Read model over the process_tracks view, which selects the process-tracked rows of activities.
+ * Rows are written as activities (see ProcessTrackingService#logProcess); this class is still the
+ * request body of /api/process-tracking/log and the shape process analytics read.
+ */
 @Entity
+@Immutable
 @Table(name = "process_tracks")
 @Data
 public class ProcessTrack {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
     @Column(name = "user_id", nullable = false)
@@ -41,20 +47,4 @@ public class ProcessTrack {
 
     @Column(name = "application_path")
     private String applicationPath;
-
-    @PrePersist
-    protected void onCreate() {
-        if (startTime == null) {
-            startTime = LocalDateTime.now();
-        }
-        if (endTime == null) {
-            endTime = startTime.plusMinutes(1);
-        }
-        System.out.println("Pre-persist ProcessTrack: " + this.toString());
-    }
-
-    @PostPersist
-    protected void afterSave() {
-        System.out.println("Saved ProcessTrack with ID: " + this.id);
-    }
 }
@@ -0,0 +1,45 @@
+package com.example.backendapp.event;
+
+import com.example.backendapp.entity.Activity;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Published whenever an activity row is written. Listeners that keep derived state in memory
+ * should use {@code @TransactionalEventListener} so they only see rows that actually committed.
+ *
+ * A write is either a new row or the extension of an open session row (see SessionizationService).
+ * Listeners that accumulate durations must add {@link #getAddedDurationSeconds()} and
+ * {@link #getAddedIdleSeconds()} rather than the row's totals, which already include earlier events.
+ */
+@Getter
+public class ActivityPersistedEvent {
+    private final Activity activity;
+    private final long addedDurationSeconds;
+    private final long addedIdleSeconds;
+    private final LocalDateTime lastSeenAt;
+    private final boolean extension;
+
+    public ActivityPersistedEvent(Activity activity) {
+        this(activity,
+            activity.getDurationSeconds() != null ? activity.getDurationSeconds() : 0L,
+            activity.getIdleTimeSeconds() != null ? activity.getIdleTimeSeconds() : 0L,
+            activity.getCreatedAt(),
+            false);
+    }
+
+    private ActivityPersistedEvent(Activity activity, long addedDurationSeconds, long addedIdleSeconds,
+                                   LocalDateTime lastSeenAt, boolean extension) {
+        this.activity = activity;
+        this.addedDurationSeconds = addedDurationSeconds;
+        this.addedIdleSeconds = addedIdleSeconds;
+        this.lastSeenAt = lastSeenAt;
+        this.extension = extension;
+    }
+
+    public static ActivityPersistedEvent extended(Activity session, long addedDurationSeconds, long addedIdleSeconds,
+                                                  LocalDateTime lastSeenAt) {
+        return new ActivityPersistedEvent(session, addedDurationSeconds, addedIdleSeconds, lastSeenAt, true);
+    }
+}
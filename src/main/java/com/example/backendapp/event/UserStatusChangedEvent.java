@@ -0,0 +1,18 @@
+package com.example.backendapp.event;
+
+import com.example.backendapp.service.UserStatusService.UserStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published when a user's in-memory status or current application changes, including the transition
+ * to OFFLINE when no activity has arrived for the configured threshold. {@code previous} is null the
+ * first time a user is seen.
+ */
+@Getter
+@AllArgsConstructor
+public class UserStatusChangedEvent {
+    private final Long userId;
+    private final UserStatus previous;
+    private final UserStatus current;
+}
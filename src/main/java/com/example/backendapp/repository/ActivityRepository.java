@@ -2,35 +2,46 @@ package com.example.backendapp.repository;
 
 import com.example.backendapp.entity.Activity;
 import com.example.backendapp.entity.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
-import org.springframework.data.domain.Page;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.data.domain.Pageable;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface ActivityRepository extends JpaRepository<Activity, Long> {
-    List<Activity> findByUserIdAndCreatedAtBetween(Long userId, LocalDateTime start, LocalDateTime end);
+public interface ActivityRepository extends JpaRepository<Activity, Long>, JpaSpecificationExecutor<Activity>, ActivityStreamRepository,
+        ActivitySliceRepository {
+    // Activity reads skip track-only rows (process samples with no activity behind them); those are
+    // only read through the process_tracks view. Orphan cleanup and session recovery see every row.
+    @Query("SELECT a FROM Activity a WHERE a.userId = :userId AND a.createdAt BETWEEN :start AND :end AND a.trackOnly = false")
+    List<Activity> findByUserIdAndCreatedAtBetween(@Param("userId") Long userId, @Param("start") LocalDateTime start,
+                                                   @Param("end") LocalDateTime end);
     
-    @Query("SELECT a FROM Activity a WHERE a.userId = :userId AND CAST(a.createdAt AS date) = CAST(CURRENT_TIMESTAMP AS date)")
+    @Query("SELECT a FROM Activity a WHERE a.userId = :userId AND CAST(a.createdAt AS date) = CAST(CURRENT_TIMESTAMP AS date) " +
+           "AND a.trackOnly = false")
     List<Activity> findTodayActivitiesByUserId(@Param("userId") Long userId);
     
     @Query("SELECT SUM(a.durationSeconds) FROM Activity a " +
            "WHERE a.userId = :userId AND a.activityType = :activityType " +
-           "AND CAST(a.createdAt AS date) = CAST(CURRENT_TIMESTAMP AS date)")
+           "AND CAST(a.createdAt AS date) = CAST(CURRENT_TIMESTAMP AS date) AND a.trackOnly = false")
     Long getTotalDurationByActivityType(@Param("userId") Long userId, @Param("activityType") String activityType);
     
-    @Query("SELECT a FROM Activity a WHERE a.userId = :userId AND a.createdAt BETWEEN :startDate AND :endDate")
+    @Query("SELECT a FROM Activity a WHERE a.userId = :userId AND a.createdAt BETWEEN :startDate AND :endDate AND a.trackOnly = false")
     List<Activity> findActivitiesInDateRange(@Param("userId") Long userId, 
                                            @Param("startDate") LocalDateTime startDate, 
                                            @Param("endDate") LocalDateTime endDate);
 
-    @Query("SELECT a FROM Activity a WHERE a.userId = :userId AND a.createdAt BETWEEN :startDate AND :endDate")
+    @Query("SELECT a FROM Activity a WHERE a.userId = :userId AND a.createdAt BETWEEN :startDate AND :endDate AND a.trackOnly = false")
     List<Activity> findActivitiesByUserIdAndDateRange(
         @Param("userId") Long userId,
         @Param("startDate") LocalDateTime startDate,
@@ -38,39 +49,87 @@ public interface ActivityRepository extends JpaRepository<Activity, Long> {
     );
 
     @Query("SELECT a.applicationName, SUM(a.durationSeconds) FROM Activity a " +
-           "WHERE a.userId = :userId AND FUNCTION('DATE', a.createdAt) = FUNCTION('DATE', CURRENT_TIMESTAMP) " +
+           "WHERE a.userId = :userId AND FUNCTION('DATE', a.createdAt) = FUNCTION('DATE', CURRENT_TIMESTAMP) AND a.trackOnly = false " +
            "GROUP BY a.applicationName")
     List<Object[]> getApplicationUsageStats(@Param("userId") Long userId);
 
     @Query("SELECT SUM(a.idleTimeSeconds) FROM Activity a " +
-           "WHERE a.userId = :userId AND CAST(a.createdAt AS date) = CAST(CURRENT_TIMESTAMP AS date)")
+           "WHERE a.userId = :userId AND CAST(a.createdAt AS date) = CAST(CURRENT_TIMESTAMP AS date) AND a.trackOnly = false")
     Long getTotalIdleTime(@Param("userId") Long userId);
 
-    @Query("SELECT a FROM Activity a WHERE a.userId = :userId ORDER BY a.createdAt DESC")
-    Optional<Activity> findLatestActivityByUserId(@Param("userId") Long userId);
+    Optional<Activity> findFirstByUserIdAndTrackOnlyFalseOrderByCreatedAtDesc(Long userId);
+
+    @Query("SELECT MAX(a.id) FROM Activity a")
+    Long findMaxId();
+
+    // Session rows (see SessionizationService): recent rows to reopen at startup, and in-place extension.
+    // The version column is left alone so a managed copy of the row can still flush in the same transaction.
+    // An extension only applies if it moves end_time forward; every SET reads the row as it was before.
+    List<Activity> findByEndTimeGreaterThanEqual(LocalDateTime endTime);
+
+    // Latest session row for a sample key that is not cached on this node; null key fields match IS NULL.
+    // Read-only, so the copy the session keeps is never flushed back over a later extension.
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    Optional<Activity> findFirstByUserIdAndActivityTypeAndProcessNameAndWindowTitleAndTrackOnlyAndEndTimeGreaterThanEqualOrderByEndTimeDesc(
+        Long userId, String activityType, String processName, String windowTitle, Boolean trackOnly, LocalDateTime endTime);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Activity a SET " +
+           "a.idleTimeSeconds = CASE WHEN a.endTime < :endTime THEN COALESCE(a.idleTimeSeconds, 0) + :addedIdleSeconds ELSE a.idleTimeSeconds END, " +
+           "a.durationSeconds = CASE WHEN a.endTime < :endTime THEN :durationSeconds ELSE a.durationSeconds END, " +
+           "a.endTime = CASE WHEN a.endTime < :endTime THEN :endTime ELSE a.endTime END " +
+           "WHERE a.id = :id")
+    int extendSession(@Param("id") Long id,
+                      @Param("endTime") LocalDateTime endTime,
+                      @Param("durationSeconds") Long durationSeconds,
+                      @Param("addedIdleSeconds") Long addedIdleSeconds);
+
+    // One row per user (ties on createdAt may return several; callers keep the newest they see)
+    @Query("SELECT a FROM Activity a WHERE a.trackOnly = false AND a.createdAt = " +
+           "(SELECT MAX(b.createdAt) FROM Activity b WHERE b.userId = a.userId AND b.trackOnly = false)")
+    List<Activity> findLatestActivityPerUser();
+
+    @Query("SELECT a FROM Activity a WHERE a.userId IN :userIds AND a.trackOnly = false AND a.createdAt = " +
+           "(SELECT MAX(b.createdAt) FROM Activity b WHERE b.userId = a.userId AND b.trackOnly = false)")
+    List<Activity> findLatestActivityForUsers(@Param("userIds") Collection<Long> userIds);
     
-    @Query(value = "SELECT SUM(idle_time_seconds) FROM activities WHERE user_id = :userId AND CAST(created_at AS DATE) = CAST(GETDATE() AS DATE)", nativeQuery = true)
+    @Query(value = "SELECT SUM(idle_time_seconds) FROM activities WHERE user_id = :userId AND CAST(created_at AS DATE) = CAST(GETDATE() AS DATE) AND track_only = 0", nativeQuery = true)
     Long getTotalIdleTimeNative(@Param("userId") Long userId);
 
     @Query(value = "SELECT a FROM Activity a WHERE a.userId = :userId " +
-           "AND CAST(a.createdAt AS date) BETWEEN CAST(:startDate AS date) AND CAST(:endDate AS date)")
+           "AND CAST(a.createdAt AS date) BETWEEN CAST(:startDate AS date) AND CAST(:endDate AS date) AND a.trackOnly = false")
     List<Activity> findActivitiesByDateRange(
         @Param("userId") Long userId,
         @Param("startDate") LocalDateTime startDate,
         @Param("endDate") LocalDateTime endDate
-    );    Long countByUserId(Long userId);  // Add this method
+    );    Long countByUserIdAndTrackOnlyFalse(Long userId);
 
-    @Query("SELECT a FROM Activity a WHERE " +
-           "(:userId IS NULL OR a.userId = :userId) AND " +
-           "(:activityType IS NULL OR a.activityType = :activityType) AND " +
-           "(:applicationCategory IS NULL OR a.applicationCategory = :applicationCategory)")
-    Page<Activity> findActivitiesWithFilters(
-        @Param("userId") Long userId,
-        @Param("activityType") String activityType,
-        @Param("applicationCategory") String applicationCategory,
+    long countByTrackOnlyFalse();
+
+    // Row count from SQL Server's partition metadata: instant, but only as fresh as the last stats update,
+    // and it includes the few track-only rows
+    @Query(value = "SELECT SUM(row_count) FROM sys.dm_db_partition_stats " +
+           "WHERE object_id = OBJECT_ID('activities') AND index_id IN (0, 1)", nativeQuery = true)
+    Long estimateRowCount();
+    
+    // Exact organization-wide aggregates, kept alongside the sketch-based estimates for comparison
+    @Query("SELECT a.applicationName, SUM(a.durationSeconds) FROM Activity a " +
+           "WHERE a.createdAt BETWEEN :startDate AND :endDate AND a.applicationName IS NOT NULL AND a.trackOnly = false " +
+           "GROUP BY a.applicationName ORDER BY SUM(a.durationSeconds) DESC")
+    List<Object[]> getTopApplicationsByDuration(
+        @Param("startDate") LocalDateTime startDate,
+        @Param("endDate") LocalDateTime endDate,
         Pageable pageable
     );
-    
+
+    @Query("SELECT COUNT(DISTINCT a.applicationName), COUNT(DISTINCT a.machineId), COUNT(DISTINCT a.userId) " +
+           "FROM Activity a WHERE a.createdAt BETWEEN :startDate AND :endDate AND a.trackOnly = false")
+    List<Object[]> countDistinctInRange(
+        @Param("startDate") LocalDateTime startDate,
+        @Param("endDate") LocalDateTime endDate
+    );
+
     // Methods for orphaned activity detection and cleanup
     @Query("SELECT DISTINCT a.userId FROM Activity a WHERE a.userId NOT IN (SELECT u.id FROM User u)")
     List<Long> findOrphanedActivityUserIds();
@@ -84,4 +143,11 @@ public interface ActivityRepository extends JpaRepository<Activity, Long> {
     
     @Query("SELECT a FROM Activity a WHERE a.userId NOT IN (SELECT u.id FROM User u)")
     List<Activity> findOrphanedActivities();
+
+    // (id, userId, processTracked) of rows about to be deleted, for the change feed's DELETE entries
+    @Query("SELECT a.id, a.userId, a.processTracked FROM Activity a WHERE a.userId = :userId")
+    List<Object[]> findDeletionRefsByUserId(@Param("userId") Long userId);
+
+    @Query("SELECT a.id, a.userId, a.processTracked FROM Activity a WHERE a.userId NOT IN (SELECT u.id FROM User u)")
+    List<Object[]> findOrphanedDeletionRefs();
 }
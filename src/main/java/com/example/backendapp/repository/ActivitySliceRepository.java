@@ -0,0 +1,19 @@
+package com.example.backendapp.repository;
+
+import com.example.backendapp.entity.Activity;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+
+/**
+ * Offset reads without the COUNT query that {@code findAll(Specification, Pageable)} always runs.
+ */
+public interface ActivitySliceRepository {
+
+    /**
+     * Up to {@code limit} rows matching the specification, skipping the first {@code offset} in
+     * {@code sort} order.
+     */
+    List<Activity> findSlice(Specification<Activity> spec, Sort sort, long offset, int limit);
+}
@@ -0,0 +1,51 @@
+package com.example.backendapp.repository;
+
+import com.example.backendapp.entity.Activity;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+
+/**
+ * Predicates for dynamic activity queries. Each filter contributes a predicate only when it is
+ * supplied, so the generated SQL has plain sargable conditions instead of "(:x IS NULL OR col = :x)".
+ */
+public final class ActivitySpecifications {
+
+    private ActivitySpecifications() {
+    }
+
+    public static Specification<Activity> filtered(Long userId, String activityType, String applicationCategory,
+                                                   LocalDateTime startDate, LocalDateTime endDate) {
+        // Track-only rows are process tracks, not activities
+        Specification<Activity> spec = Specification.where((root, query, cb) -> cb.isFalse(root.<Boolean>get("trackOnly")));
+        if (userId != null) {
+            spec = spec.and((root, query, cb) -> cb.equal(root.get("userId"), userId));
+        }
+        if (activityType != null) {
+            spec = spec.and((root, query, cb) -> cb.equal(root.get("activityType"), activityType));
+        }
+        if (applicationCategory != null) {
+            spec = spec.and((root, query, cb) -> cb.equal(root.get("applicationCategory"), applicationCategory));
+        }
+        if (startDate != null) {
+            spec = spec.and((root, query, cb) -> cb.greaterThanOrEqualTo(root.get("createdAt"), startDate));
+        }
+        if (endDate != null) {
+            spec = spec.and((root, query, cb) -> cb.lessThanOrEqualTo(root.get("createdAt"), endDate));
+        }
+        return spec;
+    }
+
+    /**
+     * Rows strictly after the cursor position in (createdAt, id) order, descending or ascending.
+     */
+    public static Specification<Activity> after(LocalDateTime createdAt, Long id, boolean descending) {
+        return (root, query, cb) -> descending
+            ? cb.or(
+                cb.lessThan(root.get("createdAt"), createdAt),
+                cb.and(cb.equal(root.get("createdAt"), createdAt), cb.lessThan(root.get("id"), id)))
+            : cb.or(
+                cb.greaterThan(root.get("createdAt"), createdAt),
+                cb.and(cb.equal(root.get("createdAt"), createdAt), cb.greaterThan(root.get("id"), id)));
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.backendapp.repository;
+
+import com.example.backendapp.entity.Activity;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.stream.Stream;
+
+/**
+ * Forward-only, fetch-size-bounded variants of the large activity reads.
+ *
+ * The returned streams hold an open cursor: callers must consume them inside a read-only
+ * transaction and close them (try-with-resources). The persistence context is cleared every
+ * {@code activity.stream.clear-interval} rows, so entities from the stream are detached and
+ * no other pending changes may live in the same transaction.
+ */
+public interface ActivityStreamRepository {
+
+    /**
+     * Streaming counterpart of {@code findActivitiesByUserIdAndDateRange} and
+     * {@code findByUserIdAndCreatedAtBetween}.
+     */
+    Stream<Activity> streamActivitiesByUserIdAndDateRange(Long userId, LocalDateTime startDate, LocalDateTime endDate);
+
+    /**
+     * Range read across all users, used to rebuild in-memory summaries at startup.
+     */
+    Stream<Activity> streamActivitiesByDateRange(LocalDateTime startDate, LocalDateTime endDate);
+
+    /**
+     * Range read across a set of users, used by the organization-wide aggregation.
+     */
+    Stream<Activity> streamActivitiesByUserIdsAndDateRange(Collection<Long> userIds, LocalDateTime startDate, LocalDateTime endDate);
+
+    /**
+     * Streaming counterpart of {@code findOrphanedActivities}.
+     */
+    Stream<Activity> streamOrphanedActivities();
+}
@@ -0,0 +1,78 @@
+package com.example.backendapp.repository;
+
+import com.example.backendapp.entity.Activity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+public class ActivityStreamRepositoryImpl implements ActivityStreamRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${activity.stream.fetch-size:500}")
+    private int fetchSize;
+
+    @Value("${activity.stream.clear-interval:1000}")
+    private int clearInterval;
+
+    @Override
+    public Stream<Activity> streamActivitiesByUserIdAndDateRange(Long userId, LocalDateTime startDate, LocalDateTime endDate) {
+        TypedQuery<Activity> query = entityManager.createQuery(
+                "SELECT a FROM Activity a WHERE a.userId = :userId AND a.createdAt BETWEEN :startDate AND :endDate " +
+                    "AND a.trackOnly = false",
+                Activity.class)
+            .setParameter("userId", userId)
+            .setParameter("startDate", startDate)
+            .setParameter("endDate", endDate);
+        return stream(query);
+    }
+
+    @Override
+    public Stream<Activity> streamActivitiesByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
+        TypedQuery<Activity> query = entityManager.createQuery(
+                "SELECT a FROM Activity a WHERE a.createdAt BETWEEN :startDate AND :endDate AND a.trackOnly = false", Activity.class)
+            .setParameter("startDate", startDate)
+            .setParameter("endDate", endDate);
+        return stream(query);
+    }
+
+    @Override
+    public Stream<Activity> streamActivitiesByUserIdsAndDateRange(Collection<Long> userIds, LocalDateTime startDate, LocalDateTime endDate) {
+        TypedQuery<Activity> query = entityManager.createQuery(
+                "SELECT a FROM Activity a WHERE a.userId IN :userIds AND a.createdAt BETWEEN :startDate AND :endDate " +
+                    "AND a.trackOnly = false",
+                Activity.class)
+            .setParameter("userIds", userIds)
+            .setParameter("startDate", startDate)
+            .setParameter("endDate", endDate);
+        return stream(query);
+    }
+
+    @Override
+    public Stream<Activity> streamOrphanedActivities() {
+        TypedQuery<Activity> query = entityManager.createQuery(
+            "SELECT a FROM Activity a WHERE a.userId NOT IN (SELECT u.id FROM User u)", Activity.class);
+        return stream(query);
+    }
+
+    private Stream<Activity> stream(TypedQuery<Activity> query) {
+        query.setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize);
+        query.setHint(HibernateHints.HINT_READ_ONLY, true);
+
+        AtomicLong rows = new AtomicLong();
+        return query.getResultStream()
+            .peek(activity -> {
+                if (rows.incrementAndGet() % clearInterval == 0) {
+                    entityManager.clear();
+                }
+            });
+    }
+}
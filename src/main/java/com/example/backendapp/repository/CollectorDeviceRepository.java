@@ -0,0 +1,17 @@
+package com.example.backendapp.repository;
+
+import com.example.backendapp.entity.CollectorDevice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface CollectorDeviceRepository extends JpaRepository<CollectorDevice, Long> {
+    Optional<CollectorDevice> findByDeviceId(String deviceId);
+
+    List<CollectorDevice> findByActiveTrue();
+
+    List<CollectorDevice> findByUserId(Long userId);
+}
@@ -8,6 +8,7 @@ import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 
+// Reads the process_tracks view over activities; process tracks are written as activities
 public interface ProcessTrackRepository extends JpaRepository<ProcessTrack, Long> {
     List<ProcessTrack> findByUserIdAndStartTimeBetween(Long userId, LocalDateTime start, LocalDateTime end);
     
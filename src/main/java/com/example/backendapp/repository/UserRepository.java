@@ -2,10 +2,14 @@
 package com.example.backendapp.repository;
 
 import com.example.backendapp.entity.User;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -18,4 +22,15 @@ public interface UserRepository extends JpaRepository<User, Long> {
     
     @Query("SELECT COUNT(u) FROM User u WHERE u.active = true")
     Long getActiveUsersCount();
+
+    @Query("SELECT u.id FROM User u WHERE u.active = true")
+    List<Long> findActiveUserIds();
+
+    @Query("SELECT u.id FROM User u WHERE u.active = false")
+    List<Long> findInactiveUserIds();
+
+    // Blocks activity inserts for the user (their foreign key check reads this row) until commit
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT u FROM User u WHERE u.id = :id")
+    Optional<User> lockById(@Param("id") Long id);
 }
@@ -0,0 +1,56 @@
+package com.example.backendapp.security;
+
+import com.example.backendapp.config.WorkloadClass;
+import com.example.backendapp.config.WorkloadContext;
+import com.example.backendapp.service.BulkheadService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Classifies each request, admits it through its class's bulkhead and tags the thread so database
+ * work uses that class's connection pool. Shed requests get 503 with Retry-After, which the
+ * collector treats like any other failed batch.
+ */
+@Component
+public class BulkheadFilter extends OncePerRequestFilter {
+
+    @Autowired
+    private BulkheadService bulkheadService;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        WorkloadClass workloadClass = WorkloadClass.of(request);
+        boolean admitted;
+        try {
+            admitted = bulkheadService.acquire(workloadClass);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+        if (!admitted) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", "5");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write("{\"error\":\"Too many concurrent " + workloadClass + " requests\"}");
+            return;
+        }
+
+        WorkloadClass previous = WorkloadContext.enter(workloadClass);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            WorkloadContext.restore(previous);
+            bulkheadService.release(workloadClass);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.backendapp.security;
+
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Authentication of a request signed by an enrolled collector device. The device acts for exactly
+ * one user, and ingest endpoints only accept data for that user.
+ */
+public class DeviceAuthenticationToken extends AbstractAuthenticationToken {
+
+    public static final String ROLE_DEVICE = "ROLE_DEVICE";
+
+    private final String deviceId;
+    private final Long userId;
+
+    public DeviceAuthenticationToken(String deviceId, Long userId) {
+        super(List.of(new SimpleGrantedAuthority(ROLE_DEVICE)));
+        this.deviceId = deviceId;
+        this.userId = userId;
+        setAuthenticated(true);
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    @Override
+    public Object getCredentials() {
+        return null;
+    }
+
+    @Override
+    public Object getPrincipal() {
+        return "device:" + deviceId;
+    }
+
+    /**
+     * The user the current request's device acts for, if the request was device-signed.
+     */
+    public static Optional<Long> currentDeviceUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication instanceof DeviceAuthenticationToken device ? Optional.of(device.getUserId()) : Optional.empty();
+    }
+}
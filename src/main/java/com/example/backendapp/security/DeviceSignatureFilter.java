@@ -0,0 +1,171 @@
+package com.example.backendapp.security;
+
+import com.example.backendapp.config.NodeLocal;
+import com.example.backendapp.service.CollectorDeviceService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Authenticates collector ingest requests signed with a device key instead of a JWT.
+ *
+ * A signed request carries X-Device-Id, X-Device-Timestamp (epoch seconds) and X-Device-Signature,
+ * the Base64 HMAC-SHA256 of
+ * <pre>
+ * METHOD + "\n" + request URI + "\n" + timestamp + "\n" + lowercase hex SHA-256 of the body
+ * </pre>
+ * The digest covers the body as sent; a body with {@code Content-Encoding: gzip} is inflated only
+ * after the signature checks out, up to {@code device.auth.max-inflated-bytes}.
+ * Requests without X-Device-Id fall through to JWT authentication, so existing collectors keep
+ * working. A timestamp outside {@code device.auth.max-skew-seconds} or a bad signature is rejected
+ * with 401 before any controller runs.
+ *
+ * The signature is deterministic, so a captured POST could otherwise be replayed until its timestamp
+ * leaves the skew window. Each node remembers the POST signatures it accepted until then and rejects
+ * a second use; collectors sign every attempt afresh, so their retries are never caught. The memory
+ * is per node, and a capture replayed to another node within the window is still accepted. Signed
+ * GETs only read receipts and are not tracked.
+ */
+@Component
+public class DeviceSignatureFilter extends OncePerRequestFilter {
+
+    public static final String DEVICE_ID_HEADER = "X-Device-Id";
+    public static final String TIMESTAMP_HEADER = "X-Device-Timestamp";
+    public static final String SIGNATURE_HEADER = "X-Device-Signature";
+
+    @Autowired
+    private CollectorDeviceService deviceService;
+
+    @Autowired
+    private TokenRevocationCache tokenRevocationCache;
+
+    @Value("${device.auth.max-skew-seconds:300}")
+    private long maxSkewSeconds;
+
+    @Value("${device.auth.max-body-bytes:1048576}")
+    private int maxBodyBytes;
+
+    @Value("${device.auth.max-inflated-bytes:8388608}")
+    private int maxInflatedBytes;
+
+    // "deviceId:signature" -> epoch second after which the timestamp check rejects it anyway
+    private final ConcurrentHashMap<String, Long> acceptedSignatures = new ConcurrentHashMap<>();
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (request.getHeader(DEVICE_ID_HEADER) == null) {
+            return true;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if ("GET".equals(request.getMethod())) {
+            return !path.startsWith("/api/logs/receipts/");
+        }
+        return !"POST".equals(request.getMethod())
+            || !(path.startsWith("/api/logs/") || path.equals("/api/process-tracking/log") || path.equals("/api/devices/rotate"));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        String deviceId = request.getHeader(DEVICE_ID_HEADER);
+        String timestamp = request.getHeader(TIMESTAMP_HEADER);
+        String signature = request.getHeader(SIGNATURE_HEADER);
+        if (timestamp == null || signature == null) {
+            reject(response, HttpServletResponse.SC_UNAUTHORIZED, "Missing device signature headers");
+            return;
+        }
+        long signedAt;
+        byte[] signatureBytes;
+        try {
+            signedAt = Long.parseLong(timestamp);
+            signatureBytes = Base64.getDecoder().decode(signature);
+        } catch (IllegalArgumentException e) {
+            reject(response, HttpServletResponse.SC_UNAUTHORIZED, "Malformed device signature headers");
+            return;
+        }
+        if (Math.abs(System.currentTimeMillis() / 1000 - signedAt) > maxSkewSeconds) {
+            reject(response, HttpServletResponse.SC_UNAUTHORIZED, "Device timestamp outside the allowed clock skew");
+            return;
+        }
+
+        byte[] body = readBody(request.getInputStream());
+        if (body == null) {
+            reject(response, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Request body too large");
+            return;
+        }
+        String canonical = request.getMethod() + "\n" + request.getRequestURI() + "\n" + timestamp + "\n" + sha256Hex(body);
+        Long userId = deviceService.verify(deviceId, canonical, signatureBytes);
+        if (userId == null || tokenRevocationCache.isInactive(userId)) {
+            reject(response, HttpServletResponse.SC_UNAUTHORIZED, "Invalid device signature");
+            return;
+        }
+        if ("POST".equals(request.getMethod())
+                && acceptedSignatures.putIfAbsent(deviceId + ":" + signature, signedAt + maxSkewSeconds) != null) {
+            reject(response, HttpServletResponse.SC_UNAUTHORIZED, "Replayed device signature");
+            return;
+        }
+
+        if ("gzip".equalsIgnoreCase(request.getHeader("Content-Encoding"))) {
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                body = in.readNBytes(maxInflatedBytes + 1);
+            } catch (ZipException | EOFException e) {
+                reject(response, HttpServletResponse.SC_BAD_REQUEST, "Malformed gzip body");
+                return;
+            }
+            if (body.length > maxInflatedBytes) {
+                reject(response, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Request body too large");
+                return;
+            }
+        }
+
+        SecurityContextHolder.getContext().setAuthentication(new DeviceAuthenticationToken(deviceId, userId));
+        filterChain.doFilter(new CachedBodyHttpServletRequest(request, body), response);
+    }
+
+    @NodeLocal("signatures accepted by this node")
+    @Scheduled(fixedDelayString = "${device.auth.replay-sweep-ms:60000}")
+    public void forgetExpiredSignatures() {
+        long now = System.currentTimeMillis() / 1000;
+        acceptedSignatures.values().removeIf(expiresAt -> expiresAt < now);
+    }
+
+    private byte[] readBody(InputStream in) throws IOException {
+        byte[] body = in.readNBytes(maxBodyBytes + 1);
+        return body.length > maxBodyBytes ? null : body;
+    }
+
+    private static String sha256Hex(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void reject(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"error\":\"" + message + "\"}");
+    }
+}
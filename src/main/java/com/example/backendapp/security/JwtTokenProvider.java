@@ -1,6 +1,7 @@
 package com.example.backendapp.security;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import jakarta.annotation.PostConstruct;
@@ -29,10 +30,14 @@ public class JwtTokenProvider {
 
     private Key key;
 
+    // Thread-safe once built; building one per call dominated the cost of parsing a token
+    private JwtParser parser;
+
     @PostConstruct
     protected void init() {
         byte[] keyBytes = Base64.getEncoder().encode(secretKey.getBytes());
         this.key = Keys.hmacShaKeyFor(keyBytes);
+        this.parser = Jwts.parserBuilder().setSigningKey(key).build();
     }
 
     public String createToken(String username) {
@@ -60,31 +65,27 @@ public class JwtTokenProvider {
                 .compact();
     }
 
+    /**
+     * Verifies the signature and expiry once and returns the claims, or null if the token is invalid.
+     */
+    public Claims parseClaims(String token) {
+        try {
+            return parser.parseClaimsJws(token).getBody();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     public String getUsername(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
+        return parser.parseClaimsJws(token).getBody().getSubject();
     }
     
     public String getRole(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .get("role", String.class);
+        return parser.parseClaimsJws(token).getBody().get("role", String.class);
     }
     
     public Long getUserId(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .get("userId", Long.class);
+        return parser.parseClaimsJws(token).getBody().get("userId", Long.class);
     }
 
     public String resolveToken(HttpServletRequest request) {
@@ -96,11 +97,6 @@ public class JwtTokenProvider {
     }
 
     public boolean validateToken(String token) {
-        try {
-            Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+        return parseClaims(token) != null;
     }
 }
@@ -0,0 +1,81 @@
+package com.example.backendapp.security;
+
+import com.example.backendapp.config.WorkloadClass;
+import com.example.backendapp.service.RateLimiterService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Applies {@link RateLimiterService} after authentication, keyed by device, user or (for anonymous
+ * calls such as login) client address. Limited responses carry RateLimit-Limit, RateLimit-Remaining
+ * and RateLimit-Reset; throttled ones get 429 with Retry-After.
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    @Autowired
+    private RateLimiterService rateLimiterService;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String subject;
+        String role;
+        if (authentication instanceof DeviceAuthenticationToken device) {
+            subject = "device:" + device.getDeviceId();
+            role = "DEVICE";
+        } else if (authentication != null && authentication.isAuthenticated() && !(authentication instanceof AnonymousAuthenticationToken)) {
+            subject = "user:" + authentication.getName();
+            role = highestRole(authentication);
+        } else {
+            subject = "ip:" + request.getRemoteAddr();
+            role = "ANONYMOUS";
+        }
+
+        WorkloadClass workloadClass = WorkloadClass.of(request);
+        RateLimiterService.Decision decision = rateLimiterService.tryAcquire(subject, role, workloadClass);
+        if (decision != null) {
+            response.setHeader("RateLimit-Limit", String.valueOf(decision.limit()));
+            response.setHeader("RateLimit-Remaining", String.valueOf(decision.remaining()));
+            response.setHeader("RateLimit-Reset", String.valueOf(decision.resetSeconds()));
+            if (!decision.allowed()) {
+                response.setStatus(429);
+                response.setHeader("Retry-After", String.valueOf(Math.max(1, decision.retryAfterSeconds())));
+                response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+                response.getWriter().write("{\"error\":\"Rate limit exceeded for " + workloadClass + " requests\"}");
+                return;
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private static String highestRole(Authentication authentication) {
+        String role = "ANONYMOUS";
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            String name = authority.getAuthority();
+            if ("ROLE_SUPERADMIN".equals(name)) {
+                return "SUPERADMIN";
+            }
+            if ("ROLE_ADMIN".equals(name)) {
+                role = "ADMIN";
+            } else if ("ROLE_EMPLOYEE".equals(name) && !"ADMIN".equals(role)) {
+                role = "EMPLOYEE";
+            }
+        }
+        return role;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.backendapp.security;
+
+import com.example.backendapp.config.NodeLocal;
+import com.example.backendapp.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lets the JWT filter trust token claims without loading the user on every request.
+ *
+ * Deactivated and deleted users are rejected outright. A change to a user's username, password or
+ * role rejects every token issued before the change, so the user has to log in again and gets claims
+ * that match. The set of inactive users is loaded at startup; UserService reports every later change.
+ * Change marks are kept for one token lifetime, after which no older token can still be valid.
+ */
+@Component
+public class TokenRevocationCache {
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationCache.class);
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${jwt.expiration}")
+    private long validityInMilliseconds;
+
+    private final Set<Long> inactiveUsers = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Instant> changedAt = new ConcurrentHashMap<>();
+
+    // Loaded before the web server takes requests, so no deactivated user slips through at startup
+    @PostConstruct
+    protected void warmUp() {
+        inactiveUsers.addAll(userRepository.findInactiveUserIds());
+        logger.info("Loaded {} inactive users into the token revocation cache", inactiveUsers.size());
+    }
+
+    public boolean isRevoked(Long userId, Date issuedAt) {
+        if (inactiveUsers.contains(userId)) {
+            return true;
+        }
+        Instant changed = changedAt.get(userId);
+        // iat has whole-second precision, so a token issued in the second of the change is kept
+        return changed != null && (issuedAt == null || issuedAt.toInstant().isBefore(changed.truncatedTo(ChronoUnit.SECONDS)));
+    }
+
+    public boolean isInactive(Long userId) {
+        return inactiveUsers.contains(userId);
+    }
+
+    public void userDeactivated(Long userId) {
+        inactiveUsers.add(userId);
+    }
+
+    public void userActivated(Long userId) {
+        inactiveUsers.remove(userId);
+    }
+
+    public void userChanged(Long userId) {
+        changedAt.put(userId, Instant.now());
+    }
+
+    @NodeLocal("this node's revocation cache")
+    @Scheduled(fixedDelay = 3600000)
+    public void pruneChanges() {
+        Instant cutoff = Instant.now().minusMillis(validityInMilliseconds);
+        changedAt.values().removeIf(changed -> changed.isBefore(cutoff));
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.backendapp.service;
+
+import com.example.backendapp.config.WorkloadClass;
+import com.example.backendapp.config.WorkloadContext;
+import com.example.backendapp.entity.Activity;
+import com.example.backendapp.repository.ActivityRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes activities for a date range straight from a database cursor to an output stream as CSV or
+ * NDJSON, optionally gzipped.
+ *
+ * Rows come from the streaming repository fragment (bounded fetch size, persistence context cleared
+ * as it goes) and pass through a fixed-size write buffer, so heap use does not depend on the number of
+ * rows. A client disconnect surfaces as an IOException on write, which ends the stream and releases
+ * the cursor and connection. Concurrent exports are capped because each holds a connection throughout.
+ */
+@Service
+public class ActivityExportService {
+    private static final Logger logger = LoggerFactory.getLogger(ActivityExportService.class);
+
+    public enum Format { CSV, NDJSON }
+
+    private static final String[] COLUMNS = {
+        "id", "userId", "activityType", "applicationName", "applicationCategory", "processName", "windowTitle",
+        "workspaceType", "status", "durationSeconds", "idleTimeSeconds", "createdAt", "startTime", "endTime", "machineId"
+    };
+
+    @Autowired
+    private ActivityRepository activityRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${activity.export.max-concurrent:2}")
+    private int maxConcurrentExports;
+
+    @Value("${activity.export.buffer-bytes:65536}")
+    private int bufferBytes;
+
+    private Semaphore exportPermits;
+    private TransactionTemplate readOnlyTransaction;
+
+    @PostConstruct
+    protected void init() {
+        exportPermits = new Semaphore(maxConcurrentExports);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Reserves an export slot, or returns null when all are taken. The slot is released by
+     * {@link #export}, but the caller must also release it on any path where the export never runs
+     * (an async request that times out or fails before its body starts).
+     */
+    public ExportSlot tryAcquire() {
+        return exportPermits.tryAcquire() ? new ExportSlot() : null;
+    }
+
+    /**
+     * Streams the export and releases the slot when done.
+     */
+    public long export(ExportSlot slot, Long userId, LocalDateTime startDate, LocalDateTime endDate, Format format,
+                       boolean gzip, OutputStream target) throws IOException {
+        // Runs on an async request thread, which the bulkhead filter never tagged
+        WorkloadClass previous = WorkloadContext.enter(WorkloadClass.REPORTS);
+        try {
+            return write(userId, startDate, endDate, format, gzip, target);
+        } finally {
+            WorkloadContext.restore(previous);
+            slot.release();
+        }
+    }
+
+    /**
+     * Streams the export without taking a slot; report jobs bound their own concurrency.
+     */
+    public long write(Long userId, LocalDateTime startDate, LocalDateTime endDate, Format format, boolean gzip,
+                      OutputStream target) throws IOException {
+        try {
+            OutputStream out = gzip ? new GZIPOutputStream(target, bufferBytes) : target;
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), bufferBytes);
+            Long rows = readOnlyTransaction.execute(status -> {
+                try (Stream<Activity> activities = userId != null
+                        ? activityRepository.streamActivitiesByUserIdAndDateRange(userId, startDate, endDate)
+                        : activityRepository.streamActivitiesByDateRange(startDate, endDate)) {
+                    return format == Format.CSV ? writeCsv(activities.iterator(), writer) : writeNdjson(activities.iterator(), writer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.flush();
+            if (out instanceof GZIPOutputStream gzipOut) {
+                gzipOut.finish();
+            }
+            logger.info("Exported {} activities ({}, gzip={})", rows, format, gzip);
+            return rows != null ? rows : 0L;
+        } catch (UncheckedIOException e) {
+            logger.info("Activity export aborted: {}", e.getCause().getMessage());
+            throw e.getCause();
+        }
+    }
+
+    private long writeCsv(Iterator<Activity> activities, Writer writer) throws IOException {
+        writer.write(String.join(",", COLUMNS));
+        writer.write("\r\n");
+        long rows = 0;
+        while (activities.hasNext()) {
+            checkInterrupted();
+            Object[] values = toRow(activities.next()).values().toArray();
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeCsvValue(writer, values[i]);
+            }
+            writer.write("\r\n");
+            rows++;
+        }
+        return rows;
+    }
+
+    private long writeNdjson(Iterator<Activity> activities, Writer writer) throws IOException {
+        long rows = 0;
+        // The sequence writer must not close the response; the servlet container owns it
+        SequenceWriter sequence = objectMapper.writer().withRootValueSeparator("\n").writeValues(new FilterWriter(writer) {
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        });
+        while (activities.hasNext()) {
+            checkInterrupted();
+            sequence.write(toRow(activities.next()));
+            rows++;
+        }
+        sequence.flush();
+        if (rows > 0) {
+            writer.write('\n');
+        }
+        return rows;
+    }
+
+    private static Map<String, Object> toRow(Activity activity) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", activity.getId());
+        row.put("userId", activity.getUserId());
+        row.put("activityType", activity.getActivityType());
+        row.put("applicationName", activity.getApplicationName());
+        row.put("applicationCategory", activity.getApplicationCategory());
+        row.put("processName", activity.getProcessName());
+        row.put("windowTitle", activity.getWindowTitle());
+        row.put("workspaceType", activity.getWorkspaceType());
+        row.put("status", activity.getStatus());
+        row.put("durationSeconds", activity.getDurationSeconds());
+        row.put("idleTimeSeconds", activity.getIdleTimeSeconds());
+        row.put("createdAt", activity.getCreatedAt() != null ? activity.getCreatedAt().toString() : null);
+        row.put("startTime", activity.getStartTime() != null ? activity.getStartTime().toString() : null);
+        row.put("endTime", activity.getEndTime() != null ? activity.getEndTime().toString() : null);
+        row.put("machineId", activity.getMachineId());
+        return row;
+    }
+
+    private static void writeCsvValue(Writer writer, Object value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        String text = value.toString();
+        if (value instanceof CharSequence && !text.isEmpty() && "=+-@".indexOf(text.charAt(0)) >= 0) {
+            // Keep spreadsheet apps from evaluating window titles as formulas
+            text = "'" + text;
+        }
+        if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+            writer.write('"');
+            writer.write(text.replace("\"", "\"\""));
+            writer.write('"');
+        } else {
+            writer.write(text);
+        }
+    }
+
+    /**
+     * One reserved export slot. Releasing is idempotent, so every path that may end the export can
+     * release it without returning a permit twice.
+     */
+    public final class ExportSlot {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private ExportSlot() {
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                exportPermits.release();
+            }
+        }
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Export cancelled");
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.backendapp.service;
+
+import com.example.backendapp.entity.Activity;
+import com.example.backendapp.repository.ActivityRepository;
+import com.example.backendapp.repository.ActivitySpecifications;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Filtered listing of activities for /api/activities/all.
+ *
+ * Offset mode keeps the original page/size contract, with exact totals by default; a caller that
+ * does not need them can skip the COUNT or take the metadata estimate instead. Keyset mode walks the
+ * (createdAt, id) order from an opaque cursor, so page 1000 costs the same as page 1, and the total
+ * is only computed when asked for: exactly, or estimated from table metadata when no filter is set.
+ *
+ * Both modes cap the page size at {@code activity.query.max-page-size}; every response reports the
+ * size actually used and whether the request was cut down to it.
+ */
+@Service
+@Transactional(readOnly = true)
+public class ActivityQueryService {
+    private static final Logger logger = LoggerFactory.getLogger(ActivityQueryService.class);
+
+    public enum TotalMode { EXACT, ESTIMATE, NONE }
+
+    @Autowired
+    private ActivityRepository activityRepository;
+
+    @Value("${activity.query.max-page-size:500}")
+    private int maxPageSize;
+
+    public Map<String, Object> findPage(Filter filter, int page, int size, String sortBy, String sortDirection, TotalMode totalMode) {
+        Sort sort = Sort.by(Sort.Direction.fromString(sortDirection), sortBy);
+        int limit = clampSize(size);
+
+        Map<String, Object> response = new HashMap<>();
+        if (totalMode == TotalMode.EXACT) {
+            Page<Activity> activitiesPage = activityRepository.findAll(filter.toSpecification(), PageRequest.of(page, limit, sort));
+            response.put("activities", activitiesPage.getContent());
+            response.put("currentPage", activitiesPage.getNumber());
+            response.put("totalItems", activitiesPage.getTotalElements());
+            response.put("totalPages", activitiesPage.getTotalPages());
+        } else {
+            // As in keyset mode, one extra row tells us whether another page exists without a COUNT
+            List<Activity> rows = activityRepository.findSlice(filter.toSpecification(), sort, (long) page * limit, limit + 1);
+            boolean hasMore = rows.size() > limit;
+            response.put("activities", hasMore ? rows.subList(0, limit) : rows);
+            response.put("currentPage", page);
+            response.put("hasMore", hasMore);
+            if (totalMode == TotalMode.ESTIMATE) {
+                response.put("estimatedTotalItems", estimateTotal(filter));
+            }
+        }
+        putPageSize(response, size, limit);
+        response.put("timestamp", LocalDateTime.now());
+        return response;
+    }
+
+    public Map<String, Object> findKeyset(Filter filter, String cursor, int size, String sortDirection, TotalMode totalMode) {
+        boolean descending = Sort.Direction.fromString(sortDirection).isDescending();
+        Sort.Direction direction = descending ? Sort.Direction.DESC : Sort.Direction.ASC;
+        Sort sort = Sort.by(direction, "createdAt").and(Sort.by(direction, "id"));
+        int limit = clampSize(size);
+
+        Specification<Activity> spec = filter.toSpecification();
+        if (cursor != null && !cursor.isBlank()) {
+            Cursor position = Cursor.decode(cursor);
+            spec = spec.and(ActivitySpecifications.after(position.createdAt(), position.id(), descending));
+        }
+
+        // One extra row tells us whether another page exists without a COUNT
+        List<Activity> rows = activityRepository.findBy(spec, query -> query.sortBy(sort).limit(limit + 1).all());
+        boolean hasMore = rows.size() > limit;
+        List<Activity> activities = hasMore ? rows.subList(0, limit) : rows;
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("activities", activities);
+        response.put("hasMore", hasMore);
+        response.put("nextCursor", hasMore ? Cursor.of(activities.get(activities.size() - 1)).encode() : null);
+        putPageSize(response, size, limit);
+        response.put("timestamp", LocalDateTime.now());
+        switch (totalMode) {
+            case EXACT -> response.put("totalItems", activityRepository.count(filter.toSpecification()));
+            case ESTIMATE -> response.put("estimatedTotalItems", estimateTotal(filter));
+            case NONE -> { }
+        }
+        return response;
+    }
+
+    private Long estimateTotal(Filter filter) {
+        if (!filter.isEmpty()) {
+            return null;
+        }
+        try {
+            return activityRepository.estimateRowCount();
+        } catch (Exception e) {
+            logger.debug("Row count estimate unavailable: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private int clampSize(int size) {
+        return Math.max(1, Math.min(size, maxPageSize));
+    }
+
+    private static void putPageSize(Map<String, Object> response, int requested, int used) {
+        response.put("pageSize", used);
+        response.put("pageSizeClamped", used != requested);
+    }
+
+    public record Filter(Long userId, String activityType, String applicationCategory,
+                         LocalDateTime startDate, LocalDateTime endDate) {
+
+        Specification<Activity> toSpecification() {
+            return ActivitySpecifications.filtered(userId, activityType, applicationCategory, startDate, endDate);
+        }
+
+        boolean isEmpty() {
+            return userId == null && activityType == null && applicationCategory == null
+                && startDate == null && endDate == null;
+        }
+    }
+
+    /**
+     * Position after the last row of a page, passed back by the client as an opaque token.
+     */
+    record Cursor(LocalDateTime createdAt, Long id) {
+
+        static Cursor of(Activity activity) {
+            return new Cursor(activity.getCreatedAt(), activity.getId());
+        }
+
+        String encode() {
+            String raw = createdAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String token) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                int separator = raw.lastIndexOf('|');
+                return new Cursor(LocalDateTime.parse(raw.substring(0, separator)), Long.parseLong(raw.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + token);
+            }
+        }
+    }
+}
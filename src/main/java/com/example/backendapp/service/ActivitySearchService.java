@@ -0,0 +1,223 @@
+package com.example.backendapp.service;
+
+import com.example.backendapp.config.NodeLocal;
+import com.example.backendapp.entity.Activity;
+import com.example.backendapp.event.ActivityPersistedEvent;
+import com.example.backendapp.repository.ActivityRepository;
+import com.example.backendapp.service.search.DaySegment;
+import com.example.backendapp.service.search.Tokenizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * Full-text search over window titles and process names without LIKE '%...%' scans.
+ *
+ * Activities are indexed into one {@link DaySegment} per day as ingest commits them, and the whole
+ * retention window is re-indexed at startup, so every day a search can reach is loaded. A background
+ * job folds each segment's live postings into its compact form, and segments older than the
+ * retention window are dropped. Rows removed through clearUserActivities are hidden by per-user
+ * tombstone ranges rather than by rewriting postings; repeated clears merge into the user's ranges.
+ */
+@Service
+public class ActivitySearchService {
+    private static final Logger logger = LoggerFactory.getLogger(ActivitySearchService.class);
+
+    @Autowired
+    private ActivityRepository activityRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${search.index.retention-days:35}")
+    private int retentionDays;
+
+    private final ConcurrentSkipListMap<LocalDate, DaySegment> segments = new ConcurrentSkipListMap<>();
+    private final Map<Long, List<ClearedRange>> clearedRanges = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        // Same cutoff as index() and dropExpiredSegments, so no retained day is left unloaded
+        LocalDateTime start = LocalDate.now().minusDays(retentionDays).atStartOfDay();
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<Activity> activities = activityRepository.streamActivitiesByDateRange(start, LocalDateTime.now())) {
+                    activities.forEach(this::index);
+                }
+            });
+            mergeSegments();
+            logger.info("Indexed {} days of activity for search", segments.size());
+        } catch (Exception e) {
+            logger.error("Could not backfill the activity search index", e);
+        }
+    }
+
+    // Session extensions keep the row's title and process, so only new rows carry new terms
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onActivityPersisted(ActivityPersistedEvent event) {
+        if (!event.isExtension() && !Boolean.TRUE.equals(event.getActivity().getTrackOnly())) {
+            index(event.getActivity());
+        }
+    }
+
+    @NodeLocal("this node's search index")
+    @Scheduled(fixedDelayString = "${search.index.merge-interval-ms:30000}")
+    public void mergeSegments() {
+        for (DaySegment segment : segments.values()) {
+            if (segment.hasLiveTerms()) {
+                segment.merge();
+            }
+        }
+    }
+
+    @NodeLocal("this node's search index")
+    @Scheduled(cron = "0 15 0 * * *")
+    public void dropExpiredSegments() {
+        LocalDate cutoff = LocalDate.now().minusDays(retentionDays);
+        segments.headMap(cutoff).clear();
+        long cutoffSecond = cutoff.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+        for (Long userId : clearedRanges.keySet()) {
+            clearedRanges.computeIfPresent(userId, (id, ranges) -> {
+                List<ClearedRange> kept = ranges.stream().filter(range -> range.to() >= cutoffSecond).toList();
+                return kept.isEmpty() ? null : kept;
+            });
+        }
+    }
+
+    public void markUserCleared(Long userId, LocalDateTime from, LocalDateTime to) {
+        ClearedRange cleared = new ClearedRange(from.toEpochSecond(ZoneOffset.UTC), to.toEpochSecond(ZoneOffset.UTC));
+        clearedRanges.merge(userId, List.of(cleared), (ranges, added) -> ClearedRange.union(ranges, cleared));
+    }
+
+    /**
+     * Activities whose title/process contain every term of {@code query}. A term ending in '*', or any
+     * term when {@code prefix} is set, matches as a prefix. Results are newest day first.
+     */
+    public Map<String, Object> search(String query, String field, boolean prefix, Collection<Long> userIds,
+                                      LocalDateTime startDate, LocalDateTime endDate, int limit) {
+        List<DaySegment.Clause> clauses = parse(query, field, prefix);
+        if (clauses.isEmpty()) {
+            throw new IllegalArgumentException("Query must contain at least one term of two or more characters");
+        }
+        LocalDateTime from = startDate != null ? startDate : LocalDate.now().minusDays(retentionDays).atStartOfDay();
+        LocalDateTime to = endDate != null ? endDate : LocalDateTime.now();
+        long fromSecond = from.toEpochSecond(ZoneOffset.UTC);
+        long toSecond = to.toEpochSecond(ZoneOffset.UTC);
+        Set<Long> userFilter = new HashSet<>(userIds);
+
+        List<Map<String, Object>> matches = new ArrayList<>();
+        Map<Long, Long> matchesByUser = new TreeMap<>();
+        boolean[] truncated = {false};
+        // A row committed while the startup backfill streams can be indexed twice
+        Set<Long> seen = new HashSet<>();
+        for (DaySegment segment : segments.subMap(from.toLocalDate(), true, to.toLocalDate(), true).descendingMap().values()) {
+            segment.search(clauses, userFilter, fromSecond, toSecond, match -> {
+                List<ClearedRange> cleared = clearedRanges.getOrDefault(match.userId(), List.of());
+                if (ClearedRange.anyContains(cleared, match.epochSecond()) || !seen.add(match.activityId())) {
+                    return;
+                }
+                matchesByUser.merge(match.userId(), 1L, Long::sum);
+                if (matches.size() < limit) {
+                    Map<String, Object> row = new HashMap<>();
+                    row.put("activityId", match.activityId());
+                    row.put("userId", match.userId());
+                    row.put("createdAt", LocalDateTime.ofEpochSecond(match.epochSecond(), 0, ZoneOffset.UTC));
+                    matches.add(row);
+                } else {
+                    truncated[0] = true;
+                }
+            });
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("matches", matches);
+        result.put("matchesByUser", matchesByUser);
+        result.put("truncated", truncated[0]);
+        result.put("indexedFrom", segments.isEmpty() ? null : segments.firstKey());
+        return result;
+    }
+
+    private void index(Activity activity) {
+        if (activity.getId() == null || activity.getUserId() == null || activity.getCreatedAt() == null) {
+            return;
+        }
+        LocalDate day = activity.getCreatedAt().toLocalDate();
+        if (day.isBefore(LocalDate.now().minusDays(retentionDays))) {
+            return;
+        }
+        segments.computeIfAbsent(day, DaySegment::new).add(activity.getId(), activity.getUserId(),
+            activity.getCreatedAt().toEpochSecond(ZoneOffset.UTC), activity.getWindowTitle(), activity.getProcessName());
+    }
+
+    private record ClearedRange(long from, long to) {
+
+        boolean contains(long epochSecond) {
+            return epochSecond >= from && epochSecond <= to;
+        }
+
+        static boolean anyContains(List<ClearedRange> ranges, long epochSecond) {
+            for (ClearedRange range : ranges) {
+                if (range.contains(epochSecond)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * The ranges plus {@code added}, sorted, with overlapping or adjacent ranges merged.
+         */
+        static List<ClearedRange> union(List<ClearedRange> ranges, ClearedRange added) {
+            List<ClearedRange> sorted = new ArrayList<>(ranges);
+            sorted.add(added);
+            sorted.sort(Comparator.comparingLong(ClearedRange::from));
+            List<ClearedRange> merged = new ArrayList<>();
+            ClearedRange current = sorted.get(0);
+            for (ClearedRange next : sorted.subList(1, sorted.size())) {
+                if (next.from() <= current.to() + 1) {
+                    current = new ClearedRange(current.from(), Math.max(current.to(), next.to()));
+                } else {
+                    merged.add(current);
+                    current = next;
+                }
+            }
+            merged.add(current);
+            return List.copyOf(merged);
+        }
+    }
+
+    private static List<DaySegment.Clause> parse(String query, String field, boolean prefix) {
+        Set<DaySegment.Field> fields = switch (field == null ? "any" : field.toLowerCase()) {
+            case "title" -> EnumSet.of(DaySegment.Field.TITLE);
+            case "process" -> EnumSet.of(DaySegment.Field.PROCESS);
+            case "any" -> EnumSet.allOf(DaySegment.Field.class);
+            default -> throw new IllegalArgumentException("Unknown field: " + field);
+        };
+        List<DaySegment.Clause> clauses = new ArrayList<>();
+        for (String raw : query.trim().split("\\s+")) {
+            boolean wildcard = raw.endsWith("*");
+            for (String term : Tokenizer.tokenize(wildcard ? raw.substring(0, raw.length() - 1) : raw)) {
+                clauses.add(new DaySegment.Clause(Tokenizer.normalize(term), prefix || wildcard, fields));
+            }
+        }
+        return clauses;
+    }
+}
@@ -2,10 +2,15 @@ package com.example.backendapp.service;
 
 import com.example.backendapp.dto.ActivitySummaryDTO;
 import com.example.backendapp.entity.Activity;
+import com.example.backendapp.event.ActivityPersistedEvent;
 import com.example.backendapp.repository.ActivityRepository;
+import com.example.backendapp.service.analytics.ActivityAggregator;
 import lombok.Data;
 import lombok.AllArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -14,17 +19,44 @@ import java.time.LocalDateTime;
 import java.time.LocalDate;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @Transactional
-public class ActivityTrackingService {    @Autowired
+public class ActivityTrackingService {
+    private static final Logger logger = LoggerFactory.getLogger(ActivityTrackingService.class);
+
+    @Autowired
     private ActivityRepository activityRepository;
 
     @Autowired
     private AntiTamperingService antiTamperingService;
     
     @Autowired
-    private UserService userService;    public Activity logActivity(Activity activity) {
+    private UserService userService;
+
+    @Autowired
+    private AnalyticsResultCache resultCache;
+
+    @Autowired
+    private UserStatusService userStatusService;
+
+    @Autowired
+    private TodayCountersService todayCounters;
+
+    @Autowired
+    private SessionizationService sessionization;
+
+    @Autowired
+    private ActivitySearchService activitySearchService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ChangeFeedService changeFeedService;
+
+    public Activity logActivity(Activity activity) {
         System.out.println("\n=== Pre-Save Activity Validation ===");
         System.out.println("Required Fields Check:");
         System.out.println("userId: " + activity.getUserId());
@@ -48,8 +80,18 @@ public class ActivityTrackingService {    @Autowired
         try {
             enrichActivityData(activity);
             validateActivity(activity);
-            
+
+            SessionizationService.Extension<Activity> extension = sessionization.extendActivity(activity);
+            if (extension != null) {
+                eventPublisher.publishEvent(ActivityPersistedEvent.extended(extension.getRow(),
+                    extension.getAddedDurationSeconds(), extension.getAddedIdleSeconds(), activity.getCreatedAt()));
+                logger.debug("Activity merged into session with ID: {}", extension.getRow().getId());
+                return extension.getRow();
+            }
+
             Activity savedActivity = activityRepository.save(activity);
+            sessionization.openActivity(savedActivity);
+            eventPublisher.publishEvent(new ActivityPersistedEvent(savedActivity));
             System.out.println("Activity saved successfully with ID: " + savedActivity.getId());
             return savedActivity;
         } catch (Exception e) {
@@ -66,71 +108,69 @@ public class ActivityTrackingService {    @Autowired
     }
 
     public Map<String, Long> getDailyApplicationUsage(Long userId) {
-        List<Activity> activities = activityRepository.findTodayActivitiesByUserId(userId);
-        return activities.stream()
-                .filter(a -> "APPLICATION_USAGE".equals(a.getActivityType()))
-                .collect(Collectors.groupingBy(
-                    Activity::getApplicationName,
-                    Collectors.summingLong(Activity::getDurationSeconds)
-                ));
+        return todayCounters.getApplicationUsage(userId);
     }
 
     public Long getProductiveTimeToday(Long userId) {
-        return activityRepository.getTotalDurationByActivityType(userId, "PRODUCTIVE");
+        return todayCounters.getProductiveSeconds(userId);
     }
 
     public void clearUserActivities(Long userId) {
         LocalDateTime thirtyDaysAgo = LocalDateTime.now().minusDays(30);
+        LocalDateTime now = LocalDateTime.now();
         List<Activity> activities = activityRepository.findActivitiesInDateRange(
             userId, 
             thirtyDaysAgo,
-            LocalDateTime.now()
+            now
         );
+        changeFeedService.recordDeleted(activities);
         activityRepository.deleteAll(activities);
+        resultCache.invalidateUser(userId);
+        userStatusService.evict(userId);
+        todayCounters.evict(userId);
+        activitySearchService.markUserCleared(userId, thirtyDaysAgo, now);
     }
 
     public ActivitySummaryDTO getActivitySummary(Long userId, LocalDateTime startDate, LocalDateTime endDate) {
-        List<Activity> activities = activityRepository.findActivitiesByDateRange(userId, startDate, endDate);
-        ActivitySummaryDTO summary = new ActivitySummaryDTO();
+        // The range query compares whole dates, so the window is widened to day boundaries and every
+        // closed day in it is a cached bucket
+        ActivitySummaryDTO summary = resultCache.get(AnalyticsResultCache.ACTIVITY_SUMMARY, userId,
+            startDate.toLocalDate().atStartOfDay(), AnalyticsResultCache.endOfDay(endDate.toLocalDate()),
+            (from, to) -> summarizeActivities(userId, from, to),
+            ActivityAggregator::new, ActivityAggregator::merge, ActivityTrackingService::toSummary);
+
         summary.setUserId(userId);
+        // Idle time is today's total regardless of the window; it comes from the live counters, not the cache
+        summary.setTotalIdleTime(todayCounters.getIdleSeconds(userId));
+
+        return summary;
+    }
 
-        Map<String, Long> appUsage = activities.stream()
-            .filter(a -> a.getApplicationName() != null)
-            .collect(Collectors.groupingBy(
-                Activity::getApplicationName,
-                Collectors.summingLong(Activity::getDurationSeconds)
-            ));
+    private ActivityAggregator summarizeActivities(Long userId, LocalDateTime startDate, LocalDateTime endDate) {
+        ActivityAggregator aggregator = new ActivityAggregator(startDate, endDate);
+        activityRepository.findActivitiesByDateRange(userId, startDate, endDate).forEach(aggregator::accept);
+        return aggregator;
+    }
 
+    private static ActivitySummaryDTO toSummary(ActivityAggregator aggregate) {
+        Map<String, Long> appUsage = aggregate.toApplicationUsage();
+        ActivitySummaryDTO summary = new ActivitySummaryDTO();
         summary.setApplicationUsageDuration(appUsage);
-        summary.setTotalProductiveTime(calculateProductiveTime(activities));
-        summary.setTotalIdleTime(activityRepository.getTotalIdleTimeNative(userId)); // Use native query
+        summary.setTotalProductiveTime(aggregate.getActiveSeconds());
         summary.setMostUsedApplication(findMostUsedApp(appUsage));
-
         return summary;
     }
 
     public Map<String, Long> getApplicationUsageByCategory(Long userId) {
-        return activityRepository.findTodayActivitiesByUserId(userId).stream()
-            .filter(a -> a.getApplicationCategory() != null)
-            .collect(Collectors.groupingBy(
-                Activity::getApplicationCategory,
-                Collectors.summingLong(Activity::getDurationSeconds)
-            ));
+        return todayCounters.getCategoryUsage(userId);
     }
 
     public Activity getLatestActivity(Long userId) {
-        return activityRepository.findLatestActivityByUserId(userId)
+        return activityRepository.findFirstByUserIdAndTrackOnlyFalseOrderByCreatedAtDesc(userId)
             .orElseThrow(() -> new RuntimeException("No activity found for user: " + userId));
     }
 
-    private Long calculateProductiveTime(List<Activity> activities) {
-        return activities.stream()
-            .filter(a -> a.getStatus() == Activity.ActivityStatus.ACTIVE)
-            .mapToLong(Activity::getDurationSeconds)
-            .sum();
-    }
-
-    private String findMostUsedApp(Map<String, Long> appUsage) {
+    private static String findMostUsedApp(Map<String, Long> appUsage) {
         return appUsage.entrySet().stream()
             .max(Map.Entry.comparingByValue())
             .map(Map.Entry::getKey)
@@ -172,75 +212,79 @@ public class ActivityTrackingService {    @Autowired
         }
     }
 
+    /**
+     * Builds the detailed (tamper) report in one pass over a streamed range, so memory is bounded by
+     * the number of days and applications rather than by the number of rows.
+     */
+    @Transactional(readOnly = true)
     public Map<String, Object> getDetailedActivitySummary(Long userId, LocalDateTime startDate, LocalDateTime endDate) {
-        Map<String, Object> summary = new HashMap<>();
-        List<Activity> activities = activityRepository.findActivitiesByUserIdAndDateRange(userId, startDate, endDate);
-        
-        summary.put("totalActivities", activities.size());
-        summary.put("productiveTime", calculateProductiveTime(activities));
-        summary.put("applicationUsage", getApplicationUsageStats(activities));
-        summary.put("tamperAttempts", getTamperAttempts(activities));
-        summary.put("timelineAnalysis", analyzeTimeline(activities));
-        
-        return summary;
-    }
+        long totalActivities = 0;
+        long productiveTime = 0;
+        Map<String, Long> applicationUsage = new HashMap<>();
+        List<TamperReport> tamperAttempts = new ArrayList<>();
+        Map<String, Map<String, Object>> timeline = new HashMap<>();
 
-    private Map<String, Object> analyzeTimeline(List<Activity> activities) {
-        return activities.stream()
-            .collect(Collectors.groupingBy(
-                activity -> activity.getCreatedAt().toLocalDate().toString(), // Convert to String
-                Collectors.collectingAndThen(
-                    Collectors.toList(),
-                    dailyActivities -> {
-                        Map<String, Object> dailyStats = new HashMap<>();
-                        dailyStats.put("totalTime", calculateTotalTime(dailyActivities));
-                        dailyStats.put("productiveTime", calculateProductiveTime(dailyActivities));
-                        dailyStats.put("applications", getUniqueApplications(dailyActivities));
-                        return dailyStats;
-                    }
-                )
-            ));
-    }
+        try (Stream<Activity> activities = activityRepository.streamActivitiesByUserIdAndDateRange(userId, startDate, endDate)) {
+            Iterator<Activity> iterator = activities.iterator();
+            while (iterator.hasNext()) {
+                Activity activity = iterator.next();
+                long duration = activity.getDurationSeconds() != null ? activity.getDurationSeconds() : 0L;
+                boolean productive = activity.getStatus() == Activity.ActivityStatus.ACTIVE;
 
-    private List<TamperReport> getTamperAttempts(List<Activity> activities) {
-        return activities.stream()
-            .filter(Activity::getTamperAttempt)
-            .map(activity -> new TamperReport(
-                activity.getCreatedAt(),
-                activity.getTamperDetails(),
-                activity.getMachineId(),
-                activity.getIpAddress()
-            ))
-            .collect(Collectors.toList());
-    }
+                totalActivities++;
+                if (productive) {
+                    productiveTime += duration;
+                }
+                if (activity.getApplicationName() != null) {
+                    applicationUsage.merge(activity.getApplicationName(), duration, Long::sum);
+                }
+                if (Boolean.TRUE.equals(activity.getTamperAttempt())) {
+                    tamperAttempts.add(new TamperReport(
+                        activity.getCreatedAt(),
+                        activity.getTamperDetails(),
+                        activity.getMachineId(),
+                        activity.getIpAddress()
+                    ));
+                }
+                addToTimeline(timeline, activity, duration, productive);
+            }
+        }
 
-    private Map<String, Long> getApplicationUsageStats(List<Activity> activities) {
-        return activities.stream()
-            .filter(a -> a.getApplicationName() != null)
-            .collect(Collectors.groupingBy(
-                Activity::getApplicationName,
-                Collectors.summingLong(Activity::getDurationSeconds)
-            ));
-    }
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("totalActivities", totalActivities);
+        summary.put("productiveTime", productiveTime);
+        summary.put("applicationUsage", applicationUsage);
+        summary.put("tamperAttempts", tamperAttempts);
+        summary.put("timelineAnalysis", timeline);
 
-    private Long calculateTotalTime(List<Activity> activities) {
-        return activities.stream()
-            .mapToLong(Activity::getDurationSeconds)
-            .sum();
+        return summary;
     }
 
-    private Set<String> getUniqueApplications(List<Activity> activities) {
-        return activities.stream()
-            .map(Activity::getApplicationName)
-            .filter(Objects::nonNull)
-            .collect(Collectors.toCollection(HashSet::new)); // Use HashSet for better type safety
+    @SuppressWarnings("unchecked")
+    private void addToTimeline(Map<String, Map<String, Object>> timeline, Activity activity, long duration, boolean productive) {
+        Map<String, Object> dailyStats = timeline.computeIfAbsent(
+            activity.getCreatedAt().toLocalDate().toString(),
+            day -> {
+                Map<String, Object> stats = new HashMap<>();
+                stats.put("totalTime", 0L);
+                stats.put("productiveTime", 0L);
+                stats.put("applications", new HashSet<String>());
+                return stats;
+            });
+        dailyStats.merge("totalTime", duration, (a, b) -> (Long) a + (Long) b);
+        if (productive) {
+            dailyStats.merge("productiveTime", duration, (a, b) -> (Long) a + (Long) b);
+        }
+        if (activity.getApplicationName() != null) {
+            ((Set<String>) dailyStats.get("applications")).add(activity.getApplicationName());
+        }
     }
 
     public Long getTotalActivitiesCount() {
-        return activityRepository.count();
+        return activityRepository.countByTrackOnlyFalse();
     }    // Additional helper method to get count for a specific user
     public Long getTotalActivitiesCountForUser(Long userId) {
-        return activityRepository.countByUserId(userId);
+        return activityRepository.countByUserIdAndTrackOnlyFalse(userId);
     }
     
     /**
@@ -283,6 +327,7 @@ public class ActivityTrackingService {    @Autowired
         
         System.out.println("Cleaning up " + orphanedCount + " orphaned activities for user IDs: " + orphanedUserIds);
         
+        changeFeedService.recordDeletedRows(activityRepository.findOrphanedDeletionRefs());
         int deletedCount = activityRepository.deleteOrphanedActivities();
         
         System.out.println("Successfully deleted " + deletedCount + " orphaned activities.");
@@ -292,10 +337,14 @@ public class ActivityTrackingService {    @Autowired
     
     /**
      * Get detailed information about orphaned activities
+     * @param limit maximum number of rows to return; the rest are never loaded
      * @return List of orphaned activities with full details
      */
-    public List<Activity> getOrphanedActivitiesDetails() {
-        return activityRepository.findOrphanedActivities();
+    @Transactional(readOnly = true)
+    public List<Activity> getOrphanedActivitiesDetails(int limit) {
+        try (Stream<Activity> orphaned = activityRepository.streamOrphanedActivities()) {
+            return orphaned.limit(limit).collect(Collectors.toList());
+        }
     }
 
     @Data
@@ -0,0 +1,200 @@
+package com.example.backendapp.service;
+
+import com.example.backendapp.event.ActivityPersistedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Caches analytics as per-day partial results keyed by (endpoint, userId, day) and combines them per
+ * request.
+ *
+ * A request window is split at midnight. Each whole day before today is served from its bucket,
+ * computed once on a miss; today and the partial days at either end of the window (a rolling "now"
+ * as the end, a mid-day start) are always computed from the database. The buckets are then merged
+ * into a fresh accumulator and the result is built from it, so a cached bucket is never handed out
+ * or modified, and a dashboard that moves its window by a day reuses every closed day it saw before.
+ *
+ * Closed days have no TTL: a bucket is dropped only when a committed write for the same user lands
+ * on that day (late collector uploads do), when the user's data is cleared, or when it is evicted by
+ * size. Writes flushed by another node or made by bulk SQL are not seen until then (see the note on
+ * ingest.queue.mode).
+ */
+@Component
+public class AnalyticsResultCache {
+
+    public static final String PRODUCTIVITY = "analytics/productivity";
+    public static final String ACTIVITY_SUMMARY = "activities/summary";
+    public static final String PROCESS_ANALYTICS = "process-tracking/analytics";
+
+    private static final Set<String> ACTIVITY_ENDPOINTS = Set.of(PRODUCTIVITY, ACTIVITY_SUMMARY);
+    private static final Set<String> PROCESS_TRACK_ENDPOINTS = Set.of(PROCESS_ANALYTICS);
+
+    // Last instant of a day that a datetime2(6) column holds; the range queries use inclusive BETWEEN
+    private static final LocalTime DAY_END = LocalTime.of(23, 59, 59, 999_999_000);
+
+    @Value("${analytics.cache.max-entries:10000}")
+    private int maxEntries;
+
+    // Longer windows are computed in one query and not cached rather than loaded one day at a time
+    @Value("${analytics.cache.max-days:93}")
+    private int maxDays;
+
+    private final Object lock = new Object();
+    private final Map<Long, Set<CacheKey>> keysByUser = new HashMap<>();
+    private final Map<Long, Long> generations = new HashMap<>();
+    private final LinkedHashMap<CacheKey, Object> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CacheKey, Object> eldest) {
+            if (size() > maxEntries) {
+                unindex(eldest.getKey());
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Computes the result for [start, end] from per-day partials. The loader computes the partial for
+     * an inclusive sub-range of one day (or for the whole window when it is too long to split); the
+     * partials are folded into {@code empty.get()} by {@code merger} and the result is built by
+     * {@code finisher}. Loaders run outside the lock; a bucket loaded while the user's data changed is
+     * used for this result but not cached.
+     */
+    @SuppressWarnings("unchecked")
+    public <P, R> R get(String endpoint, Long userId, LocalDateTime start, LocalDateTime end,
+                        BiFunction<LocalDateTime, LocalDateTime, P> loader,
+                        Supplier<P> empty, BiConsumer<P, P> merger, Function<P, R> finisher) {
+        P total = empty.get();
+        if (end.isBefore(start)) {
+            return finisher.apply(total);
+        }
+        LocalDate today = LocalDate.now();
+        if (end.toLocalDate().toEpochDay() - start.toLocalDate().toEpochDay() >= maxDays) {
+            merge(merger, total, loader.apply(start, end));
+            return finisher.apply(total);
+        }
+
+        for (LocalDate day = start.toLocalDate(); !day.isAfter(end.toLocalDate()); day = day.plusDays(1)) {
+            LocalDateTime from = day.atStartOfDay();
+            LocalDateTime to = endOfDay(day);
+            if (start.isAfter(from) || end.isBefore(to) || !day.isBefore(today)) {
+                merge(merger, total, loader.apply(start.isAfter(from) ? start : from, end.isBefore(to) ? end : to));
+                continue;
+            }
+
+            CacheKey key = new CacheKey(endpoint, userId, day);
+            Object cached;
+            long generation;
+            synchronized (lock) {
+                cached = entries.get(key);
+                generation = generations.getOrDefault(userId, 0L);
+            }
+            if (cached == null) {
+                P bucket = loader.apply(from, to);
+                if (bucket == null) {
+                    continue;
+                }
+                synchronized (lock) {
+                    if (generations.getOrDefault(userId, 0L) == generation) {
+                        entries.put(key, bucket);
+                        keysByUser.computeIfAbsent(userId, id -> new HashSet<>()).add(key);
+                    }
+                }
+                cached = bucket;
+            }
+            merger.accept(total, (P) cached);
+        }
+        return finisher.apply(total);
+    }
+
+    /**
+     * Inclusive end of {@code day} for callers that widen a window to whole days.
+     */
+    public static LocalDateTime endOfDay(LocalDate day) {
+        return day.atTime(DAY_END);
+    }
+
+    /**
+     * Drops the user's buckets for the given endpoints on the day of {@code at}.
+     */
+    public void invalidate(Long userId, LocalDateTime at, Set<String> endpoints) {
+        if (userId == null || at == null) {
+            return;
+        }
+        LocalDate day = at.toLocalDate();
+        synchronized (lock) {
+            generations.merge(userId, 1L, Long::sum);
+            Set<CacheKey> keys = keysByUser.get(userId);
+            if (keys == null) {
+                return;
+            }
+            Iterator<CacheKey> iterator = keys.iterator();
+            while (iterator.hasNext()) {
+                CacheKey key = iterator.next();
+                if (endpoints.contains(key.endpoint()) && key.day().equals(day)) {
+                    entries.remove(key);
+                    iterator.remove();
+                }
+            }
+            if (keys.isEmpty()) {
+                keysByUser.remove(userId);
+            }
+        }
+    }
+
+    public void invalidateUser(Long userId) {
+        synchronized (lock) {
+            generations.merge(userId, 1L, Long::sum);
+            Set<CacheKey> keys = keysByUser.remove(userId);
+            if (keys != null) {
+                keys.forEach(entries::remove);
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onActivityPersisted(ActivityPersistedEvent event) {
+        if (!Boolean.TRUE.equals(event.getActivity().getTrackOnly())) {
+            invalidate(event.getActivity().getUserId(), event.getActivity().getCreatedAt(), ACTIVITY_ENDPOINTS);
+        }
+        // Collector rows are also process tracks; track-only rows are nothing else
+        if (Boolean.TRUE.equals(event.getActivity().getProcessTracked())) {
+            invalidate(event.getActivity().getUserId(), event.getActivity().getStartTime(), PROCESS_TRACK_ENDPOINTS);
+        }
+    }
+
+    public int size() {
+        synchronized (lock) {
+            return entries.size();
+        }
+    }
+
+    private static <P> void merge(BiConsumer<P, P> merger, P total, P partial) {
+        if (partial != null) {
+            merger.accept(total, partial);
+        }
+    }
+
+    private void unindex(CacheKey key) {
+        Set<CacheKey> keys = keysByUser.get(key.userId());
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                keysByUser.remove(key.userId());
+            }
+        }
+    }
+
+    record CacheKey(String endpoint, Long userId, LocalDate day) {
+    }
+}
@@ -3,13 +3,19 @@ package com.example.backendapp.service;
 import com.example.backendapp.dto.analytics.ProductivityAnalyticsDTO;
 import com.example.backendapp.entity.Activity;
 import com.example.backendapp.repository.ActivityRepository;
+import com.example.backendapp.service.analytics.ActivityAggregator;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import com.example.backendapp.dto.analytics.TaskAnalyticsDTO;
 import com.example.backendapp.dto.analytics.WorkspaceAnalyticsDTO;
@@ -25,17 +31,27 @@ public class AnalyticsService {
     @Autowired
     private TaskRepository taskRepository;
 
+    @Autowired
+    private AnalyticsResultCache resultCache;
+
+    @Autowired
+    private CompositeAnalyticsExecutor compositeExecutor;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    @PostConstruct
+    protected void init() {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
     public ProductivityAnalyticsDTO analyzeProductivity(Long userId, LocalDateTime startDate, LocalDateTime endDate) {
-        List<Activity> activities = activityRepository.findActivitiesByUserIdAndDateRange(userId, startDate, endDate);
-        
-        return ProductivityAnalyticsDTO.builder()
-            .dailyProductivityScore(calculateDailyProductivityScores(activities))
-            .applicationUsageTime(calculateApplicationUsage(activities))
-            .averageProductiveHoursPerDay(calculateAverageProductiveHours(activities))
-            .totalProductiveMinutes(calculateTotalProductiveTime(activities))
-            .totalIdleMinutes(calculateTotalIdleTime(activities))
-            .productivityByTimeOfDay(analyzeProductivityByTimeOfDay(activities))
-            .build();
+        return resultCache.get(AnalyticsResultCache.PRODUCTIVITY, userId, startDate, endDate,
+            (from, to) -> aggregateActivities(userId, from, to),
+            ActivityAggregator::new, ActivityAggregator::merge, ActivityAggregator::toProductivityAnalytics);
     }
 
     public TaskAnalyticsDTO analyzeTaskCompletion(Long userId, LocalDateTime startDate, LocalDateTime endDate) {
@@ -55,102 +71,57 @@ public class AnalyticsService {
     }
 
     public WorkspaceAnalyticsDTO analyzeWorkspaces(Long userId, LocalDateTime startDate, LocalDateTime endDate) {
-        List<Activity> activities = activityRepository.findActivitiesByUserIdAndDateRange(userId, startDate, endDate);
-        
-        Map<String, Long> productiveTime = calculateWorkspaceTime(activities, "PRODUCTIVE");
-        Map<String, Long> localTime = calculateWorkspaceTime(activities, "LOCAL");
-        
-        return WorkspaceAnalyticsDTO.builder()
-            .productiveWorkspaceTime(productiveTime)
-            .localWorkspaceTime(localTime)
-            .productiveVsLocalRatio(calculateWorkspaceRatio(productiveTime, localTime))
-            .workspaceEfficiencyScores(calculateWorkspaceEfficiency(activities))
-            .applicationUsageByWorkspace(getApplicationUsageByWorkspace(activities))
-            .build();
-    }
-
-    private Map<LocalDate, Double> calculateDailyProductivityScores(List<Activity> activities) {
-        return activities.stream()
-            .collect(Collectors.groupingBy(
-                activity -> activity.getCreatedAt().toLocalDate(),
-                Collectors.collectingAndThen(
-                    Collectors.toList(),
-                    dailyActivities -> {
-                        long productiveTime = calculateProductiveTime(dailyActivities);
-                        long totalTime = calculateTotalTime(dailyActivities);
-                        return totalTime > 0 ? (double) productiveTime / totalTime : 0.0;
-                    }
-                )
-            ));
-    }
-
-    private Map<String, Double> analyzeProductivityByTimeOfDay(List<Activity> activities) {
-        Map<String, Double> productivityByHour = new HashMap<>();
-        
-        activities.stream()
-            .collect(Collectors.groupingBy(
-                activity -> activity.getCreatedAt().getHour(),
-                Collectors.averagingDouble(activity -> 
-                    Activity.ActivityStatus.ACTIVE.equals(activity.getStatus()) ? 1.0 : 0.0)
-            ))
-            .forEach((hour, productivity) -> 
-                productivityByHour.put(formatHourRange(hour), productivity * 100));
-        
-        return productivityByHour;
-    }
-
-    private String formatHourRange(int hour) {
-        return String.format("%02d:00-%02d:00", hour, (hour + 1) % 24);
-    }
-
-    private long calculateProductiveTime(List<Activity> activities) {
-        return activities.stream()
-            .filter(a -> Activity.ActivityStatus.ACTIVE.equals(a.getStatus()))
-            .mapToLong(Activity::getDurationSeconds)
-            .sum();
-    }
-
-    private long calculateTotalTime(List<Activity> activities) {
-        return activities.stream()
-            .mapToLong(Activity::getDurationSeconds)
-            .sum();
-    }
-
-    private Double calculateAverageProductiveHours(List<Activity> activities) {
-        Map<LocalDate, Long> dailyProductiveMinutes = activities.stream()
-            .filter(a -> Activity.ActivityStatus.ACTIVE.equals(a.getStatus()))
-            .collect(Collectors.groupingBy(
-                a -> a.getCreatedAt().toLocalDate(),
-                Collectors.summingLong(Activity::getDurationSeconds)
-            ));
-
-        return dailyProductiveMinutes.values().stream()
-            .mapToDouble(seconds -> seconds / 3600.0)
-            .average()
-            .orElse(0.0);
-    }
-
-    private Map<String, Long> calculateApplicationUsage(List<Activity> activities) {
-        return activities.stream()
-            .filter(a -> a.getApplicationName() != null)
-            .collect(Collectors.groupingBy(
-                Activity::getApplicationName,
-                Collectors.summingLong(Activity::getDurationSeconds)
-            ));
-    }
-
-    private Long calculateTotalProductiveTime(List<Activity> activities) {
-        return activities.stream()
-            .filter(a -> Activity.ActivityStatus.ACTIVE.equals(a.getStatus()))
-            .mapToLong(Activity::getDurationSeconds)
-            .sum() / 60; // Convert seconds to minutes
-    }
-
-    private Long calculateTotalIdleTime(List<Activity> activities) {
-        return activities.stream()
-            .filter(a -> Activity.ActivityStatus.IDLE.equals(a.getStatus()))
-            .mapToLong(Activity::getDurationSeconds)
-            .sum() / 60; // Convert seconds to minutes
+        return aggregateActivities(userId, startDate, endDate).toWorkspaceAnalytics();
+    }
+
+    /**
+     * Backs /efficiency-metrics: the activity range is fetched and scanned once and both the
+     * workspace and productivity views are built from the same aggregate. Task analytics and the
+     * activity scan run concurrently; if either misses the deadline the response is flagged partial.
+     */
+    public Map<String, Object> analyzeEfficiencyMetrics(Long userId, LocalDateTime startDate, LocalDateTime endDate) {
+        Map<String, Callable<?>> parts = new LinkedHashMap<>();
+        parts.put("tasks", () -> analyzeTaskCompletion(userId, startDate, endDate));
+        parts.put("activities", () -> aggregateActivities(userId, startDate, endDate));
+        CompositeAnalyticsExecutor.CompositeResult result = compositeExecutor.run(parts);
+
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("tasks", result.getResults().get("tasks"));
+        ActivityAggregator aggregate = (ActivityAggregator) result.getResults().get("activities");
+        if (aggregate != null) {
+            metrics.put("workspaces", aggregate.toWorkspaceAnalytics());
+            metrics.put("productivity", aggregate.toProductivityAnalytics());
+        }
+        metrics.put("partial", result.isPartial());
+        metrics.put("incomplete", result.getIncomplete());
+        return metrics;
+    }
+
+    /**
+     * Same metrics without the request deadline, for report jobs: the parts run one after the other
+     * on the calling worker and the result is never partial.
+     */
+    public Map<String, Object> computeEfficiencyMetrics(Long userId, LocalDateTime startDate, LocalDateTime endDate) {
+        ActivityAggregator aggregate = aggregateActivities(userId, startDate, endDate);
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("tasks", analyzeTaskCompletion(userId, startDate, endDate));
+        metrics.put("workspaces", aggregate.toWorkspaceAnalytics());
+        metrics.put("productivity", aggregate.toProductivityAnalytics());
+        metrics.put("partial", false);
+        metrics.put("incomplete", List.of());
+        return metrics;
+    }
+
+    // Streams the range through the aggregator so memory does not grow with the length of the window.
+    // This runs on request threads and fan-out threads alike, so it opens its own read-only transaction.
+    private ActivityAggregator aggregateActivities(Long userId, LocalDateTime startDate, LocalDateTime endDate) {
+        return readOnlyTransaction.execute(status -> {
+            ActivityAggregator aggregator = new ActivityAggregator(startDate, endDate);
+            try (Stream<Activity> activities = activityRepository.streamActivitiesByUserIdAndDateRange(userId, startDate, endDate)) {
+                activities.forEach(aggregator::accept);
+            }
+            return aggregator;
+        });
     }
 
     private Map<String, Double> calculateTaskCompletionRates(List<Task> tasks) {
@@ -164,28 +135,6 @@ public class AnalyticsService {
             ));
     }
 
-    private Map<String, Map<String, Long>> getApplicationUsageByWorkspace(List<Activity> activities) {
-        return activities.stream()
-            .filter(a -> a.getApplicationName() != null && a.getWorkspaceType() != null)
-            .collect(Collectors.groupingBy(
-                Activity::getWorkspaceType,
-                Collectors.groupingBy(
-                    Activity::getApplicationName,
-                    Collectors.summingLong(Activity::getDurationSeconds)
-                )
-            ));
-    }
-
-    private Map<String, Double> calculateWorkspaceEfficiency(List<Activity> activities) {
-        return activities.stream()
-            .filter(a -> a.getWorkspaceType() != null)
-            .collect(Collectors.groupingBy(
-                Activity::getWorkspaceType,
-                Collectors.averagingDouble(activity -> 
-                    Activity.ActivityStatus.ACTIVE.equals(activity.getStatus()) ? 1.0 : 0.0)
-            ));
-    }
-
     private Double calculateAverageCompletionTime(List<Task> tasks) {
         return tasks.stream()
             .filter(task -> task.getCompletionTime() != null && task.getStartTime() != null)
@@ -207,21 +156,6 @@ public class AnalyticsService {
             ));
     }
 
-    private Map<String, Long> calculateWorkspaceTime(List<Activity> activities, String workspaceType) {
-        return activities.stream()
-            .filter(a -> workspaceType.equals(a.getWorkspaceType()))
-            .collect(Collectors.groupingBy(
-                Activity::getApplicationName,
-                Collectors.summingLong(Activity::getDurationSeconds)
-            ));
-    }
-
-    private Double calculateWorkspaceRatio(Map<String, Long> productiveTime, Map<String, Long> localTime) {
-        long totalProductive = productiveTime.values().stream().mapToLong(Long::longValue).sum();
-        long totalLocal = localTime.values().stream().mapToLong(Long::longValue).sum();
-        return totalLocal == 0 ? 0.0 : (double) totalProductive / totalLocal;
-    }
-
     private Map<LocalDate, Integer> getTasksCompletedByDate(List<Task> tasks) {
         return tasks.stream()
             .filter(task -> task.getStatus() == Task.TaskStatus.COMPLETED && task.getCompletionTime() != null)
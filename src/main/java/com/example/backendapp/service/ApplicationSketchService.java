@@ -0,0 +1,288 @@
+package com.example.backendapp.service;
+
+import com.example.backendapp.config.NodeLocal;
+import com.example.backendapp.entity.Activity;
+import com.example.backendapp.event.ActivityPersistedEvent;
+import com.example.backendapp.repository.ActivityRepository;
+import com.example.backendapp.service.analytics.sketch.CountMinSketch;
+import com.example.backendapp.service.analytics.sketch.HeavyHitters;
+import com.example.backendapp.service.analytics.sketch.HyperLogLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * Organization-wide top applications and distinct counts answered from mergeable sketches kept per
+ * hour bucket, instead of a GROUP BY over the whole activities table.
+ *
+ * Each bucket holds a Count-Min sketch and a Space-Saving summary of application duration, plus
+ * HyperLogLog counters for distinct applications, machines and users. A range query merges the
+ * buckets it covers; see the sketch classes for the error bounds reported with every answer.
+ * Buckets are fed by committed activity writes and rebuilt from the database at startup. Writes that
+ * commit while the rebuild streams are held back and applied afterwards unless the stream already
+ * counted them, as in {@link TodayCountersService}.
+ */
+@Service
+public class ApplicationSketchService {
+    private static final Logger logger = LoggerFactory.getLogger(ApplicationSketchService.class);
+
+    @Autowired
+    private ActivityRepository activityRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${analytics.sketch.cms-width:1024}")
+    private int cmsWidth;
+
+    @Value("${analytics.sketch.cms-depth:4}")
+    private int cmsDepth;
+
+    @Value("${analytics.sketch.heavy-hitters:64}")
+    private int heavyHitterCapacity;
+
+    @Value("${analytics.sketch.hll-precision:12}")
+    private int hllPrecision;
+
+    @Value("${analytics.sketch.retention-hours:744}")
+    private long retentionHours;
+
+    @Value("${analytics.sketch.backfill-on-startup:true}")
+    private boolean backfillOnStartup;
+
+    private final ConcurrentSkipListMap<Long, SketchBucket> buckets = new ConcurrentSkipListMap<>();
+
+    private final Object rebuildLock = new Object();
+    private volatile boolean rebuilding = true;
+    private final List<ActivityPersistedEvent> heldDuringRebuild = new ArrayList<>();
+    private final Set<Long> streamedDuringRebuild = ConcurrentHashMap.newKeySet();
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onActivityPersisted(ActivityPersistedEvent event) {
+        if (Boolean.TRUE.equals(event.getActivity().getTrackOnly())) {
+            return;
+        }
+        if (rebuilding) {
+            synchronized (rebuildLock) {
+                if (rebuilding) {
+                    heldDuringRebuild.add(event);
+                    return;
+                }
+            }
+        }
+        recordOnce(event);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        try {
+            if (backfillOnStartup) {
+                rebuildBuckets();
+            }
+        } finally {
+            synchronized (rebuildLock) {
+                rebuilding = false;
+                heldDuringRebuild.forEach(this::recordOnce);
+                heldDuringRebuild.clear();
+            }
+        }
+    }
+
+    private void rebuildBuckets() {
+        LocalDateTime end = LocalDateTime.now();
+        LocalDateTime start = end.truncatedTo(ChronoUnit.HOURS).minusHours(retentionHours);
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        try {
+            Long highWaterMark = activityRepository.findMaxId();
+            long startingMaxId = highWaterMark != null ? highWaterMark : 0L;
+            // The stream's end is open so it can reach rows committed while it runs, which the held
+            // events then skip
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<Activity> activities = activityRepository.streamActivitiesByDateRange(start, end.plusDays(1))) {
+                    activities.forEach(activity -> {
+                        if (activity.getId() != null && activity.getId() > startingMaxId) {
+                            streamedDuringRebuild.add(activity.getId());
+                        }
+                        record(activity, activity.getDurationSeconds() != null ? activity.getDurationSeconds() : 0L);
+                    });
+                }
+            });
+            logger.info("Rebuilt {} application sketch buckets from {}", buckets.size(), start);
+        } catch (Exception e) {
+            logger.error("Could not rebuild application sketches; they will only cover new activity", e);
+        }
+    }
+
+    @NodeLocal("this node's sketches")
+    @Scheduled(fixedRate = 3600000)
+    public void pruneExpiredBuckets() {
+        buckets.headMap(epochHour(LocalDateTime.now()) - retentionHours).clear();
+        streamedDuringRebuild.clear();
+    }
+
+    public Map<String, Object> topApplications(LocalDateTime startDate, LocalDateTime endDate, int limit) {
+        CountMinSketch durations = new CountMinSketch(cmsWidth, cmsDepth);
+        Set<String> candidates = new HashSet<>();
+        Collection<SketchBucket> covered = bucketsIn(startDate, endDate);
+        for (SketchBucket bucket : covered) {
+            bucket.mergeDurationsInto(durations, candidates);
+        }
+
+        List<Map.Entry<String, Long>> ranked = new ArrayList<>();
+        for (String application : candidates) {
+            ranked.add(Map.entry(application, durations.estimate(application)));
+        }
+        ranked.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+
+        LinkedHashMap<String, Long> top = new LinkedHashMap<>();
+        ranked.stream().limit(limit).forEach(entry -> top.put(entry.getKey(), entry.getValue()));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("mode", "sketch");
+        result.put("topApplications", top);
+        result.put("totalSeconds", durations.getTotalWeight());
+        result.put("maxOvercountSeconds", durations.getErrorBound());
+        result.put("confidence", 1 - Math.exp(-cmsDepth));
+        result.put("bucketsMerged", covered.size());
+        result.put("coverageStart", coverageStart());
+        return result;
+    }
+
+    public Map<String, Object> distinctCounts(LocalDateTime startDate, LocalDateTime endDate) {
+        HyperLogLog applications = new HyperLogLog(hllPrecision);
+        HyperLogLog machines = new HyperLogLog(hllPrecision);
+        HyperLogLog users = new HyperLogLog(hllPrecision);
+        Collection<SketchBucket> covered = bucketsIn(startDate, endDate);
+        for (SketchBucket bucket : covered) {
+            bucket.mergeDistinctInto(applications, machines, users);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("mode", "sketch");
+        result.put("distinctApplications", applications.estimate());
+        result.put("distinctMachines", machines.estimate());
+        result.put("distinctUsers", users.estimate());
+        result.put("relativeStandardError", applications.getRelativeStandardError());
+        result.put("bucketsMerged", covered.size());
+        result.put("coverageStart", coverageStart());
+        return result;
+    }
+
+    public Map<String, Object> exactTopApplications(LocalDateTime startDate, LocalDateTime endDate, int limit) {
+        LinkedHashMap<String, Long> top = new LinkedHashMap<>();
+        for (Object[] row : activityRepository.getTopApplicationsByDuration(startDate, endDate, PageRequest.of(0, limit))) {
+            top.put((String) row[0], row[1] != null ? ((Number) row[1]).longValue() : 0L);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("mode", "exact");
+        result.put("topApplications", top);
+        return result;
+    }
+
+    public Map<String, Object> exactDistinctCounts(LocalDateTime startDate, LocalDateTime endDate) {
+        Object[] row = activityRepository.countDistinctInRange(startDate, endDate).get(0);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("mode", "exact");
+        result.put("distinctApplications", row[0]);
+        result.put("distinctMachines", row[1]);
+        result.put("distinctUsers", row[2]);
+        return result;
+    }
+
+    // Only new rows can be recognized as already streamed; a session extension that commits while the
+    // rebuild is streaming its row may be counted twice, which is limited to that one sample
+    private void recordOnce(ActivityPersistedEvent event) {
+        Activity activity = event.getActivity();
+        if (!event.isExtension() && !streamedDuringRebuild.isEmpty() && activity.getId() != null
+                && streamedDuringRebuild.remove(activity.getId())) {
+            return;
+        }
+        record(activity, event.getAddedDurationSeconds());
+    }
+
+    // A session row is charged to the hour it started in, including later extensions
+    private void record(Activity activity, long seconds) {
+        if (activity.getCreatedAt() == null) {
+            return;
+        }
+        long hour = epochHour(activity.getCreatedAt());
+        if (hour < epochHour(LocalDateTime.now()) - retentionHours) {
+            return;
+        }
+        buckets.computeIfAbsent(hour, h -> new SketchBucket(cmsWidth, cmsDepth, heavyHitterCapacity, hllPrecision))
+            .add(activity, seconds);
+    }
+
+    // Buckets are whole hours, so a range is widened to the hours that contain its endpoints
+    private Collection<SketchBucket> bucketsIn(LocalDateTime startDate, LocalDateTime endDate) {
+        return buckets.subMap(epochHour(startDate), true, epochHour(endDate), true).values();
+    }
+
+    private LocalDateTime coverageStart() {
+        Map.Entry<Long, SketchBucket> first = buckets.firstEntry();
+        return first == null ? null : LocalDateTime.ofEpochSecond(first.getKey() * 3600, 0, ZoneOffset.UTC);
+    }
+
+    private static long epochHour(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) / 3600;
+    }
+
+    private static class SketchBucket {
+        private final CountMinSketch durations;
+        private final HeavyHitters heavyHitters;
+        private final HyperLogLog applications;
+        private final HyperLogLog machines;
+        private final HyperLogLog users;
+
+        SketchBucket(int cmsWidth, int cmsDepth, int heavyHitterCapacity, int hllPrecision) {
+            this.durations = new CountMinSketch(cmsWidth, cmsDepth);
+            this.heavyHitters = new HeavyHitters(heavyHitterCapacity);
+            this.applications = new HyperLogLog(hllPrecision);
+            this.machines = new HyperLogLog(hllPrecision);
+            this.users = new HyperLogLog(hllPrecision);
+        }
+
+        synchronized void add(Activity activity, long seconds) {
+            if (activity.getApplicationName() != null) {
+                durations.add(activity.getApplicationName(), seconds);
+                heavyHitters.add(activity.getApplicationName(), seconds);
+                applications.add(activity.getApplicationName());
+            }
+            if (activity.getMachineId() != null) {
+                machines.add(activity.getMachineId());
+            }
+            if (activity.getUserId() != null) {
+                users.add(activity.getUserId().toString());
+            }
+        }
+
+        synchronized void mergeDurationsInto(CountMinSketch target, Set<String> candidates) {
+            target.merge(durations);
+            candidates.addAll(heavyHitters.candidates());
+        }
+
+        synchronized void mergeDistinctInto(HyperLogLog targetApplications, HyperLogLog targetMachines, HyperLogLog targetUsers) {
+            targetApplications.merge(applications);
+            targetMachines.merge(machines);
+            targetUsers.merge(users);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.backendapp.service;
+
+import com.example.backendapp.config.WorkloadClass;
+import com.example.backendapp.config.WorkloadDataSourceConfig;
+import com.example.backendapp.config.WorkloadRoutingDataSource;
+import com.example.backendapp.util.LatencyHistogram;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control per workload class, so expensive analytics cannot occupy every Tomcat worker.
+ *
+ * Each bulkheaded class has {@code bulkhead.<class>.max-concurrent} permits. A request that finds
+ * none free waits up to {@code max-wait-ms} if fewer than {@code max-queue} requests are already
+ * waiting, and is shed otherwise. The permit limit should stay at or a little above the class's
+ * connection sub-pool, so queued work waits here rather than inside Hikari.
+ */
+@Service
+public class BulkheadService {
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private final Map<WorkloadClass, Bulkhead> bulkheads = new EnumMap<>(WorkloadClass.class);
+
+    @PostConstruct
+    protected void init() {
+        for (WorkloadClass workloadClass : WorkloadDataSourceConfig.POOLED_CLASSES) {
+            String prefix = "bulkhead." + workloadClass.name().toLowerCase();
+            int maxConcurrent = environment.getProperty(prefix + ".max-concurrent", Integer.class, 8);
+            if (maxConcurrent > 0) {
+                bulkheads.put(workloadClass, new Bulkhead(maxConcurrent,
+                    environment.getProperty(prefix + ".max-queue", Integer.class, 50),
+                    environment.getProperty(prefix + ".max-wait-ms", Long.class, 2000L)));
+            }
+        }
+    }
+
+    /**
+     * Returns true once a permit is held, false if the request was shed; a true result must be paired
+     * with {@link #release}.
+     */
+    public boolean acquire(WorkloadClass workloadClass) throws InterruptedException {
+        Bulkhead bulkhead = bulkheads.get(workloadClass);
+        return bulkhead == null || bulkhead.acquire();
+    }
+
+    public void release(WorkloadClass workloadClass) {
+        Bulkhead bulkhead = bulkheads.get(workloadClass);
+        if (bulkhead != null) {
+            bulkhead.permits.release();
+        }
+    }
+
+    /**
+     * Fraction of the class's permits in use; 0 for classes without a bulkhead.
+     */
+    public double getSaturation(WorkloadClass workloadClass) {
+        Bulkhead bulkhead = bulkheads.get(workloadClass);
+        return bulkhead == null ? 0.0 : (double) (bulkhead.maxConcurrent - bulkhead.permits.availablePermits()) / bulkhead.maxConcurrent;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Map<WorkloadClass, Map<String, Object>> classes = new EnumMap<>(WorkloadClass.class);
+        bulkheads.forEach((workloadClass, bulkhead) -> classes.put(workloadClass, bulkhead.snapshot()));
+        stats.put("bulkheads", classes);
+        if (dataSource instanceof WorkloadRoutingDataSource routing) {
+            stats.put("connectionPools", routing.getPoolStats());
+        }
+        return stats;
+    }
+
+    private static final class Bulkhead {
+        private final int maxConcurrent;
+        private final int maxQueue;
+        private final long maxWaitMillis;
+        private final Semaphore permits;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder queued = new LongAdder();
+        private final LongAdder shed = new LongAdder();
+        private final LongAdder timedOut = new LongAdder();
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+
+        Bulkhead(int maxConcurrent, int maxQueue, long maxWaitMillis) {
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueue = maxQueue;
+            this.maxWaitMillis = maxWaitMillis;
+            this.permits = new Semaphore(maxConcurrent, true);
+        }
+
+        boolean acquire() throws InterruptedException {
+            if (permits.tryAcquire()) {
+                admitted.increment();
+                return true;
+            }
+            if (waiting.incrementAndGet() > maxQueue) {
+                waiting.decrementAndGet();
+                shed.increment();
+                return false;
+            }
+            queued.increment();
+            long started = System.nanoTime();
+            try {
+                if (permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                    admitted.increment();
+                    return true;
+                }
+                timedOut.increment();
+                return false;
+            } finally {
+                waiting.decrementAndGet();
+                queueWait.record(System.nanoTime() - started);
+            }
+        }
+
+        Map<String, Object> snapshot() {
+            Map<String, Object> view = new LinkedHashMap<>();
+            int inFlight = maxConcurrent - permits.availablePermits();
+            view.put("maxConcurrent", maxConcurrent);
+            view.put("inFlight", inFlight);
+            view.put("saturation", (double) inFlight / maxConcurrent);
+            view.put("waiting", waiting.get());
+            view.put("maxQueue", maxQueue);
+            view.put("admitted", admitted.sum());
+            view.put("queued", queued.sum());
+            view.put("shed", shed.sum());
+            view.put("timedOut", timedOut.sum());
+            view.put("queueWait", queueWait.snapshot());
+            return view;
+        }
+    }
+}
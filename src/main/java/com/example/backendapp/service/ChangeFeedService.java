@@ -0,0 +1,384 @@
+package com.example.backendapp.service;
+
+import com.example.backendapp.config.NodeLocal;
+import com.example.backendapp.entity.Activity;
+import com.example.backendapp.event.ActivityPersistedEvent;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transactional outbox for downstream consumers (BI, payroll) and the cursor-based feed over it.
+ *
+ * Every activity write, including process-tracked samples and session extensions, records a change
+ * entry in the change_feed table in the same transaction, so an entry exists exactly when its row
+ * committed. Entries are collected per transaction and written in one batch just before commit; several
+ * writes to one row in a transaction (a session extended by many samples) collapse into one entry.
+ *
+ * Entry ids come from an IDENTITY column and are taken at insert, so a transaction can commit after
+ * one with a higher id. A reader therefore stops at a gap in the ids until the entry after the gap is
+ * {@code changes.settle-ms} old; gaps left by rolled-back transactions are passed after that. Since
+ * entries are inserted immediately before commit, the window in which a gap can still fill is short.
+ *
+ * Entries older than {@code changes.retention-hours} are compacted by one node of the cluster at a
+ * time. A consumer whose cursor points before the oldest remaining entry gets 410 Gone and must
+ * resync from the activity endpoints.
+ */
+@Service
+public class ChangeFeedService {
+    private static final Logger logger = LoggerFactory.getLogger(ChangeFeedService.class);
+
+    public static final String COMPACTION_LEASE = "change-feed-compaction";
+
+    private static final String INSERT_SQL =
+        "INSERT INTO change_feed (entity_type, entity_id, user_id, operation, duration_seconds, end_time) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String READ_SQL =
+        "SELECT TOP (?) id, entity_type, entity_id, user_id, operation, duration_seconds, end_time, recorded_at, " +
+        "DATEDIFF_BIG(millisecond, recorded_at, SYSUTCDATETIME()) AS age_ms " +
+        "FROM change_feed WHERE id > ? ORDER BY id";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ClusterLeaseService clusterLeaseService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${changes.page-size:500}")
+    private int defaultPageSize;
+
+    @Value("${changes.max-page-size:5000}")
+    private int maxPageSize;
+
+    @Value("${changes.settle-ms:5000}")
+    private long settleMillis;
+
+    @Value("${changes.long-poll.max-timeout-ms:30000}")
+    private long maxTimeoutMillis;
+
+    @Value("${changes.long-poll.max-waiters:100}")
+    private int maxWaiters;
+
+    @Value("${changes.retention-hours:168}")
+    private int retentionHours;
+
+    @Value("${changes.compaction.batch-size:5000}")
+    private int compactionBatchSize;
+
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger waiterCount = new AtomicInteger();
+    private volatile long lastCompacted;
+
+    private TransactionTemplate transaction;
+
+    @PostConstruct
+    protected void init() {
+        transaction = new TransactionTemplate(transactionManager);
+    }
+
+    // Synchronous on purpose: it runs inside the writing transaction, and a failure rolls the write back
+    @EventListener
+    public void onActivityPersisted(ActivityPersistedEvent event) {
+        Activity activity = event.getActivity();
+        record(activity.getId(), new PendingChange(entityType(activity), activity.getUserId(),
+            event.isExtension() ? "UPDATE" : "INSERT", activity));
+    }
+
+    /**
+     * Records the deletion of activities; call inside the transaction that deletes them.
+     */
+    public void recordDeleted(Collection<Activity> activities) {
+        for (Activity activity : activities) {
+            record(activity.getId(), new PendingChange(entityType(activity), activity.getUserId(), "DELETE", null));
+        }
+    }
+
+    /**
+     * Same as {@link #recordDeleted(Collection)} for bulk deletes that never load the entities; each row
+     * is (id, userId, processTracked) as returned by the repository's deletion-ref queries.
+     */
+    public void recordDeletedRows(List<Object[]> rows) {
+        for (Object[] row : rows) {
+            String entityType = Boolean.TRUE.equals(row[2]) ? "PROCESS_TRACK" : "ACTIVITY";
+            record((Long) row[0], new PendingChange(entityType, (Long) row[1], "DELETE", null));
+        }
+    }
+
+    private void record(Long id, PendingChange change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            write(Map.of(id, change));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Map<Long, PendingChange> pending = (Map<Long, PendingChange>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Map<Long, PendingChange> created = new LinkedHashMap<>();
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    write(created);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ChangeFeedService.this);
+                }
+            });
+            pending = created;
+        }
+        // A row inserted and then extended in one transaction is still new to consumers
+        pending.merge(id, change, (previous, next) ->
+            "INSERT".equals(previous.operation()) && "UPDATE".equals(next.operation()) ? previous : next);
+    }
+
+    private void write(Map<Long, PendingChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(changes.size());
+        changes.forEach((id, change) -> {
+            Activity activity = change.activity();
+            rows.add(new Object[] {
+                change.entityType(), id, change.userId(), change.operation(),
+                activity != null ? activity.getDurationSeconds() : null,
+                activity != null && activity.getEndTime() != null ? Timestamp.valueOf(activity.getEndTime()) : null
+            });
+        });
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+    }
+
+    private static String entityType(Activity activity) {
+        return Boolean.TRUE.equals(activity.getProcessTracked()) ? "PROCESS_TRACK" : "ACTIVITY";
+    }
+
+    /**
+     * Reads the committed entries after {@code since}, in commit order. An empty page may still have
+     * {@code hasMore} set when the next entry is waiting for a gap before it to settle.
+     */
+    public ChangePage read(long since, int limit) {
+        int size = limit <= 0 ? defaultPageSize : Math.min(limit, maxPageSize);
+        if (since > 0) {
+            Long oldest = jdbcTemplate.queryForObject("SELECT MIN(id) FROM change_feed", Long.class);
+            // Entries between the cursor and the oldest remaining one may have been compacted away
+            if (oldest != null && since < oldest - 1) {
+                throw new CursorExpiredException(oldest);
+            }
+        }
+
+        List<ChangeEntry> rows = jdbcTemplate.query(READ_SQL, (rs, rowNum) -> new ChangeEntry(
+            rs.getLong("id"),
+            rs.getString("entity_type"),
+            rs.getLong("entity_id"),
+            rs.getLong("user_id"),
+            rs.getString("operation"),
+            rs.getObject("duration_seconds", Long.class),
+            rs.getTimestamp("end_time") != null ? rs.getTimestamp("end_time").toLocalDateTime() : null,
+            rs.getTimestamp("recorded_at").toLocalDateTime(),
+            rs.getLong("age_ms")), size + 1, since);
+
+        List<ChangeEntry> entries = new ArrayList<>(Math.min(rows.size(), size));
+        long cursor = since;
+        for (ChangeEntry row : rows) {
+            if (entries.size() == size) {
+                break;
+            }
+            // Also from a zero cursor: ids start at 1, so a first entry above 1 may have an uncommitted one before it
+            if (row.id() != cursor + 1 && row.ageMillis() < settleMillis) {
+                // An entry with a lower id may still be about to commit
+                break;
+            }
+            entries.add(row);
+            cursor = row.id();
+        }
+        return new ChangePage(entries, cursor, rows.size() > entries.size());
+    }
+
+    /**
+     * Long poll: answers at once when entries are available, otherwise parks the request until
+     * entries arrive or {@code timeoutMillis} passes, and then answers with an empty page.
+     */
+    public DeferredResult<ResponseEntity<Map<String, Object>>> poll(long since, int limit, long timeoutMillis) {
+        long timeout = Math.max(0, Math.min(timeoutMillis, maxTimeoutMillis));
+        ResponseEntity<Map<String, Object>> empty = ResponseEntity.ok(new ChangePage(List.of(), since, false).toMap());
+        DeferredResult<ResponseEntity<Map<String, Object>>> result = new DeferredResult<>(timeout > 0 ? timeout : null, empty);
+
+        ChangePage page;
+        try {
+            page = read(since, limit);
+        } catch (CursorExpiredException e) {
+            result.setResult(gone(e));
+            return result;
+        }
+        if (!page.entries().isEmpty() || timeout == 0 || waiterCount.get() >= maxWaiters) {
+            result.setResult(ResponseEntity.ok(page.toMap()));
+            return result;
+        }
+
+        Waiter waiter = new Waiter(since, limit, result);
+        waiters.add(waiter);
+        waiterCount.incrementAndGet();
+        result.onCompletion(() -> {
+            if (waiters.remove(waiter)) {
+                waiterCount.decrementAndGet();
+            }
+        });
+        return result;
+    }
+
+    // Also picks up entries committed on other nodes, which raise no event here
+    @NodeLocal("long-poll requests parked on this node")
+    @Scheduled(fixedDelayString = "${changes.long-poll.check-ms:500}")
+    public void checkWaiters() {
+        if (waiters.isEmpty()) {
+            return;
+        }
+        Long latest;
+        try {
+            latest = jdbcTemplate.queryForObject("SELECT MAX(id) FROM change_feed", Long.class);
+        } catch (DataAccessException e) {
+            logger.warn("Could not check the change feed for waiting consumers: {}", e.getMessage());
+            return;
+        }
+        if (latest == null) {
+            return;
+        }
+        for (Waiter waiter : waiters) {
+            if (waiter.since() >= latest || waiter.result().isSetOrExpired()) {
+                continue;
+            }
+            try {
+                ChangePage page = read(waiter.since(), waiter.limit());
+                if (!page.entries().isEmpty()) {
+                    waiter.result().setResult(ResponseEntity.ok(page.toMap()));
+                }
+            } catch (CursorExpiredException e) {
+                waiter.result().setResult(gone(e));
+            } catch (DataAccessException e) {
+                logger.warn("Could not read the change feed for waiting consumers: {}", e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Deletes entries past the retention window, always keeping the newest so an idle consumer's
+     * cursor stays valid. Runs on one node at a time; each batch is fenced by the lease.
+     */
+    @Scheduled(fixedDelayString = "${changes.compaction.interval-ms:3600000}")
+    public void compact() {
+        clusterLeaseService.runExclusive(COMPACTION_LEASE, Duration.ofMinutes(10), token -> {
+            int deleted;
+            int total = 0;
+            do {
+                deleted = transaction.execute(status -> {
+                    clusterLeaseService.assertHeld(COMPACTION_LEASE, token);
+                    return jdbcTemplate.update(
+                        "DELETE TOP (?) FROM change_feed WHERE recorded_at < DATEADD(hour, ?, SYSUTCDATETIME()) " +
+                        "AND id < (SELECT MAX(id) FROM change_feed)", compactionBatchSize, -retentionHours);
+                });
+                total += deleted;
+            } while (deleted == compactionBatchSize);
+            lastCompacted = total;
+            if (total > 0) {
+                logger.info("Compacted {} change feed entries older than {} hours", total, retentionHours);
+            }
+        });
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.putAll(jdbcTemplate.queryForMap(
+            "SELECT COUNT(*) AS entries, MIN(id) AS oldestId, MAX(id) AS latestId, MIN(recorded_at) AS oldestRecordedAt FROM change_feed"));
+        stats.put("waitingConsumers", waiterCount.get());
+        stats.put("lastCompacted", lastCompacted);
+        stats.put("retentionHours", retentionHours);
+        return stats;
+    }
+
+    private static ResponseEntity<Map<String, Object>> gone(CursorExpiredException e) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("error", e.getMessage());
+        body.put("resync", true);
+        body.put("oldestCursor", e.getOldestId() - 1);
+        return ResponseEntity.status(HttpStatus.GONE).body(body);
+    }
+
+    private record PendingChange(String entityType, Long userId, String operation, Activity activity) {
+    }
+
+    private record Waiter(long since, int limit, DeferredResult<ResponseEntity<Map<String, Object>>> result) {
+    }
+
+    /**
+     * One committed change. {@code durationSeconds} and {@code endTime} are the row's values at commit,
+     * enough for duration totals without fetching the row; they are null for deletions.
+     */
+    public record ChangeEntry(long id, String entityType, long entityId, long userId, String operation,
+                              Long durationSeconds, LocalDateTime endTime, LocalDateTime recordedAt, long ageMillis) {
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> view = new LinkedHashMap<>();
+            view.put("cursor", id);
+            view.put("entityType", entityType);
+            view.put("entityId", entityId);
+            view.put("userId", userId);
+            view.put("operation", operation);
+            view.put("durationSeconds", durationSeconds);
+            view.put("endTime", endTime);
+            view.put("recordedAt", recordedAt);
+            return view;
+        }
+    }
+
+    public record ChangePage(List<ChangeEntry> entries, long nextCursor, boolean hasMore) {
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> view = new LinkedHashMap<>();
+            view.put("changes", entries.stream().map(ChangeEntry::toMap).toList());
+            view.put("nextCursor", nextCursor);
+            view.put("hasMore", hasMore);
+            return view;
+        }
+    }
+
+    /**
+     * The cursor points before entries that have been compacted; the consumer must resync.
+     */
+    public static class CursorExpiredException extends RuntimeException {
+        private final long oldestId;
+
+        public CursorExpiredException(long oldestId) {
+            super("Cursor is older than the change feed's retention window");
+            this.oldestId = oldestId;
+        }
+
+        public long getOldestId() {
+            return oldestId;
+        }
+    }
+}
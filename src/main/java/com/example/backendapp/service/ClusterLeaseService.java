@@ -0,0 +1,175 @@
+package com.example.backendapp.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.LongConsumer;
+
+/**
+ * Database leases for work that must run on one node of the cluster at a time.
+ *
+ * A lease is a row in scheduler_leases naming its owner and an expiry. A node takes a lease with a
+ * single conditional UPDATE that succeeds only if the lease is its own or has expired, so two nodes
+ * can never both hold it, and a node that dies simply stops renewing and loses it after its TTL.
+ * Expiry is judged by the database clock, so clock skew between nodes does not matter.
+ *
+ * Every change of holder increments the lease's fencing token. A holder that stalls past its TTL
+ * (a long GC pause, say) may still believe it holds the lease, so jobs pass their token to
+ * {@link #assertHeld} inside each write transaction: it locks the lease row until the transaction
+ * ends, and fails if another node has taken over meanwhile.
+ *
+ * There is no standing leader: each singleton job takes its own lease for the length of one run
+ * through {@link #runExclusive}, so jobs spread over the nodes and none depends on a heartbeat.
+ */
+@Service
+public class ClusterLeaseService {
+    private static final Logger logger = LoggerFactory.getLogger(ClusterLeaseService.class);
+
+    private static final String ACQUIRE_SQL =
+        "UPDATE scheduler_leases SET " +
+        "fencing_token = CASE WHEN owner_id = ? AND expires_at >= SYSUTCDATETIME() THEN fencing_token ELSE fencing_token + 1 END, " +
+        "acquired_at = CASE WHEN owner_id = ? AND expires_at >= SYSUTCDATETIME() THEN acquired_at ELSE SYSUTCDATETIME() END, " +
+        "owner_id = ?, expires_at = DATEADD(millisecond, ?, SYSUTCDATETIME()) " +
+        "OUTPUT inserted.fencing_token " +
+        "WHERE lease_name = ? AND (owner_id = ? OR expires_at < SYSUTCDATETIME())";
+
+    private static final String CREATE_SQL =
+        "INSERT INTO scheduler_leases (lease_name, owner_id, fencing_token, acquired_at, expires_at) " +
+        "SELECT ?, ?, 1, SYSUTCDATETIME(), DATEADD(millisecond, ?, SYSUTCDATETIME()) " +
+        "WHERE NOT EXISTS (SELECT 1 FROM scheduler_leases WHERE lease_name = ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${cluster.node-id:}")
+    private String configuredNodeId;
+
+    private String nodeId;
+
+    @PostConstruct
+    protected void init() {
+        nodeId = configuredNodeId.isBlank() ? defaultNodeId() : configuredNodeId;
+        logger.info("Cluster node id {}", nodeId);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Takes or renews the lease for {@code ttl}; returns its fencing token, or empty if another node
+     * holds it. Renewing a lease this node still holds keeps its token.
+     */
+    public OptionalLong tryAcquire(String name, Duration ttl) {
+        int ttlMillis = (int) Math.min(Integer.MAX_VALUE, ttl.toMillis());
+        try {
+            List<Long> tokens = jdbcTemplate.query(ACQUIRE_SQL, (rs, rowNum) -> rs.getLong(1),
+                nodeId, nodeId, nodeId, ttlMillis, name, nodeId);
+            if (!tokens.isEmpty()) {
+                return OptionalLong.of(tokens.get(0));
+            }
+            if (jdbcTemplate.update(CREATE_SQL, name, nodeId, ttlMillis, name) == 1) {
+                return OptionalLong.of(1L);
+            }
+        } catch (DuplicateKeyException e) {
+            // Another node created the lease row first, and so holds it
+        }
+        return OptionalLong.empty();
+    }
+
+    /**
+     * Gives up a lease early so another node can take it without waiting for the TTL.
+     */
+    public void release(String name, long token) {
+        jdbcTemplate.update("UPDATE scheduler_leases SET expires_at = SYSUTCDATETIME() " +
+            "WHERE lease_name = ? AND owner_id = ? AND fencing_token = ?", name, nodeId, token);
+    }
+
+    /**
+     * Fences the current transaction: locks the lease row until commit and throws
+     * {@link LeaseLostException} if the token is no longer current. A node that takes the lease over
+     * waits for the lock, so it cannot start while this transaction's writes are in flight.
+     */
+    public void assertHeld(String name, long token) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("assertHeld must run inside the transaction it fences");
+        }
+        List<Long> current = jdbcTemplate.query(
+            "SELECT fencing_token FROM scheduler_leases WITH (UPDLOCK, ROWLOCK) WHERE lease_name = ? AND owner_id = ?",
+            (rs, rowNum) -> rs.getLong(1), name, nodeId);
+        if (current.isEmpty() || current.get(0) != token) {
+            throw new LeaseLostException(name, token);
+        }
+    }
+
+    /**
+     * Runs a cluster-wide singleton job if this node can take its lease, and releases the lease
+     * afterwards. The job receives the fencing token for {@link #assertHeld}; it must finish within
+     * {@code ttl} or renew the lease with {@link #tryAcquire}. Returns whether the job ran here.
+     */
+    public boolean runExclusive(String name, Duration ttl, LongConsumer job) {
+        OptionalLong token;
+        try {
+            token = tryAcquire(name, ttl);
+        } catch (DataAccessException e) {
+            logger.warn("Could not take lease {}: {}", name, e.getMessage());
+            return false;
+        }
+        if (token.isEmpty()) {
+            return false;
+        }
+        try {
+            job.accept(token.getAsLong());
+            return true;
+        } catch (LeaseLostException e) {
+            logger.warn("Job {} stopped: {}", name, e.getMessage());
+            return true;
+        } finally {
+            try {
+                release(name, token.getAsLong());
+            } catch (DataAccessException e) {
+                logger.warn("Could not release lease {}; it expires on its own", name);
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("nodeId", nodeId);
+        stats.put("leases", jdbcTemplate.queryForList(
+            "SELECT lease_name, owner_id, fencing_token, acquired_at, expires_at, " +
+            "CASE WHEN expires_at >= SYSUTCDATETIME() THEN 1 ELSE 0 END AS held FROM scheduler_leases ORDER BY lease_name"));
+        return stats;
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        // The suffix tells apart two instances on one host and a restarted instance from its predecessor
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * Another node took the lease over; the work done under the old token must stop.
+     */
+    public static class LeaseLostException extends RuntimeException {
+        public LeaseLostException(String name, long token) {
+            super("Lease " + name + " is no longer held with token " + token);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.backendapp.service;
+
+import com.example.backendapp.config.NodeLocal;
+import com.example.backendapp.config.WorkloadClass;
+import com.example.backendapp.config.WorkloadRoutingDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Recommends how often collectors should upload and how much per request, from the server's
+ * current ingest pressure.
+ *
+ * Pressure is the worst of four signals, each scaled to 0..1: write-behind queue depth against
+ * {@code collector.control.queue-high-water}, the last flush time against
+ * {@code collector.control.flush-budget-ms}, ingest bulkhead saturation, and threads waiting for an
+ * ingest connection (or a flush that hit database errors, which counts as full pressure). The
+ * signal is smoothed, rising quickly and decaying slowly, so a single slow flush does not make
+ * every collector back off and a recovered server does not get every backlog at once.
+ *
+ * The upload interval is interpolated geometrically between the min and max interval, so each
+ * step of pressure stretches it by the same factor; the batch size shrinks linearly so a request
+ * under pressure holds an ingest connection only briefly.
+ *
+ * Collectors opt in by sending {@code X-Collector-Protocol: 2}; older collectors get the original
+ * response without a control block.
+ */
+@Service
+public class CollectorControlService {
+    private static final Logger logger = LoggerFactory.getLogger(CollectorControlService.class);
+
+    public static final String PROTOCOL_HEADER = "X-Collector-Protocol";
+    public static final int PROTOCOL_VERSION = 2;
+
+    @Autowired
+    private LogCollectorService logCollectorService;
+
+    @Autowired
+    private BulkheadService bulkheadService;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Value("${collector.control.min-interval-seconds:60}")
+    private int minIntervalSeconds;
+
+    @Value("${collector.control.max-interval-seconds:600}")
+    private int maxIntervalSeconds;
+
+    @Value("${collector.control.min-batch-size:10}")
+    private int minBatchSize;
+
+    @Value("${collector.control.max-batch-size:100}")
+    private int maxBatchSize;
+
+    @Value("${collector.control.gzip-min-batch-size:20}")
+    private int gzipMinBatchSize;
+
+    @Value("${collector.control.queue-high-water:5000}")
+    private int queueHighWater;
+
+    @Value("${collector.control.flush-budget-ms:5000}")
+    private long flushBudgetMillis;
+
+    private volatile double pressure;
+    private volatile Map<String, Object> signals = Map.of();
+
+    @NodeLocal("this node's ingest pressure")
+    @Scheduled(fixedDelayString = "${collector.control.refresh-ms:5000}")
+    public void refresh() {
+        double queue = clamp((double) logCollectorService.getQueueDepth() / queueHighWater);
+        double flush = clamp((double) logCollectorService.getLastFlushMillis() / flushBudgetMillis);
+        double bulkhead = clamp(bulkheadService.getSaturation(WorkloadClass.INGEST));
+        double database = logCollectorService.getLastFlushFailures() > 0 ? 1.0 : 0.0;
+        if (dataSource instanceof WorkloadRoutingDataSource routing) {
+            database = Math.max(database, clamp(routing.getThreadsAwaitingConnection(WorkloadClass.INGEST) / 4.0));
+        }
+        double raw = Math.max(Math.max(queue, flush), Math.max(bulkhead, database));
+
+        double previous = pressure;
+        double next = previous + (raw > previous ? 0.5 : 0.1) * (raw - previous);
+        pressure = next < 0.01 ? 0.0 : next;
+
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("queue", queue);
+        view.put("flush", flush);
+        view.put("bulkhead", bulkhead);
+        view.put("database", database);
+        signals = view;
+        if (Math.abs(pressure - previous) >= 0.25) {
+            logger.info("Collector ingest pressure {} -> {} ({})", String.format("%.2f", previous), String.format("%.2f", pressure), view);
+        }
+    }
+
+    /**
+     * Control block returned to protocol 2 collectors with each batch response.
+     */
+    public Map<String, Object> getControl() {
+        double current = pressure;
+        int interval = (int) Math.round(minIntervalSeconds * Math.pow((double) maxIntervalSeconds / minIntervalSeconds, current));
+        int batch = (int) Math.round(maxBatchSize - (maxBatchSize - minBatchSize) * current);
+
+        Map<String, Object> control = new LinkedHashMap<>();
+        control.put("protocolVersion", PROTOCOL_VERSION);
+        control.put("uploadIntervalSeconds", interval);
+        control.put("maxBatchSize", batch);
+        control.put("compression", batch >= gzipMinBatchSize ? "gzip" : "identity");
+        control.put("pressure", Math.round(current * 100) / 100.0);
+        return control;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(getControl());
+        stats.put("signals", signals);
+        stats.put("queueDepth", logCollectorService.getQueueDepth());
+        stats.put("lastFlushMillis", logCollectorService.getLastFlushMillis());
+        return stats;
+    }
+
+    private static double clamp(double value) {
+        return Math.max(0.0, Math.min(1.0, value));
+    }
+}
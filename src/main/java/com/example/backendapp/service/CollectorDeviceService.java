@@ -0,0 +1,219 @@
+package com.example.backendapp.service;
+
+import com.example.backendapp.entity.CollectorDevice;
+import com.example.backendapp.repository.CollectorDeviceRepository;
+import com.example.backendapp.config.NodeLocal;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Enrolled collector machines and the in-memory key cache used to verify their request signatures.
+ *
+ * collector_devices is the source of truth; each node caches the keys it has used for
+ * {@code device.auth.key-cache-ttl-seconds}, so verifying a request is normally one map lookup and
+ * one HMAC with no database access. Enroll, rotate and revoke update this node's cache at once and
+ * reach other nodes when their entry expires. A signature that fails against a cached key also
+ * reloads the row (at most once a second per device), so a collector that picked up a key rotated
+ * through another node is not rejected for the rest of the TTL. A revocation made on another node
+ * can take up to the TTL to apply here. Unknown device ids are cached as misses, and a sweep drops
+ * expired entries.
+ *
+ * After a rotation the previous key is accepted for {@code device.auth.rotation-grace-seconds} so
+ * that requests the collector signed just before picking up the new key still verify.
+ */
+@Service
+public class CollectorDeviceService {
+    private static final Logger logger = LoggerFactory.getLogger(CollectorDeviceService.class);
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int KEY_BYTES = 32;
+    private static final long RELOAD_MIN_INTERVAL_MILLIS = 1000L;
+
+    private static final ThreadLocal<Mac> MACS = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance(ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    });
+
+    @Autowired
+    private CollectorDeviceRepository deviceRepository;
+
+    @Value("${device.auth.rotation-grace-seconds:300}")
+    private long rotationGraceSeconds;
+
+    @Value("${device.auth.key-cache-ttl-seconds:30}")
+    private long keyCacheTtlSeconds;
+
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, DeviceKey> keys = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    protected void loadKeys() {
+        long now = System.currentTimeMillis();
+        deviceRepository.findByActiveTrue().forEach(device -> keys.put(device.getDeviceId(), DeviceKey.of(device, now)));
+        logger.info("Loaded signing keys for {} collector devices", keys.size());
+    }
+
+    /**
+     * Registers a machine for the user. The returned secret is shown only here and on rotation.
+     */
+    public Map<String, Object> enroll(Long userId, String machineName) {
+        CollectorDevice device = new CollectorDevice();
+        device.setDeviceId(UUID.randomUUID().toString());
+        device.setUserId(userId);
+        device.setMachineName(machineName);
+        device.setSecret(newSecret());
+        deviceRepository.save(device);
+        keys.put(device.getDeviceId(), DeviceKey.of(device, System.currentTimeMillis()));
+        logger.info("Enrolled collector device {} for user {}", device.getDeviceId(), userId);
+        return credentials(device);
+    }
+
+    public Optional<Map<String, Object>> rotate(String deviceId) {
+        return deviceRepository.findByDeviceId(deviceId)
+            .filter(CollectorDevice::isActive)
+            .map(device -> {
+                LocalDateTime now = LocalDateTime.now();
+                device.setPreviousSecret(device.getSecret());
+                device.setPreviousValidUntil(now.plusSeconds(rotationGraceSeconds));
+                device.setSecret(newSecret());
+                device.setRotatedAt(now);
+                deviceRepository.save(device);
+                keys.put(deviceId, DeviceKey.of(device, System.currentTimeMillis()));
+                logger.info("Rotated signing key of collector device {}", deviceId);
+                return credentials(device);
+            });
+    }
+
+    public boolean revoke(String deviceId) {
+        return deviceRepository.findByDeviceId(deviceId).map(device -> {
+            device.setActive(false);
+            deviceRepository.save(device);
+            keys.remove(deviceId);
+            logger.info("Revoked collector device {}", deviceId);
+            return true;
+        }).orElse(false);
+    }
+
+    public Optional<CollectorDevice> findDevice(String deviceId) {
+        return deviceRepository.findByDeviceId(deviceId);
+    }
+
+    public List<CollectorDevice> listDevices(Long userId) {
+        return userId != null ? deviceRepository.findByUserId(userId) : deviceRepository.findAll();
+    }
+
+    /**
+     * The device's user id when {@code signature} is a valid HMAC of {@code canonicalRequest} under the
+     * device's current key (or its previous key during the rotation grace period), otherwise null.
+     */
+    public Long verify(String deviceId, String canonicalRequest, byte[] signature) {
+        long now = System.currentTimeMillis();
+        DeviceKey key = keys.get(deviceId);
+        if (key == null || now - key.loadedAtMillis() >= keyCacheTtlSeconds * 1000) {
+            key = loadKey(deviceId, now);
+        }
+        byte[] message = canonicalRequest.getBytes(StandardCharsets.UTF_8);
+        Long userId = key.verify(message, signature, now);
+        // The key may have been rotated through another node since this entry was loaded
+        if (userId == null && now - key.loadedAtMillis() >= RELOAD_MIN_INTERVAL_MILLIS) {
+            userId = loadKey(deviceId, now).verify(message, signature, now);
+        }
+        return userId;
+    }
+
+    @NodeLocal("key cache on this node")
+    @Scheduled(fixedDelayString = "${device.auth.key-cache-sweep-ms:60000}")
+    public void evictExpiredKeys() {
+        long cutoff = System.currentTimeMillis() - keyCacheTtlSeconds * 1000;
+        keys.values().removeIf(key -> key.loadedAtMillis() < cutoff);
+    }
+
+    private DeviceKey loadKey(String deviceId, long now) {
+        DeviceKey key = deviceRepository.findByDeviceId(deviceId)
+            .filter(CollectorDevice::isActive)
+            .map(device -> DeviceKey.of(device, now))
+            .orElseGet(() -> DeviceKey.unknown(now));
+        keys.put(deviceId, key);
+        return key;
+    }
+
+    private static byte[] sign(SecretKeySpec key, byte[] message) {
+        Mac mac = MACS.get();
+        try {
+            mac.init(key);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Invalid device key", e);
+        }
+        return mac.doFinal(message);
+    }
+
+    private String newSecret() {
+        byte[] secret = new byte[KEY_BYTES];
+        random.nextBytes(secret);
+        return Base64.getEncoder().encodeToString(secret);
+    }
+
+    private static Map<String, Object> credentials(CollectorDevice device) {
+        Map<String, Object> credentials = new LinkedHashMap<>();
+        credentials.put("deviceId", device.getDeviceId());
+        credentials.put("userId", device.getUserId());
+        credentials.put("secret", device.getSecret());
+        credentials.put("algorithm", ALGORITHM);
+        credentials.put("previousValidUntil", device.getPreviousValidUntil());
+        return credentials;
+    }
+
+    private record DeviceKey(Long userId, SecretKeySpec current, SecretKeySpec previous, long previousValidUntilMillis,
+                             long loadedAtMillis) {
+
+        static DeviceKey unknown(long loadedAtMillis) {
+            return new DeviceKey(null, null, null, 0L, loadedAtMillis);
+        }
+
+        Long verify(byte[] message, byte[] signature, long now) {
+            if (current == null) {
+                return null;
+            }
+            if (MessageDigest.isEqual(sign(current, message), signature)) {
+                return userId;
+            }
+            if (previous != null && now < previousValidUntilMillis && MessageDigest.isEqual(sign(previous, message), signature)) {
+                return userId;
+            }
+            return null;
+        }
+
+        static DeviceKey of(CollectorDevice device, long loadedAtMillis) {
+            SecretKeySpec previous = null;
+            long previousValidUntil = 0L;
+            if (device.getPreviousSecret() != null && device.getPreviousValidUntil() != null) {
+                previous = key(device.getPreviousSecret());
+                previousValidUntil = device.getPreviousValidUntil()
+                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            }
+            return new DeviceKey(device.getUserId(), key(device.getSecret()), previous, previousValidUntil, loadedAtMillis);
+        }
+
+        private static SecretKeySpec key(String secret) {
+            return new SecretKeySpec(Base64.getDecoder().decode(secret), ALGORITHM);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.backendapp.service;
+
+import com.example.backendapp.config.NodeLocal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Server side of the delta collection protocol: the last known set of open windows per device.
+ *
+ * Each frame a collector sends carries a sequence number and the processes opened, changed (new
+ * window title) and closed since the previous frame. Applying a frame updates the device's
+ * snapshot, and every process in the resulting snapshot becomes one sample, exactly the entry the
+ * full-list collector would have posted, so sessionization and analytics see no difference.
+ *
+ * Frames carry the collector run's {@code epoch}, a random id picked at collector start, and sequence
+ * numbers count up within a run. Frames of the current run already applied (sequence at or below the
+ * last one, full or not) are skipped, so a retried upload is harmless. A full frame from a new run
+ * starts over: the snapshot and its last sequence are reset, whatever sequence the old run reached.
+ * Collectors that send no epoch are treated as restarted when a full frame's sequence drops below the
+ * last one. A delta that does not follow the last applied frame of its run, or any delta for a device
+ * with no snapshot (for example after a server restart), raises {@link ResyncRequiredException}; the
+ * collector then sends a frame with {@code full: true} listing every open process, which replaces the
+ * snapshot.
+ *
+ * An upload is applied to a copy of the snapshot, and the copy replaces the snapshot only after the
+ * samples it expanded to were accepted for ingest. An upload that fails at any point, whether a frame
+ * is out of sync or malformed or ingest rejects the samples, leaves the snapshot and its last sequence
+ * as they were, so the collector's retry of the same frames is applied again rather than skipped.
+ * Uploads from one device are applied one at a time.
+ *
+ * Snapshots live in memory on the node that received them and are dropped after
+ * {@code collector.delta.idle-minutes} without frames.
+ */
+@Service
+public class CollectorSnapshotService {
+    private static final Logger logger = LoggerFactory.getLogger(CollectorSnapshotService.class);
+
+    @Value("${collector.delta.max-processes:500}")
+    private int maxProcesses;
+
+    @Value("${collector.delta.idle-minutes:60}")
+    private long idleMinutes;
+
+    private final ConcurrentHashMap<String, DeviceSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    /**
+     * Applies frames in order, hands the samples they expand to (in the batch log format) to
+     * {@code ingest}, and keeps the updated snapshot only if {@code ingest} returns normally.
+     */
+    public <T> T apply(String deviceId, Long userId, List<Map<String, Object>> frames,
+                       Function<List<Map<String, Object>>, T> ingest) {
+        for (int i = 1; i < frames.size(); i++) {
+            if (sequence(frames.get(i)) != sequence(frames.get(i - 1)) + 1) {
+                throw new IllegalArgumentException("Frame sequence numbers must be consecutive");
+            }
+        }
+
+        DeviceSnapshot snapshot = snapshots.computeIfAbsent(deviceId, id -> new DeviceSnapshot());
+        List<Map<String, Object>> samples = new ArrayList<>();
+        synchronized (snapshot) {
+            snapshot.lastSeen = System.currentTimeMillis();
+            DeviceSnapshot working = snapshot.copy();
+            for (Map<String, Object> frame : frames) {
+                long sequence = sequence(frame);
+                boolean full = Boolean.TRUE.equals(frame.get("full"));
+                String epoch = frame.get("epoch") != null ? frame.get("epoch").toString() : null;
+                if (full && isNewRun(working, epoch, sequence)) {
+                    // A restarted collector counts from the start again; the old run's sequence means nothing now
+                    working.processes = new LinkedHashMap<>();
+                    working.lastSequence = -1;
+                    working.epoch = epoch;
+                }
+                if (!Objects.equals(epoch, working.epoch)) {
+                    throw new ResyncRequiredException(snapshot.lastSequence);
+                }
+                if (working.lastSequence >= 0 && sequence <= working.lastSequence) {
+                    continue;
+                }
+                if (!full && (working.lastSequence < 0 || sequence != working.lastSequence + 1)) {
+                    throw new ResyncRequiredException(snapshot.lastSequence);
+                }
+                working.processes = applyFrame(working.processes, frame, full, snapshot.lastSequence);
+                working.lastSequence = sequence;
+                expand(working, frame, userId, samples);
+            }
+            T result = ingest.apply(samples);
+            snapshot.processes = working.processes;
+            snapshot.lastSequence = working.lastSequence;
+            snapshot.epoch = working.epoch;
+            return result;
+        }
+    }
+
+    private static boolean isNewRun(DeviceSnapshot snapshot, String epoch, long sequence) {
+        if (snapshot.lastSequence < 0) {
+            return true;
+        }
+        return epoch != null ? !epoch.equals(snapshot.epoch) : sequence < snapshot.lastSequence;
+    }
+
+    public long getLastSequence(String deviceId) {
+        DeviceSnapshot snapshot = snapshots.get(deviceId);
+        return snapshot == null ? -1 : snapshot.lastSequence;
+    }
+
+    @NodeLocal("device snapshots held by this node")
+    @Scheduled(fixedDelay = 300000)
+    public void evictIdleSnapshots() {
+        long cutoff = System.currentTimeMillis() - idleMinutes * 60_000;
+        int before = snapshots.size();
+        snapshots.values().removeIf(snapshot -> snapshot.lastSeen < cutoff);
+        if (snapshots.size() < before) {
+            logger.debug("Evicted {} idle collector snapshots", before - snapshots.size());
+        }
+    }
+
+    /**
+     * The process set after the frame. {@code processes} is never modified, so a frame rejected
+     * half-way leaves nothing behind; {@code committedSequence} is what a resync is reported against.
+     */
+    @SuppressWarnings("unchecked")
+    private LinkedHashMap<String, ProcessEntry> applyFrame(LinkedHashMap<String, ProcessEntry> processes,
+                                                           Map<String, Object> frame, boolean full, long committedSequence) {
+        LinkedHashMap<String, ProcessEntry> next = full ? new LinkedHashMap<>() : new LinkedHashMap<>(processes);
+        for (Object closed : (List<Object>) frame.getOrDefault("closed", List.of())) {
+            next.remove(String.valueOf(closed));
+        }
+        for (Map<String, Object> opened : (List<Map<String, Object>>) frame.getOrDefault("opened", List.of())) {
+            String processId = String.valueOf(opened.get("processId"));
+            next.put(processId, new ProcessEntry(
+                text(opened, "processName"), text(opened, "windowTitle"), text(opened, "applicationPath")));
+        }
+        for (Map<String, Object> changed : (List<Map<String, Object>>) frame.getOrDefault("changed", List.of())) {
+            String processId = String.valueOf(changed.get("processId"));
+            ProcessEntry current = next.get(processId);
+            if (current == null) {
+                // A change to a process we never saw open means the two sides disagree
+                throw new ResyncRequiredException(committedSequence);
+            }
+            next.put(processId, new ProcessEntry(
+                changed.containsKey("processName") ? text(changed, "processName") : current.processName(),
+                changed.containsKey("windowTitle") ? text(changed, "windowTitle") : current.windowTitle(),
+                changed.containsKey("applicationPath") ? text(changed, "applicationPath") : current.applicationPath()));
+        }
+        if (next.size() > maxProcesses) {
+            throw new IllegalArgumentException("Snapshot exceeds " + maxProcesses + " processes");
+        }
+        return next;
+    }
+
+    private static void expand(DeviceSnapshot snapshot, Map<String, Object> frame, Long userId, List<Map<String, Object>> samples) {
+        LocalDateTime sampledAt = frame.get("sampledAt") != null
+            ? LocalDateTime.parse(frame.get("sampledAt").toString()) : LocalDateTime.now();
+        long interval = frame.get("intervalSeconds") instanceof Number number ? number.longValue() : 60L;
+        String startTime = sampledAt.toString();
+        String endTime = sampledAt.plusSeconds(interval).toString();
+
+        snapshot.processes.forEach((processId, entry) -> {
+            Map<String, Object> sample = new HashMap<>();
+            sample.put("userId", userId);
+            sample.put("processName", entry.processName());
+            sample.put("windowTitle", entry.windowTitle());
+            sample.put("processId", processId);
+            sample.put("applicationPath", entry.applicationPath());
+            sample.put("startTime", startTime);
+            sample.put("endTime", endTime);
+            sample.put("durationSeconds", interval);
+            sample.put("category", "SYSTEM");
+            sample.put("isProductiveApp", true);
+            sample.put("activityType", "PROCESS_MONITORING");
+            sample.put("description", "Automatic process monitoring: " + entry.processName());
+            sample.put("workspaceType", "LOCAL");
+            sample.put("applicationCategory", "SYSTEM");
+            samples.add(sample);
+        });
+    }
+
+    private static long sequence(Map<String, Object> frame) {
+        Object value = frame.get("sequence");
+        if (!(value instanceof Number number)) {
+            throw new IllegalArgumentException("Frame is missing its sequence number");
+        }
+        return number.longValue();
+    }
+
+    private static String text(Map<String, Object> map, String key) {
+        Object value = map.get(key);
+        return value != null ? value.toString() : "";
+    }
+
+    /**
+     * The device's snapshot is missing or behind; it must send a full frame.
+     */
+    public static class ResyncRequiredException extends RuntimeException {
+        private final long lastSequence;
+
+        public ResyncRequiredException(long lastSequence) {
+            super("Collector snapshot out of sync");
+            this.lastSequence = lastSequence;
+        }
+
+        public long getLastSequence() {
+            return lastSequence;
+        }
+    }
+
+    private record ProcessEntry(String processName, String windowTitle, String applicationPath) {
+    }
+
+    private static final class DeviceSnapshot {
+        private LinkedHashMap<String, ProcessEntry> processes = new LinkedHashMap<>();
+        private long lastSequence = -1;
+        private String epoch;
+        private volatile long lastSeen = System.currentTimeMillis();
+
+        // The process map is replaced rather than modified once published, so sharing it is safe
+        DeviceSnapshot copy() {
+            DeviceSnapshot copy = new DeviceSnapshot();
+            copy.processes = processes;
+            copy.lastSequence = lastSequence;
+            copy.epoch = epoch;
+            return copy;
+        }
+    }
+}
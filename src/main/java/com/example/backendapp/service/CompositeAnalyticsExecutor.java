@@ -0,0 +1,124 @@
+package com.example.backendapp.service;
+
+import com.example.backendapp.config.WorkloadClass;
+import com.example.backendapp.config.WorkloadContext;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs the independent parts of a composite analytics request concurrently on virtual threads.
+ *
+ * All parts share one per-request deadline. A part that has not finished by then is cancelled and
+ * reported in {@link CompositeResult#getIncomplete()} instead of failing the whole request; a part
+ * that throws cancels its siblings and the exception is rethrown. Database-bound work is gated by a
+ * global permit pool and a per-request parallelism cap so one dashboard cannot take every connection.
+ *
+ * Parts run in the caller's workload class (ANALYTICS when the caller has none), so their queries
+ * draw on the same connection pool the request was admitted to.
+ */
+@Component
+public class CompositeAnalyticsExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(CompositeAnalyticsExecutor.class);
+
+    @Value("${analytics.composite.deadline-ms:5000}")
+    private long deadlineMillis;
+
+    @Value("${analytics.composite.max-concurrent-queries:6}")
+    private int maxConcurrentQueries;
+
+    @Value("${analytics.composite.max-parallel-per-request:2}")
+    private int maxParallelPerRequest;
+
+    private Semaphore queryPermits;
+
+    @PostConstruct
+    protected void init() {
+        this.queryPermits = new Semaphore(maxConcurrentQueries, true);
+    }
+
+    public CompositeResult run(Map<String, Callable<?>> parts) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        Semaphore requestPermits = new Semaphore(maxParallelPerRequest);
+        WorkloadClass workload = WorkloadContext.current() != null ? WorkloadContext.current() : WorkloadClass.ANALYTICS;
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+        Map<String, Future<?>> futures = new LinkedHashMap<>();
+        try {
+            parts.forEach((name, part) ->
+                futures.put(name, executor.submit(() -> runWithPermits(part, workload, requestPermits, deadline))));
+
+            CompositeResult result = new CompositeResult();
+            for (Map.Entry<String, Future<?>> entry : futures.entrySet()) {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                try {
+                    result.results.put(entry.getKey(), entry.getValue().get(remaining, TimeUnit.NANOSECONDS));
+                } catch (TimeoutException e) {
+                    entry.getValue().cancel(true);
+                    result.incomplete.add(entry.getKey());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof PermitTimeoutException) {
+                        result.incomplete.add(entry.getKey());
+                        continue;
+                    }
+                    futures.values().forEach(future -> future.cancel(true));
+                    throw new CompletionException("Composite analytics part '" + entry.getKey() + "' failed", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    futures.values().forEach(future -> future.cancel(true));
+                    throw new CompletionException("Composite analytics request interrupted", e);
+                }
+            }
+
+            if (result.isPartial()) {
+                logger.warn("Composite analytics deadline of {} ms exceeded by: {}", deadlineMillis, result.incomplete);
+            }
+            return result;
+        } finally {
+            // Do not wait for cancelled parts: a blocked JDBC call keeps its permit until it returns
+            executor.shutdownNow();
+        }
+    }
+
+    private Object runWithPermits(Callable<?> part, WorkloadClass workload, Semaphore requestPermits, long deadline) throws Exception {
+        // Virtual threads are fresh each time, so there is no previous class to restore
+        WorkloadContext.enter(workload);
+        if (!requestPermits.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+            throw new PermitTimeoutException();
+        }
+        try {
+            if (!queryPermits.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                throw new PermitTimeoutException();
+            }
+            try {
+                return part.call();
+            } finally {
+                queryPermits.release();
+            }
+        } finally {
+            requestPermits.release();
+        }
+    }
+
+    @Getter
+    public static class CompositeResult {
+        private final Map<String, Object> results = new LinkedHashMap<>();
+        private final List<String> incomplete = new ArrayList<>();
+
+        public boolean isPartial() {
+            return !incomplete.isEmpty();
+        }
+    }
+
+    private static class PermitTimeoutException extends Exception {
+        PermitTimeoutException() {
+            super("No query permit available before the deadline", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.backendapp.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Shared work queue for ingest, kept in the ingest_staging table so that rows accepted by one node
+ * can be written by flush workers on any node.
+ *
+ * Ingest appends rows in one batched insert. A worker claims up to a chunk of unclaimed rows in a
+ * short transaction: the select skips rows other workers hold locked (READPAST on SQL Server,
+ * SKIP LOCKED elsewhere), so concurrent workers take disjoint chunks without waiting on each other,
+ * and the claimed rows are stamped with the worker's claim token and a deadline. The worker then
+ * writes the rows and calls {@link #complete} in the same transaction as the writes; the delete only
+ * matches rows still carrying its token, so if the claim expired and another worker took the rows
+ * over, the completion fails and the duplicate writes roll back.
+ *
+ * Rows are partitioned by user ({@code ingest.staging.partitions}) and claims take rows of one
+ * partition only, so a flush worker that owns a partition (see LogCollectorService) sees all of its
+ * users' samples, in order. The queue itself does not enforce ownership.
+ *
+ * A row that cannot be written is released for another attempt, or kept as a dead letter once it has
+ * used up its attempts. Rows of a crashed worker become claimable again when the claim deadline
+ * passes. Deadlines use the application clock, so node clocks should agree to well within
+ * {@code ingest.staging.claim-timeout-ms}; claim tokens keep a late worker from writing twice either way.
+ */
+@Service
+public class IngestStagingQueue {
+    private static final Logger logger = LoggerFactory.getLogger(IngestStagingQueue.class);
+
+    private static final String INSERT_SQL =
+        "INSERT INTO ingest_staging (payload, receipt_id, partition_key, attempts, dead, enqueued_at) VALUES (?, ?, ?, 0, ?, ?)";
+
+    private static final String CLAIMABLE = "dead = ? AND (claimed_until IS NULL OR claimed_until < ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${ingest.staging.claim-timeout-ms:120000}")
+    private long claimTimeoutMillis;
+
+    @Value("${ingest.staging.partitions:16}")
+    private int partitions;
+
+    private boolean sqlServer;
+    private String claimSql;
+    private TransactionTemplate transaction;
+
+    @PostConstruct
+    protected void init() {
+        transaction = new TransactionTemplate(transactionManager);
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+            connection.getMetaData().getDatabaseProductName());
+        sqlServer = product != null && product.startsWith("Microsoft SQL Server");
+        if (sqlServer) {
+            claimSql = "SELECT TOP (?) id, payload, receipt_id, attempts FROM ingest_staging WITH (UPDLOCK, READPAST, ROWLOCK) " +
+                "WHERE partition_key = ? AND " + CLAIMABLE + " ORDER BY id";
+        } else {
+            claimSql = "SELECT id, payload, receipt_id, attempts FROM ingest_staging " +
+                "WHERE partition_key = ? AND " + CLAIMABLE + " ORDER BY id FETCH FIRST ? ROWS ONLY FOR UPDATE SKIP LOCKED";
+        }
+        logger.debug("Ingest staging claims for {}: {}", product, claimSql);
+    }
+
+    /**
+     * Appends rows for flush workers to pick up; they are durable once this returns.
+     */
+    public void append(String receiptId, List<NewRow> newRows) {
+        if (newRows.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(newRows.size());
+        for (NewRow row : newRows) {
+            rows.add(new Object[] {row.payload(), receiptId, partitionOf(row.userId()), false, now});
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public int partitionOf(Long userId) {
+        return userId != null ? (int) Math.floorMod(userId, (long) partitions) : 0;
+    }
+
+    /**
+     * Partitions that have rows free to claim, in no particular order.
+     */
+    public List<Integer> findClaimablePartitions() {
+        return jdbcTemplate.queryForList("SELECT DISTINCT partition_key FROM ingest_staging WHERE " + CLAIMABLE,
+            Integer.class, false, Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    /**
+     * Claims up to {@code max} rows of one partition for this caller, oldest first. Returns an empty
+     * claim when no row of the partition is free.
+     */
+    public Claim claim(int partition, int max) {
+        String token = UUID.randomUUID().toString();
+        return transaction.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            Object[] args = sqlServer
+                ? new Object[] {max, partition, false, Timestamp.valueOf(now)}
+                : new Object[] {partition, false, Timestamp.valueOf(now), max};
+            List<StagedRow> rows = jdbcTemplate.query(claimSql, (rs, rowNum) -> new StagedRow(
+                rs.getLong("id"), rs.getString("payload"), rs.getString("receipt_id"), rs.getInt("attempts") + 1), args);
+            if (!rows.isEmpty()) {
+                List<Object> updateArgs = new ArrayList<>();
+                updateArgs.add(token);
+                updateArgs.add(Timestamp.valueOf(now.plusNanos(claimTimeoutMillis * 1_000_000)));
+                rows.forEach(row -> updateArgs.add(row.id()));
+                jdbcTemplate.update("UPDATE ingest_staging SET claim_token = ?, claimed_until = ?, attempts = attempts + 1 " +
+                    "WHERE id IN (" + placeholders(rows.size()) + ")", updateArgs.toArray());
+            }
+            return new Claim(token, rows);
+        });
+    }
+
+    /**
+     * Removes claimed rows once they are written. Must run in the transaction that wrote them: if any
+     * row is no longer held under this claim, {@link ClaimLostException} rolls the writes back.
+     */
+    public void complete(Claim claim, List<StagedRow> rows) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("complete must run inside the transaction that wrote the rows");
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<Object> args = new ArrayList<>();
+        args.add(claim.token());
+        rows.forEach(row -> args.add(row.id()));
+        int deleted = jdbcTemplate.update("DELETE FROM ingest_staging WHERE claim_token = ? AND id IN (" + placeholders(rows.size()) + ")",
+            args.toArray());
+        if (deleted != rows.size()) {
+            throw new ClaimLostException(rows.size() - deleted);
+        }
+    }
+
+    /**
+     * Hands a row that failed back for another attempt, or keeps it as a dead letter.
+     */
+    public void release(Claim claim, StagedRow row, boolean dead) {
+        jdbcTemplate.update("UPDATE ingest_staging SET claim_token = NULL, claimed_until = NULL, dead = ? " +
+            "WHERE id = ? AND claim_token = ?", dead, row.id(), claim.token());
+    }
+
+    /**
+     * Rows of a receipt still waiting to be written, and rows given up on.
+     */
+    public int[] countByReceipt(String receiptId) {
+        return jdbcTemplate.query("SELECT dead, COUNT(*) AS rows_left FROM ingest_staging WHERE receipt_id = ? GROUP BY dead",
+            rs -> {
+                int[] counts = new int[2];
+                while (rs.next()) {
+                    counts[rs.getBoolean("dead") ? 1 : 0] = rs.getInt("rows_left");
+                }
+                return counts;
+            }, receiptId);
+    }
+
+    public int countPending() {
+        Integer pending = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ingest_staging WHERE dead = ?", Integer.class, false);
+        return pending != null ? pending : 0;
+    }
+
+    /**
+     * Deletes dead letters enqueued before the cutoff; returns how many were removed.
+     */
+    public int purgeDeadLetters(LocalDateTime cutoff) {
+        return jdbcTemplate.update("DELETE FROM ingest_staging WHERE dead = ? AND enqueued_at < ?", true, Timestamp.valueOf(cutoff));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pending", countPending());
+        stats.put("claimed", jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM ingest_staging WHERE dead = ? AND claimed_until >= ?", Integer.class,
+            false, Timestamp.valueOf(LocalDateTime.now())));
+        stats.put("deadLetters", jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ingest_staging WHERE dead = ?", Integer.class, true));
+        stats.put("claimTimeoutMs", claimTimeoutMillis);
+        stats.put("partitions", partitions);
+        return stats;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    /**
+     * A row to stage; the user decides its partition.
+     */
+    public record NewRow(Long userId, String payload) {
+    }
+
+    /**
+     * One staged row; {@code attempts} counts the current one.
+     */
+    public record StagedRow(long id, String payload, String receiptId, int attempts) {
+    }
+
+    public record Claim(String token, List<StagedRow> rows) {
+
+        public boolean isEmpty() {
+            return rows.isEmpty();
+        }
+    }
+
+    /**
+     * Some claimed rows were taken over by another worker after the claim expired.
+     */
+    public static class ClaimLostException extends RuntimeException {
+        public ClaimLostException(int lost) {
+            super(lost + " staged rows are no longer held by this claim");
+        }
+    }
+}
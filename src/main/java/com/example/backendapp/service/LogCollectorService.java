@@ -1,28 +1,163 @@
 package com.example.backendapp.service;
 
+import com.example.backendapp.config.NodeLocal;
+import com.example.backendapp.config.WorkloadClass;
+import com.example.backendapp.config.WorkloadContext;
 import com.example.backendapp.entity.Activity;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.Map;
 import java.util.HashMap;
 
+/**
+ * Write-behind pipeline for collector data. Activities (which carry the process-track fields of
+ * collector samples) are queued on the request thread and written by a scheduled flush, one transaction per chunk of {@code ingest.flush.batch-size}
+ * rows. If a chunk fails it is retried row by row, so one bad row cannot hold back the others; a
+ * row that keeps failing is dropped after {@code ingest.flush.max-attempts}.
+ *
+ * Each upload gets an {@link IngestReceipt} that counts its rows as they commit, so a collector can
+ * tell whether its data is durable. The queue itself is in memory: rows not yet flushed are lost on a
+ * crash, and their receipt is gone with them, which is the signal to send again.
+ *
+ * With {@code ingest.queue.mode=shared} rows go to the ingest_staging table instead (see
+ * {@link IngestStagingQueue}) and are durable once the upload is accepted. Each flush then runs
+ * {@code ingest.staging.workers} workers that claim chunks of staged rows, whichever node staged
+ * them, so flush throughput grows with the number of workers across the cluster. Receipts still
+ * live on the node that accepted the upload and read their progress from the staging table.
+ *
+ * Staged rows are partitioned by user, and a partition is flushed under a cluster lease
+ * ({@code ingest-partition-<n>}), by one worker of one node at a time. Sessionization keeps open
+ * sessions in memory, so this keeps each user's sessions on a single node; a node drops its cached
+ * sessions for a partition whenever it takes the partition over, and every write transaction is
+ * fenced by the lease. Derived in-memory state (today's counters, presence, the search index,
+ * sketches, cached analytics) is still only updated on the node that flushed the row.
+ */
 @Service
 @EnableScheduling
 public class LogCollectorService {
     private static final Logger logger = LoggerFactory.getLogger(LogCollectorService.class);
     
-    private final Queue<Activity> activityLogQueue = new ConcurrentLinkedQueue<>();
+    private final Queue<PendingWrite> writeQueue = new ConcurrentLinkedQueue<>();
+    // ConcurrentLinkedQueue.size() walks the whole queue, so depth is tracked separately
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final ConcurrentHashMap<String, IngestReceipt> receipts = new ConcurrentHashMap<>();
+    private volatile long lastFlushMillis;
+    private volatile int lastFlushFailures;
+    private volatile int stagingBacklog;
     
     @Autowired
     private ActivityTrackingService activityTrackingService;
 
+    @Autowired
+    private IngestStagingQueue stagingQueue;
+
+    @Autowired
+    private ClusterLeaseService clusterLeaseService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${ingest.flush.batch-size:500}")
+    private int flushBatchSize;
+
+    @Value("${ingest.flush.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${ingest.receipt.ttl-minutes:60}")
+    private long receiptTtlMinutes;
+
+    @Value("${ingest.queue.mode:memory}")
+    private String queueMode;
+
+    @Value("${ingest.staging.workers:2}")
+    private int stagingWorkers;
+
+    @Value("${ingest.staging.max-chunks-per-worker:20}")
+    private int maxChunksPerWorker;
+
+    @Value("${ingest.staging.dead-letter-retention-hours:168}")
+    private long deadLetterRetentionHours;
+
+    @Value("${ingest.staging.partition-lease-ms:120000}")
+    private long partitionLeaseMillis;
+
+    @Autowired
+    private SessionizationService sessionization;
+
+    private boolean shared;
+    private ExecutorService flushWorkers;
+    private TransactionTemplate transaction;
+    // Fencing tokens of the partitions this node owns; a new token means another node may have owned it meanwhile
+    private final ConcurrentHashMap<Integer, Long> partitionTokens = new ConcurrentHashMap<>();
+    // Partitions a worker of this node is draining right now; the lease alone does not keep two local workers apart
+    private final Set<Integer> drainingPartitions = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    protected void init() {
+        transaction = new TransactionTemplate(transactionManager);
+        shared = "shared".equalsIgnoreCase(queueMode);
+        if (shared) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            flushWorkers = Executors.newFixedThreadPool(stagingWorkers, runnable -> {
+                // Flush workers only ever write collector data, so they draw on the ingest connection pool
+                Thread thread = new Thread(() -> {
+                    WorkloadContext.enter(WorkloadClass.INGEST);
+                    runnable.run();
+                }, "ingest-flush-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            logger.info("Ingest queue is shared: {} flush workers claiming chunks of {}", stagingWorkers, flushBatchSize);
+        }
+    }
+
+    @PreDestroy
+    protected void shutdown() {
+        if (flushWorkers != null) {
+            flushWorkers.shutdownNow();
+        }
+        partitionTokens.forEach((partition, token) -> {
+            try {
+                clusterLeaseService.release(partitionLease(partition), token);
+            } catch (DataAccessException e) {
+                logger.warn("Could not release ingest partition {}; it expires on its own", partition);
+            }
+        });
+    }
+
     private final Map<String, String> applicationCategories = new HashMap<String, String>() {{
         // Development Tools
         put("code", "DEVELOPMENT");
@@ -62,7 +197,52 @@ public class LogCollectorService {
         put("steam", "ENTERTAINMENT");
     }};
 
+    /**
+     * Starts a receipt for one upload; rows queued with it are counted as they commit.
+     */
+    public IngestReceipt openReceipt(String owner) {
+        IngestReceipt receipt = new IngestReceipt(UUID.randomUUID().toString(), owner);
+        receipts.put(receipt.getId(), receipt);
+        return receipt;
+    }
+
+    public Optional<IngestReceipt> findReceipt(String id) {
+        IngestReceipt receipt = receipts.get(id);
+        if (receipt != null && shared) {
+            int[] counts = stagingQueue.countByReceipt(id);
+            receipt.refresh(counts[0], counts[1]);
+        }
+        return Optional.ofNullable(receipt);
+    }
+
     public void queueActivityLog(Activity activity) {
+        queueActivityLogs(List.of(activity), null);
+    }
+
+    public void queueActivityLog(Activity activity, IngestReceipt receipt) {
+        queueActivityLogs(List.of(activity), receipt);
+    }
+
+    /**
+     * Queues the rows of one upload. In shared mode they are staged with a single batched insert.
+     */
+    public void queueActivityLogs(List<Activity> activities, IngestReceipt receipt) {
+        activities.forEach(this::prepare);
+        if (!shared) {
+            activities.forEach(activity -> enqueue(new PendingWrite(activity, receipt, 0)));
+            return;
+        }
+        List<IngestStagingQueue.NewRow> rows = new ArrayList<>(activities.size());
+        for (Activity activity : activities) {
+            rows.add(new IngestStagingQueue.NewRow(activity.getUserId(), toPayload(activity)));
+        }
+        stagingQueue.append(receipt != null ? receipt.getId() : null, rows);
+        if (receipt != null) {
+            receipt.accepted.addAndGet(rows.size());
+        }
+    }
+
+    private void prepare(Activity activity) {
         System.out.println("\n=== Data Validation Before Queueing ===");
         validateActivityData(activity);
         
@@ -71,7 +251,7 @@ public class LogCollectorService {
         System.out.println("Activity Type: " + activity.getActivityType());
         System.out.println("Description: " + activity.getDescription());
         System.out.println("Workspace Type: " + activity.getWorkspaceType());
-        System.out.println("Queue size before: " + activityLogQueue.size());
+        System.out.println("Queue size before: " + queueDepth.get());
         
         // Set default values if null
         if (activity.getActivityType() == null) {
@@ -102,10 +282,26 @@ public class LogCollectorService {
 
         System.out.println("Application Category: " + category);
         System.out.println("Productivity Status: " + activity.getStatus());
-        
-        activityLogQueue.add(activity);
-        
-        System.out.println("Queue size after: " + activityLogQueue.size());
+    }
+
+    private void enqueue(PendingWrite write) {
+        if (write.receipt() != null && write.attempts() == 0) {
+            write.receipt().accepted.incrementAndGet();
+        }
+        writeQueue.add(write);
+        queueDepth.incrementAndGet();
+    }
+
+    public int getQueueDepth() {
+        return shared ? stagingBacklog : queueDepth.get();
+    }
+
+    public long getLastFlushMillis() {
+        return lastFlushMillis;
+    }
+
+    public int getLastFlushFailures() {
+        return lastFlushFailures;
     }
 
     private void validateActivityData(Activity activity) {
@@ -118,34 +314,378 @@ public class LogCollectorService {
         System.out.println("Activity data: " + activity);
     }
 
-    @Scheduled(fixedRate = 60000) // Process every minute
-    @Transactional
+    @NodeLocal("drains this node's write-behind queue, or runs this node's workers on the shared one")
+    @Scheduled(fixedDelayString = "${ingest.flush-interval-ms:60000}")
     public void processBatchLogs() {
-        int batchSize = activityLogQueue.size();
+        if (shared) {
+            processStagedLogs();
+            return;
+        }
+        long started = System.currentTimeMillis();
+        int failures = 0;
+        int flushed = 0;
         System.out.println("\n=== Processing Batch Logs ===");
-        System.out.println("Current queue size: " + batchSize);
-        
-        for (int i = 0; i < batchSize; i++) {
-            Activity log = activityLogQueue.poll();
-            if (log != null) {
+        System.out.println("Current queue size: " + queueDepth.get());
+
+        // Rows re-queued for retry land behind this snapshot, so they wait for the next flush
+        int pending = queueDepth.get();
+        while (flushed < pending) {
+            List<PendingWrite> chunk = new ArrayList<>(Math.min(flushBatchSize, pending - flushed));
+            PendingWrite write;
+            while (chunk.size() < flushBatchSize && flushed + chunk.size() < pending && (write = writeQueue.poll()) != null) {
+                queueDepth.decrementAndGet();
+                chunk.add(write);
+            }
+            if (chunk.isEmpty()) {
+                break;
+            }
+            failures += flush(chunk);
+            flushed += chunk.size();
+        }
+
+        lastFlushMillis = System.currentTimeMillis() - started;
+        lastFlushFailures = failures;
+        System.out.println("\nBatch processing completed");
+        System.out.println("Remaining queue size: " + queueDepth.get());
+    }
+
+    private void processStagedLogs() {
+        long started = System.currentTimeMillis();
+        List<Future<Integer>> workers = new ArrayList<>(stagingWorkers);
+        for (int i = 0; i < stagingWorkers; i++) {
+            workers.add(flushWorkers.submit(() -> drainStaged(maxChunksPerWorker)));
+        }
+        int failures = 0;
+        for (Future<Integer> worker : workers) {
+            try {
+                failures += worker.get();
+            } catch (ExecutionException e) {
+                failures++;
+                logger.warn("Staged ingest worker failed: {}", e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        lastFlushMillis = System.currentTimeMillis() - started;
+        lastFlushFailures = failures;
+        try {
+            stagingBacklog = stagingQueue.countPending();
+        } catch (DataAccessException e) {
+            logger.warn("Could not count staged ingest rows: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Claims and writes chunks of staged rows, from the partitions this node can own, until none are
+     * free or {@code maxChunks} is reached. Safe to call from any number of threads and nodes at once;
+     * returns the rows that failed.
+     */
+    public int drainStaged(int maxChunks) {
+        List<Integer> partitions = new ArrayList<>(stagingQueue.findClaimablePartitions());
+        // Workers start at different partitions so they do not all queue up behind the first one
+        Collections.shuffle(partitions);
+        int failures = 0;
+        int chunks = 0;
+        for (int partition : partitions) {
+            if (chunks >= maxChunks) {
+                break;
+            }
+            if (!drainingPartitions.add(partition)) {
+                continue;
+            }
+            try {
+                while (chunks < maxChunks) {
+                    OptionalLong token = ownPartition(partition);
+                    if (token.isEmpty()) {
+                        break;
+                    }
+                    IngestStagingQueue.Claim claim = stagingQueue.claim(partition, flushBatchSize);
+                    if (claim.isEmpty()) {
+                        break;
+                    }
+                    chunks++;
+                    failures += flush(claim, partition, token.getAsLong());
+                }
+            } finally {
+                drainingPartitions.remove(partition);
+            }
+        }
+        return failures;
+    }
+
+    // Takes or renews the partition's lease. The lease is kept between flushes, so a partition stays
+    // with one node while it is healthy; taking it over (a new token) drops stale cached sessions.
+    private OptionalLong ownPartition(int partition) {
+        OptionalLong token = clusterLeaseService.tryAcquire(partitionLease(partition), Duration.ofMillis(partitionLeaseMillis));
+        if (token.isEmpty()) {
+            partitionTokens.remove(partition);
+            return token;
+        }
+        Long previous = partitionTokens.put(partition, token.getAsLong());
+        if (previous == null || previous != token.getAsLong()) {
+            sessionization.discardSessions(userId -> stagingQueue.partitionOf(userId) == partition);
+        }
+        return token;
+    }
+
+    private static String partitionLease(int partition) {
+        return "ingest-partition-" + partition;
+    }
+
+    @NodeLocal("this node's ingest receipts")
+    @Scheduled(fixedDelay = 300000)
+    public void expireReceipts() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(receiptTtlMinutes);
+        // Shared-mode receipts only learn their progress when read, so they expire by age alone
+        receipts.values().removeIf(receipt -> (shared || receipt.isSettled()) && receipt.createdAt.isBefore(cutoff));
+    }
+
+    @Scheduled(fixedDelay = 3600000)
+    public void purgeDeadLetters() {
+        if (!shared) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(deadLetterRetentionHours);
+        clusterLeaseService.runExclusive("ingest-staging-purge", Duration.ofMinutes(5), token -> {
+            int purged = transaction.execute(status -> {
+                clusterLeaseService.assertHeld("ingest-staging-purge", token);
+                return stagingQueue.purgeDeadLetters(cutoff);
+            });
+            if (purged > 0) {
+                logger.info("Purged {} dead staged ingest rows", purged);
+            }
+        });
+    }
+
+    // Returns the number of rows that failed and were re-queued or dropped
+    private int flush(List<PendingWrite> chunk) {
+        try {
+            transaction.executeWithoutResult(status -> chunk.forEach(this::write));
+            chunk.forEach(PendingWrite::committed);
+            return 0;
+        } catch (Exception e) {
+            logger.warn("Flush of {} rows failed, retrying them one at a time: {}", chunk.size(), e.getMessage());
+        }
+        // The retries only see committed sessions: SessionizationService drops any session the failed
+        // chunk opened or extended when its transaction rolls back, so no row extends a session that isn't in the database
+        int failures = 0;
+        for (PendingWrite write : chunk) {
+            try {
+                transaction.executeWithoutResult(status -> write(write));
+                write.committed();
+            } catch (Exception e) {
+                failures++;
+                if (write.attempts() + 1 >= maxAttempts) {
+                    logger.error("Dropping {} after {} attempts", write.activity(), maxAttempts, e);
+                    if (write.receipt() != null) {
+                        write.receipt().failed.incrementAndGet();
+                    }
+                } else {
+                    enqueue(new PendingWrite(write.activity(), write.receipt(), write.attempts() + 1));
+                }
+            }
+        }
+        return failures;
+    }
+
+    // Same as above for a claimed chunk; each transaction also removes its rows from the staging table,
+    // and holds the partition lease so a node that took the partition over cannot write alongside it
+    private int flush(IngestStagingQueue.Claim claim, int partition, long token) {
+        String lease = partitionLease(partition);
+        try {
+            transaction.executeWithoutResult(status -> {
+                clusterLeaseService.assertHeld(lease, token);
+                claim.rows().forEach(row -> write(fromPayload(row.payload())));
+                stagingQueue.complete(claim, claim.rows());
+            });
+            return 0;
+        } catch (ClusterLeaseService.LeaseLostException e) {
+            handOver(claim, claim.rows(), partition);
+            return 0;
+        } catch (Exception e) {
+            logger.warn("Flush of {} staged rows failed, retrying them one at a time: {}", claim.rows().size(), e.getMessage());
+        }
+        int failures = 0;
+        for (int i = 0; i < claim.rows().size(); i++) {
+            IngestStagingQueue.StagedRow row = claim.rows().get(i);
+            try {
+                transaction.executeWithoutResult(status -> {
+                    clusterLeaseService.assertHeld(lease, token);
+                    write(fromPayload(row.payload()));
+                    stagingQueue.complete(claim, List.of(row));
+                });
+            } catch (ClusterLeaseService.LeaseLostException e) {
+                handOver(claim, claim.rows().subList(i, claim.rows().size()), partition);
+                return failures;
+            } catch (IngestStagingQueue.ClaimLostException e) {
+                // Another worker took the row over after this claim expired; it writes the row instead
+            } catch (Exception e) {
+                failures++;
+                boolean dead = row.attempts() >= maxAttempts;
+                if (dead) {
+                    logger.error("Keeping staged row {} as a dead letter after {} attempts", row.id(), maxAttempts, e);
+                }
                 try {
-                    System.out.println("\nProcessing activity:");
-                    System.out.println("Process: " + log.getProcessName());
-                    System.out.println("User ID: " + log.getUserId());
-                    
-                    Activity savedActivity = activityTrackingService.logActivity(log);
-                    
-                    System.out.println("Successfully saved activity with ID: " + savedActivity.getId());
-                } catch (Exception e) {
-                    System.err.println("\nError processing activity:");
-                    System.err.println("Process: " + log.getProcessName());
-                    e.printStackTrace();
-                    activityLogQueue.add(log);
+                    stagingQueue.release(claim, row, dead);
+                } catch (DataAccessException releaseFailure) {
+                    logger.warn("Could not release staged row {}; it is retried when the claim expires", row.id());
                 }
             }
         }
-        
-        System.out.println("\nBatch processing completed");
-        System.out.println("Remaining queue size: " + activityLogQueue.size());
+        return failures;
+    }
+
+    // The partition moved to another node: give the unwritten rows back at once rather than at claim expiry
+    private void handOver(IngestStagingQueue.Claim claim, List<IngestStagingQueue.StagedRow> rows, int partition) {
+        partitionTokens.remove(partition);
+        logger.warn("Lost ingest partition {}; handing {} staged rows over", partition, rows.size());
+        for (IngestStagingQueue.StagedRow row : rows) {
+            try {
+                stagingQueue.release(claim, row, false);
+            } catch (DataAccessException e) {
+                logger.warn("Could not release staged row {}; it is retried when the claim expires", row.id());
+            }
+        }
+    }
+
+    private void write(PendingWrite write) {
+        write(write.activity());
+    }
+
+    private void write(Activity activity) {
+        // A rolled-back insert leaves its identity value on the object; clear it so the retry inserts again
+        activity.setId(null);
+        activity.setVersion(null);
+        Activity savedActivity = activityTrackingService.logActivity(activity);
+        System.out.println("Successfully saved activity with ID: " + savedActivity.getId());
+    }
+
+    // The activity's process-track fields are not serialized by Jackson, so the payload lists fields explicitly
+    private String toPayload(Activity activity) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("userId", activity.getUserId());
+        payload.put("activityType", activity.getActivityType());
+        payload.put("description", activity.getDescription());
+        payload.put("applicationName", activity.getApplicationName());
+        payload.put("workspaceType", activity.getWorkspaceType());
+        payload.put("applicationCategory", activity.getApplicationCategory());
+        payload.put("status", activity.getStatus() != null ? activity.getStatus().name() : null);
+        payload.put("processId", activity.getProcessId());
+        payload.put("processName", activity.getProcessName());
+        payload.put("windowTitle", activity.getWindowTitle());
+        payload.put("durationSeconds", activity.getDurationSeconds());
+        payload.put("createdAt", text(activity.getCreatedAt()));
+        payload.put("startTime", text(activity.getStartTime()));
+        payload.put("endTime", text(activity.getEndTime()));
+        payload.put("processTracked", activity.getProcessTracked());
+        payload.put("processCategory", activity.getProcessCategory());
+        payload.put("isProductiveApp", activity.getIsProductiveApp());
+        payload.put("applicationPath", activity.getApplicationPath());
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Activity cannot be staged: " + e.getMessage(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Activity fromPayload(String json) {
+        Map<String, Object> payload;
+        try {
+            payload = objectMapper.readValue(json, Map.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Staged row is not valid JSON: " + e.getMessage(), e);
+        }
+        Activity activity = new Activity();
+        activity.setUserId(((Number) payload.get("userId")).longValue());
+        activity.setActivityType((String) payload.get("activityType"));
+        activity.setDescription((String) payload.get("description"));
+        activity.setApplicationName((String) payload.get("applicationName"));
+        activity.setWorkspaceType((String) payload.get("workspaceType"));
+        activity.setApplicationCategory((String) payload.get("applicationCategory"));
+        activity.setStatus(payload.get("status") != null ? Activity.ActivityStatus.valueOf((String) payload.get("status")) : null);
+        activity.setProcessId((String) payload.get("processId"));
+        activity.setProcessName((String) payload.get("processName"));
+        activity.setWindowTitle((String) payload.get("windowTitle"));
+        activity.setDurationSeconds(payload.get("durationSeconds") != null ? ((Number) payload.get("durationSeconds")).longValue() : null);
+        activity.setCreatedAt(time(payload.get("createdAt")));
+        activity.setStartTime(time(payload.get("startTime")));
+        activity.setEndTime(time(payload.get("endTime")));
+        activity.setProcessTracked(Boolean.TRUE.equals(payload.get("processTracked")));
+        activity.setProcessCategory((String) payload.get("processCategory"));
+        activity.setIsProductiveApp((Boolean) payload.get("isProductiveApp"));
+        activity.setApplicationPath((String) payload.get("applicationPath"));
+        return activity;
+    }
+
+    private static String text(LocalDateTime time) {
+        return time != null ? time.toString() : null;
+    }
+
+    private static LocalDateTime time(Object value) {
+        return value != null ? LocalDateTime.parse(value.toString()) : null;
+    }
+
+    private record PendingWrite(Activity activity, IngestReceipt receipt, int attempts) {
+
+        void committed() {
+            if (receipt != null) {
+                receipt.committed.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Progress of one upload: rows accepted, committed and dropped after repeated failures.
+     */
+    public static class IngestReceipt {
+        private final String id;
+        private final String owner;
+        private final LocalDateTime createdAt = LocalDateTime.now();
+        private final AtomicInteger accepted = new AtomicInteger();
+        private final AtomicInteger committed = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+
+        IngestReceipt(String id, String owner) {
+            this.id = id;
+            this.owner = owner;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        // Shared mode: rows still staged are pending, dead letters have failed, the rest committed
+        void refresh(int pending, int dead) {
+            failed.set(dead);
+            committed.set(Math.max(0, accepted.get() - pending - dead));
+        }
+
+        public boolean isSettled() {
+            return committed.get() + failed.get() >= accepted.get();
+        }
+
+        public String getState() {
+            if (!isSettled()) {
+                return "PENDING";
+            }
+            return failed.get() == 0 ? "COMMITTED" : committed.get() == 0 ? "FAILED" : "PARTIALLY_COMMITTED";
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> view = new LinkedHashMap<>();
+            view.put("receiptId", id);
+            view.put("state", getState());
+            view.put("accepted", accepted.get());
+            view.put("committed", committed.get());
+            view.put("failed", failed.get());
+            view.put("createdAt", createdAt);
+            return view;
+        }
     }
 }
@@ -0,0 +1,216 @@
+package com.example.backendapp.service;
+
+import com.example.backendapp.config.WorkloadClass;
+import com.example.backendapp.config.WorkloadContext;
+import com.example.backendapp.dto.analytics.OrganizationAnalyticsDTO;
+import com.example.backendapp.dto.analytics.ProductivityAnalyticsDTO;
+import com.example.backendapp.entity.Activity;
+import com.example.backendapp.repository.ActivityRepository;
+import com.example.backendapp.repository.UserRepository;
+import com.example.backendapp.service.analytics.ActivityAggregator;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+
+/**
+ * Organization- and team-level analytics. The user set is split into chunks, each chunk is
+ * aggregated on a dedicated fork/join pool with the same {@link ActivityAggregator} that backs the
+ * per-user endpoints, and the partial aggregates are merged, so team totals equal the sum of what
+ * the per-user endpoints report. Chunks run in the caller's workload class (ANALYTICS when it has
+ * none), so the pool's worker threads query through the caller's connection pool.
+ *
+ * The organization-wide aggregate is shared per window: the summary, productivity, category and
+ * top-application endpoints read their section from one scan, and concurrent requests for the same
+ * window wait for the scan already running. Windows are widened to whole minutes so a rolling "now"
+ * still shares, and an aggregate is reused for {@code analytics.org.cache-ttl-ms}.
+ */
+@Service
+public class OrganizationAnalyticsService {
+
+    @Autowired
+    private ActivityRepository activityRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Each leaf holds a database connection while it streams, so parallelism also bounds pool usage
+    @Value("${analytics.org.parallelism:4}")
+    private int parallelism;
+
+    @Value("${analytics.org.chunk-size:50}")
+    private int chunkSize;
+
+    @Value("${analytics.org.cache-ttl-ms:60000}")
+    private long cacheTtlMillis;
+
+    private final Map<Window, SharedAggregate> organizationAggregates = new ConcurrentHashMap<>();
+
+    private ForkJoinPool pool;
+    private TransactionTemplate readOnlyTransaction;
+
+    @PostConstruct
+    protected void init() {
+        pool = new ForkJoinPool(parallelism);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    @PreDestroy
+    protected void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public OrganizationAnalyticsDTO analyzeOrganization(LocalDateTime startDate, LocalDateTime endDate, int topApplications) {
+        OrganizationAggregate organization = organizationAggregate(startDate, endDate);
+        return toAnalytics(organization.userCount(), organization.aggregate(), topApplications);
+    }
+
+    public ProductivityAnalyticsDTO analyzeOrganizationProductivity(LocalDateTime startDate, LocalDateTime endDate) {
+        return organizationAggregate(startDate, endDate).aggregate().toProductivityAnalytics();
+    }
+
+    public Map<String, Long> analyzeOrganizationCategoryMix(LocalDateTime startDate, LocalDateTime endDate) {
+        return organizationAggregate(startDate, endDate).aggregate().toCategoryMix();
+    }
+
+    public LinkedHashMap<String, Long> analyzeOrganizationTopApplications(LocalDateTime startDate, LocalDateTime endDate, int limit) {
+        return organizationAggregate(startDate, endDate).aggregate().topApplications(limit);
+    }
+
+    public OrganizationAnalyticsDTO analyzeUsers(List<Long> userIds, LocalDateTime startDate, LocalDateTime endDate, int topApplications) {
+        return toAnalytics(userIds.size(), aggregateUsers(userIds, startDate, endDate), topApplications);
+    }
+
+    private OrganizationAnalyticsDTO toAnalytics(int userCount, ActivityAggregator aggregate, int topApplications) {
+        return OrganizationAnalyticsDTO.builder()
+            .userCount(userCount)
+            .activityCount(aggregate.getRowCount())
+            .productivity(aggregate.toProductivityAnalytics())
+            .categoryMix(aggregate.toCategoryMix())
+            .topApplications(aggregate.topApplications(topApplications))
+            .build();
+    }
+
+    private ActivityAggregator aggregateUsers(List<Long> userIds, LocalDateTime startDate, LocalDateTime endDate) {
+        WorkloadClass workload = WorkloadContext.current() != null ? WorkloadContext.current() : WorkloadClass.ANALYTICS;
+        return userIds.isEmpty()
+            ? new ActivityAggregator(startDate, endDate)
+            : pool.invoke(new ChunkAggregation(userIds, startDate, endDate, workload));
+    }
+
+    /**
+     * The aggregate over all active users for the window, from a scan finished less than the TTL ago
+     * or still running for another request, or from a new scan. The aggregate is only read after it
+     * is published, so concurrent requests can render their sections from it.
+     */
+    private OrganizationAggregate organizationAggregate(LocalDateTime startDate, LocalDateTime endDate) {
+        LocalDateTime windowStart = startDate.truncatedTo(ChronoUnit.MINUTES);
+        LocalDateTime windowEnd = endDate.truncatedTo(ChronoUnit.MINUTES);
+        if (windowEnd.isBefore(endDate)) {
+            windowEnd = windowEnd.plusMinutes(1);
+        }
+        Window window = new Window(windowStart, windowEnd);
+        long now = System.currentTimeMillis();
+        organizationAggregates.values().removeIf(shared -> shared.isExpired(now, cacheTtlMillis));
+
+        SharedAggregate fresh = new SharedAggregate(new CompletableFuture<>(), now);
+        SharedAggregate shared = organizationAggregates.merge(window, fresh,
+            (existing, candidate) -> existing.isExpired(now, cacheTtlMillis) ? candidate : existing);
+        if (shared == fresh) {
+            try {
+                List<Long> userIds = userRepository.findActiveUserIds();
+                fresh.result().complete(new OrganizationAggregate(userIds.size(),
+                    aggregateUsers(userIds, window.start(), window.end())));
+            } catch (RuntimeException | Error e) {
+                organizationAggregates.remove(window, fresh);
+                fresh.result().completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return shared.result().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private ActivityAggregator aggregateChunk(List<Long> userIds, LocalDateTime startDate, LocalDateTime endDate, WorkloadClass workload) {
+        // Pool workers are shared across requests, and the caller may run a leaf itself, so restore afterwards
+        WorkloadClass previous = WorkloadContext.enter(workload);
+        try {
+            return readOnlyTransaction.execute(status -> {
+                ActivityAggregator aggregator = new ActivityAggregator(startDate, endDate);
+                try (Stream<Activity> activities = activityRepository.streamActivitiesByUserIdsAndDateRange(userIds, startDate, endDate)) {
+                    activities.forEach(aggregator::accept);
+                }
+                return aggregator;
+            });
+        } finally {
+            WorkloadContext.restore(previous);
+        }
+    }
+
+    private record Window(LocalDateTime start, LocalDateTime end) {
+    }
+
+    private record OrganizationAggregate(int userCount, ActivityAggregator aggregate) {
+    }
+
+    private record SharedAggregate(CompletableFuture<OrganizationAggregate> result, long startedAt) {
+
+        // A scan still running never expires, so late arrivals wait for it instead of starting another
+        boolean isExpired(long now, long ttlMillis) {
+            return result.isDone() && now - startedAt >= ttlMillis;
+        }
+    }
+
+    private class ChunkAggregation extends RecursiveTask<ActivityAggregator> {
+        private final List<Long> userIds;
+        private final LocalDateTime startDate;
+        private final LocalDateTime endDate;
+        private final WorkloadClass workload;
+
+        ChunkAggregation(List<Long> userIds, LocalDateTime startDate, LocalDateTime endDate, WorkloadClass workload) {
+            this.userIds = userIds;
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.workload = workload;
+        }
+
+        @Override
+        protected ActivityAggregator compute() {
+            if (userIds.size() <= chunkSize) {
+                return aggregateChunk(new ArrayList<>(userIds), startDate, endDate, workload);
+            }
+            int middle = userIds.size() / 2;
+            ChunkAggregation left = new ChunkAggregation(userIds.subList(0, middle), startDate, endDate, workload);
+            ChunkAggregation right = new ChunkAggregation(userIds.subList(middle, userIds.size()), startDate, endDate, workload);
+            left.fork();
+            ActivityAggregator rightResult = right.compute();
+            return left.join().merge(rightResult);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.backendapp.service;
+
+import com.example.backendapp.config.NodeLocal;
+import com.example.backendapp.event.UserStatusChangedEvent;
+import com.example.backendapp.service.UserStatusService.UserStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Pushes user status transitions to dashboard subscribers over server-sent events.
+ *
+ * Updates are not written to the connection as they happen. Each subscriber has a pending map keyed
+ * by user id, so several changes to one user between flushes collapse into the latest one, and the
+ * map is capped: once it is full, changes for further users are dropped and the next flush sends a
+ * "resync" event telling the client to reload through /api/activities/status/bulk. A scheduled flush
+ * drains the maps, and a comment heartbeat keeps idle connections open and finds dead ones.
+ */
+@Service
+public class PresenceStreamService {
+    private static final Logger logger = LoggerFactory.getLogger(PresenceStreamService.class);
+
+    @Autowired
+    private UserStatusService userStatusService;
+
+    @Value("${presence.emitter-timeout-ms:1800000}")
+    private long emitterTimeoutMillis;
+
+    @Value("${presence.max-pending-per-subscriber:1000}")
+    private int maxPending;
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Opens a stream for the given users, or for every user when {@code userIds} is empty. The
+     * current status of the selected users is sent first as a "snapshot" event (empty when streaming
+     * every user).
+     *
+     * The subscriber is registered before the snapshot is read, so a change that lands in between is
+     * buffered rather than lost; its buffer is drained only after the snapshot has been sent.
+     */
+    public SseEmitter subscribe(Collection<Long> userIds) throws IOException {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter, new HashSet<>(userIds));
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+
+        List<Map<String, Object>> snapshot = new ArrayList<>();
+        try {
+            if (!userIds.isEmpty()) {
+                userStatusService.getStatuses(userIds).forEach((userId, status) -> snapshot.add(toPayload(userId, status)));
+            }
+            emitter.send(SseEmitter.event().name("snapshot").data(snapshot));
+        } catch (IOException | RuntimeException e) {
+            subscribers.remove(subscriber);
+            throw e;
+        }
+        subscriber.snapshotSent = true;
+        subscriber.flush();
+        return emitter;
+    }
+
+    @EventListener
+    public void onStatusChanged(UserStatusChangedEvent event) {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(event.getUserId(), event.getCurrent());
+        }
+    }
+
+    @NodeLocal("SSE connections open on this node")
+    @Scheduled(fixedDelayString = "${presence.flush-interval-ms:1000}")
+    public void flush() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.flush();
+        }
+    }
+
+    @NodeLocal("SSE connections open on this node")
+    @Scheduled(fixedRateString = "${presence.heartbeat-interval-ms:15000}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            // The snapshot is written by the subscribing thread; nothing else may write before it
+            if (subscriber.snapshotSent) {
+                subscriber.send(SseEmitter.event().comment("heartbeat " + LocalDateTime.now()));
+            }
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    private static Map<String, Object> toPayload(Long userId, UserStatus status) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("userId", userId);
+        payload.put("status", status.status());
+        payload.put("lastActive", status.lastActive());
+        payload.put("applicationName", status.applicationName());
+        return payload;
+    }
+
+    private class Subscriber {
+        private final SseEmitter emitter;
+        private final Set<Long> userIds;
+        private final Object pendingLock = new Object();
+        private LinkedHashMap<Long, UserStatus> pending = new LinkedHashMap<>();
+        private boolean overflowed;
+        // Until the snapshot is out, changes are only buffered so they cannot arrive ahead of it
+        private volatile boolean snapshotSent;
+
+        Subscriber(SseEmitter emitter, Set<Long> userIds) {
+            this.emitter = emitter;
+            this.userIds = userIds;
+        }
+
+        void offer(Long userId, UserStatus status) {
+            if (!userIds.isEmpty() && !userIds.contains(userId)) {
+                return;
+            }
+            synchronized (pendingLock) {
+                if (pending.containsKey(userId) || pending.size() < maxPending) {
+                    pending.put(userId, status);
+                } else {
+                    overflowed = true;
+                }
+            }
+        }
+
+        void flush() {
+            if (!snapshotSent) {
+                return;
+            }
+            LinkedHashMap<Long, UserStatus> batch;
+            boolean resync;
+            synchronized (pendingLock) {
+                if (pending.isEmpty() && !overflowed) {
+                    return;
+                }
+                batch = pending;
+                resync = overflowed;
+                pending = new LinkedHashMap<>();
+                overflowed = false;
+            }
+            if (!batch.isEmpty()) {
+                List<Map<String, Object>> updates = new ArrayList<>(batch.size());
+                batch.forEach((userId, status) -> updates.add(toPayload(userId, status)));
+                send(SseEmitter.event().name("status").data(updates));
+            }
+            if (resync) {
+                send(SseEmitter.event().name("resync").data("Updates were dropped; reload current statuses"));
+            }
+        }
+
+        // SseEmitter is not thread-safe, and flush and heartbeat may run on different scheduler threads.
+        // Offers only take pendingLock, so a slow client never blocks the ingest thread.
+        synchronized void send(SseEmitter.SseEventBuilder event) {
+            try {
+                emitter.send(event);
+            } catch (IOException | IllegalStateException e) {
+                logger.debug("Dropping presence subscriber: {}", e.getMessage());
+                subscribers.remove(this);
+                emitter.completeWithError(e);
+            }
+        }
+    }
+}
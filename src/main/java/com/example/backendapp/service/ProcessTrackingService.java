@@ -1,5 +1,6 @@
 package com.example.backendapp.service;
 
+import com.example.backendapp.entity.Activity;
 import com.example.backendapp.entity.ProcessTrack;
 import com.example.backendapp.repository.ProcessTrackRepository;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,6 +15,12 @@ public class ProcessTrackingService {
     @Autowired
     private ProcessTrackRepository processTrackRepository;
 
+    @Autowired
+    private AnalyticsResultCache resultCache;
+
+    @Autowired
+    private ActivityTrackingService activityTrackingService;
+
     private final Map<String, String> applicationCategories = new HashMap<String, String>() {{
         put("code", "DEVELOPMENT");
         put("studio", "DEVELOPMENT");
@@ -34,38 +41,80 @@ public class ProcessTrackingService {
         put("game", "ENTERTAINMENT");
     }};
 
+    /**
+     * Records a process sample that has no activity of its own as a track-only row: the process_tracks
+     * view shows it, activity reads do not. Returns it in ProcessTrack shape; the id is the row's id.
+     */
     public ProcessTrack logProcess(ProcessTrack process) {
+        Activity activity = new Activity();
+        activity.setUserId(process.getUserId());
+        activity.setActivityType("PROCESS_MONITORING");
+        activity.setDescription("Process monitoring: " + process.getProcessName());
+        activity.setProcessName(process.getProcessName());
+        activity.setApplicationName(process.getProcessName());
+        activity.setWindowTitle(process.getWindowTitle() != null ? process.getWindowTitle() : "");
+        activity.setProcessId(process.getProcessId());
+        activity.setWorkspaceType("LOCAL");
+        activity.setStartTime(process.getStartTime());
+        activity.setEndTime(process.getEndTime());
+        activity.setDurationSeconds(process.getDurationSeconds());
+        attachProcessTrack(activity, process);
+        activity.setTrackOnly(true);
+        return toProcessTrack(activityTrackingService.logActivity(activity));
+    }
+
+    /**
+     * Categorizes the process sample and copies its process-track fields onto the activity written
+     * for the same sample, so the one row serves both the activity and the process-track views.
+     */
+    public void attachProcessTrack(Activity activity, ProcessTrack process) {
         categorizeProcess(process);
         calculateProductivity(process);
-        return processTrackRepository.save(process);
+        activity.setProcessTracked(true);
+        activity.setProcessCategory(process.getCategory());
+        activity.setIsProductiveApp(process.getIsProductiveApp());
+        activity.setApplicationPath(process.getApplicationPath());
+    }
+
+    private static ProcessTrack toProcessTrack(Activity activity) {
+        ProcessTrack track = new ProcessTrack();
+        track.setId(activity.getId());
+        track.setUserId(activity.getUserId());
+        track.setProcessName(activity.getProcessName());
+        track.setWindowTitle(activity.getWindowTitle());
+        track.setProcessId(activity.getProcessId());
+        track.setCategory(activity.getProcessCategory());
+        track.setStartTime(activity.getStartTime());
+        track.setEndTime(activity.getEndTime());
+        track.setDurationSeconds(activity.getDurationSeconds());
+        track.setIsProductiveApp(activity.getIsProductiveApp());
+        track.setApplicationPath(activity.getApplicationPath());
+        return track;
     }
 
     public Map<String, Object> getProcessAnalytics(Long userId, LocalDateTime start, LocalDateTime end) {
-        Map<String, Object> analytics = new HashMap<>();
-        
-        // Get category-wise usage
-        List<Object[]> categoryStats = processTrackRepository.getCategoryUsageStats(userId, start, end);
-        Map<String, Long> categoryUsage = categoryStats.stream()
-            .collect(Collectors.toMap(
-                row -> (String) row[0],
-                row -> (Long) row[1]
-            ));
-        
-        // Get most used applications
-        List<Object[]> appStats = processTrackRepository.getMostUsedApplications(userId, start, end);
-        Map<String, Long> topApps = appStats.stream()
-            .limit(10)
-            .collect(Collectors.toMap(
-                row -> (String) row[0],
-                row -> (Long) row[1]
-            ));
-
-        analytics.put("categoryUsage", categoryUsage);
-        analytics.put("topApplications", topApps);
-        analytics.put("productiveTime", calculateProductiveTime(userId, start, end));
-        analytics.put("nonProductiveTime", calculateNonProductiveTime(userId, start, end));
-        
-        return analytics;
+        return resultCache.get(AnalyticsResultCache.PROCESS_ANALYTICS, userId, start, end,
+            (from, to) -> computeProcessUsage(userId, from, to),
+            ProcessUsage::new, ProcessUsage::merge, ProcessUsage::toAnalytics);
+    }
+
+    private ProcessUsage computeProcessUsage(Long userId, LocalDateTime start, LocalDateTime end) {
+        ProcessUsage usage = new ProcessUsage();
+        for (Object[] row : processTrackRepository.getCategoryUsageStats(userId, start, end)) {
+            usage.categorySeconds.put((String) row[0], (Long) row[1]);
+        }
+        // Every application is kept so days can be merged; the top ten are picked from the total
+        for (Object[] row : processTrackRepository.getMostUsedApplications(userId, start, end)) {
+            usage.applicationSeconds.put((String) row[0], (Long) row[1]);
+        }
+        for (ProcessTrack track : processTrackRepository.findByUserIdAndStartTimeBetween(userId, start, end)) {
+            if (track.getIsProductiveApp()) {
+                usage.productiveSeconds += track.getDurationSeconds();
+            } else {
+                usage.nonProductiveSeconds += track.getDurationSeconds();
+            }
+        }
+        return usage;
     }
 
     private void categorizeProcess(ProcessTrack process) {
@@ -88,17 +137,34 @@ public class ProcessTrackingService {
         );
     }
 
-    private Long calculateProductiveTime(Long userId, LocalDateTime start, LocalDateTime end) {
-        return processTrackRepository.findByUserIdAndStartTimeBetween(userId, start, end).stream()
-            .filter(ProcessTrack::getIsProductiveApp)
-            .mapToLong(ProcessTrack::getDurationSeconds)
-            .sum();
-    }
+    /**
+     * Process-track totals over part of a window; partials for different days merge by summing.
+     */
+    private static final class ProcessUsage {
+        private final Map<String, Long> categorySeconds = new HashMap<>();
+        private final Map<String, Long> applicationSeconds = new HashMap<>();
+        private long productiveSeconds;
+        private long nonProductiveSeconds;
+
+        void merge(ProcessUsage other) {
+            other.categorySeconds.forEach((category, seconds) -> categorySeconds.merge(category, seconds, Long::sum));
+            other.applicationSeconds.forEach((application, seconds) -> applicationSeconds.merge(application, seconds, Long::sum));
+            productiveSeconds += other.productiveSeconds;
+            nonProductiveSeconds += other.nonProductiveSeconds;
+        }
+
+        Map<String, Object> toAnalytics() {
+            Map<String, Long> topApps = applicationSeconds.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(10)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
 
-    private Long calculateNonProductiveTime(Long userId, LocalDateTime start, LocalDateTime end) {
-        return processTrackRepository.findByUserIdAndStartTimeBetween(userId, start, end).stream()
-            .filter(pt -> !pt.getIsProductiveApp())
-            .mapToLong(ProcessTrack::getDurationSeconds)
-            .sum();
+            Map<String, Object> analytics = new HashMap<>();
+            analytics.put("categoryUsage", new HashMap<>(categorySeconds));
+            analytics.put("topApplications", topApps);
+            analytics.put("productiveTime", productiveSeconds);
+            analytics.put("nonProductiveTime", nonProductiveSeconds);
+            return analytics;
+        }
     }
 }
@@ -0,0 +1,179 @@
+package com.example.backendapp.service;
+
+import com.example.backendapp.config.NodeLocal;
+import com.example.backendapp.config.WorkloadClass;
+import com.example.backendapp.util.LatencyHistogram;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token buckets per (caller, workload class), with limits chosen by the caller's role.
+ *
+ * Each bucket is a single AtomicLong holding its "theoretical arrival time" (the GCRA form of a
+ * token bucket): a request is admitted if advancing that time by one emission interval keeps it
+ * within {@code burst} intervals of now. Refill is therefore implicit and lazy, and a decision is one
+ * CAS with no lock. Buckets live in a ConcurrentHashMap, whose bins are locked independently, and a
+ * bucket whose time has fallen behind now is full again, so evicting it loses nothing.
+ *
+ * Limits are read from {@code ratelimit.limit.<ROLE>.<CLASS>=<per-minute>[,<burst>]}, for example
+ * {@code ratelimit.limit.EMPLOYEE.ANALYTICS=60,20}. A missing or zero limit means unlimited.
+ */
+@Service
+public class RateLimiterService {
+    private static final Logger logger = LoggerFactory.getLogger(RateLimiterService.class);
+
+    public static final List<String> ROLES = List.of("SUPERADMIN", "ADMIN", "EMPLOYEE", "DEVICE", "ANONYMOUS");
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${ratelimit.enabled:true}")
+    private boolean enabled;
+
+    private final Map<String, EnumMap<WorkloadClass, Limit>> limits = new HashMap<>();
+    private final ConcurrentHashMap<BucketKey, Bucket> buckets = new ConcurrentHashMap<>();
+    private final EnumMap<WorkloadClass, LongAdder> admitted = new EnumMap<>(WorkloadClass.class);
+    private final EnumMap<WorkloadClass, LongAdder> throttled = new EnumMap<>(WorkloadClass.class);
+    private final LatencyHistogram decisionLatency = new LatencyHistogram();
+
+    @PostConstruct
+    protected void init() {
+        for (WorkloadClass workloadClass : WorkloadClass.values()) {
+            admitted.put(workloadClass, new LongAdder());
+            throttled.put(workloadClass, new LongAdder());
+        }
+        for (String role : ROLES) {
+            EnumMap<WorkloadClass, Limit> roleLimits = new EnumMap<>(WorkloadClass.class);
+            for (WorkloadClass workloadClass : WorkloadClass.values()) {
+                String value = environment.getProperty("ratelimit.limit." + role + "." + workloadClass);
+                Limit limit = Limit.parse(value);
+                if (limit != null) {
+                    roleLimits.put(workloadClass, limit);
+                }
+            }
+            limits.put(role, roleLimits);
+        }
+        logger.info("Rate limits: {}", limits);
+    }
+
+    /**
+     * Takes one token for the caller; returns null when no limit applies.
+     */
+    public Decision tryAcquire(String subject, String role, WorkloadClass workloadClass) {
+        if (!enabled) {
+            return null;
+        }
+        long started = System.nanoTime();
+        try {
+            Limit limit = limits.getOrDefault(role, limits.get("ANONYMOUS")).get(workloadClass);
+            if (limit == null) {
+                return null;
+            }
+            Bucket bucket = buckets.computeIfAbsent(new BucketKey(subject, workloadClass), key -> new Bucket());
+            Decision decision = bucket.tryAcquire(limit, started);
+            (decision.allowed() ? admitted : throttled).get(workloadClass).increment();
+            return decision;
+        } finally {
+            decisionLatency.record(System.nanoTime() - started);
+        }
+    }
+
+    // A request racing the removal may spend a token on the evicted bucket; at worst one extra request gets through
+    @NodeLocal("this node's rate limit buckets")
+    @Scheduled(fixedDelayString = "${ratelimit.eviction-interval-ms:60000}")
+    public void evictIdleBuckets() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.isFullAt(now));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("buckets", buckets.size());
+        Map<WorkloadClass, Map<String, Long>> byClass = new EnumMap<>(WorkloadClass.class);
+        for (WorkloadClass workloadClass : WorkloadClass.values()) {
+            byClass.put(workloadClass, Map.of(
+                "admitted", admitted.get(workloadClass).sum(),
+                "throttled", throttled.get(workloadClass).sum()));
+        }
+        stats.put("byClass", byClass);
+        stats.put("decisionLatency", decisionLatency.snapshot());
+        stats.put("limits", limits);
+        return stats;
+    }
+
+    /**
+     * Outcome of one request: remaining tokens, seconds until the bucket is full again and, when
+     * throttled, seconds until the next token.
+     */
+    public record Decision(boolean allowed, int limit, long remaining, long resetSeconds, long retryAfterSeconds) {
+    }
+
+    record Limit(int perMinute, int burst, long intervalNanos) {
+
+        static Limit parse(String value) {
+            if (value == null || value.isBlank()) {
+                return null;
+            }
+            String[] parts = value.split(",");
+            int perMinute = Integer.parseInt(parts[0].trim());
+            if (perMinute <= 0) {
+                return null;
+            }
+            int burst = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : perMinute;
+            return new Limit(perMinute, Math.max(1, burst), TimeUnit.MINUTES.toNanos(1) / perMinute);
+        }
+
+        @Override
+        public String toString() {
+            return perMinute + "/min burst " + burst;
+        }
+    }
+
+    private record BucketKey(String subject, WorkloadClass workloadClass) {
+    }
+
+    private static final class Bucket {
+        // Theoretical arrival time in System.nanoTime() units; at or before now means a full bucket
+        private final AtomicLong arrival = new AtomicLong(Long.MIN_VALUE);
+
+        Decision tryAcquire(Limit limit, long now) {
+            long window = limit.intervalNanos() * limit.burst();
+            while (true) {
+                long current = arrival.get();
+                long base = current == Long.MIN_VALUE || current - now < 0 ? now : current;
+                long next = base + limit.intervalNanos();
+                long ahead = next - now;
+                if (ahead > window) {
+                    long retryAfter = ahead - window;
+                    return new Decision(false, limit.burst(), 0, toSeconds(current - now), toSeconds(retryAfter));
+                }
+                if (arrival.compareAndSet(current, next)) {
+                    long remaining = (window - ahead) / limit.intervalNanos();
+                    return new Decision(true, limit.burst(), remaining, toSeconds(ahead), 0);
+                }
+            }
+        }
+
+        boolean isFullAt(long now) {
+            long current = arrival.get();
+            return current == Long.MIN_VALUE || current - now <= 0;
+        }
+
+        private static long toSeconds(long nanos) {
+            return Math.max(0L, (nanos + 999_999_999L) / 1_000_000_000L);
+        }
+    }
+}
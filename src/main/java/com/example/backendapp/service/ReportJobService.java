@@ -0,0 +1,415 @@
+package com.example.backendapp.service;
+
+import com.example.backendapp.config.NodeLocal;
+import com.example.backendapp.config.WorkloadClass;
+import com.example.backendapp.config.WorkloadContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs long reports in the background and keeps their output as local files until a TTL expires.
+ *
+ * Jobs go to a fixed pool of workers behind a bounded queue, and each submitter may only have
+ * {@code reports.jobs.max-per-user} jobs queued or running at once. The output is written to a
+ * ".part" file and moved into place once it is complete, so a download never sees a half-written
+ * result. Job metadata lives in memory only; result files left over from a previous run are deleted
+ * at startup.
+ */
+@Service
+public class ReportJobService {
+    private static final Logger logger = LoggerFactory.getLogger(ReportJobService.class);
+    private static final String FILE_PREFIX = "report-";
+
+    public enum ReportType {
+        DETAILED_SUMMARY("json", "application/json"),
+        EFFICIENCY_METRICS("json", "application/json"),
+        ACTIVITY_CSV("csv.gz", "application/gzip"),
+        ACTIVITY_NDJSON("ndjson.gz", "application/gzip");
+
+        private final String extension;
+        private final String contentType;
+
+        ReportType(String extension, String contentType) {
+            this.extension = extension;
+            this.contentType = contentType;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public boolean isActivityExport() {
+            return this == ACTIVITY_CSV || this == ACTIVITY_NDJSON;
+        }
+    }
+
+    public enum JobState { QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED, EXPIRED }
+
+    @Autowired
+    private ActivityTrackingService activityTrackingService;
+
+    @Autowired
+    private AnalyticsService analyticsService;
+
+    @Autowired
+    private ActivityExportService activityExportService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${reports.jobs.directory:${java.io.tmpdir}/backendapp-reports}")
+    private String directory;
+
+    @Value("${reports.jobs.workers:2}")
+    private int workers;
+
+    @Value("${reports.jobs.queue-capacity:20}")
+    private int queueCapacity;
+
+    @Value("${reports.jobs.max-per-user:2}")
+    private int maxPerUser;
+
+    @Value("${reports.jobs.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    private Path resultDirectory;
+    private ThreadPoolExecutor executor;
+    private final Map<String, ReportJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> activeByOwner = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    protected void init() throws IOException {
+        resultDirectory = Paths.get(directory).toAbsolutePath();
+        Files.createDirectories(resultDirectory);
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(resultDirectory, FILE_PREFIX + "*")) {
+            for (Path leftover : leftovers) {
+                Files.deleteIfExists(leftover);
+            }
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+                // Workers only ever run reports, so they always draw on the reports connection pool
+                Thread thread = new Thread(() -> {
+                    WorkloadContext.enter(WorkloadClass.REPORTS);
+                    runnable.run();
+                }, "report-worker-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    @PreDestroy
+    protected void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public ReportJob submit(String owner, ReportType type, Long userId, LocalDateTime startDate, LocalDateTime endDate) {
+        if (!type.isActivityExport() && userId == null) {
+            throw new IllegalArgumentException("userId is required for " + type);
+        }
+        if (startDate == null || endDate == null || endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("A valid startDate/endDate range is required");
+        }
+        AtomicInteger active = activeByOwner.computeIfAbsent(owner, key -> new AtomicInteger());
+        if (active.incrementAndGet() > maxPerUser) {
+            active.decrementAndGet();
+            throw new ReportRejectedException("At most " + maxPerUser + " report jobs may be queued or running per user", false);
+        }
+
+        ReportJob job = new ReportJob(UUID.randomUUID().toString(), owner, type, userId, startDate, endDate);
+        jobs.put(job.id, job);
+        try {
+            job.future = executor.submit(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            active.decrementAndGet();
+            throw new ReportRejectedException("The report queue is full", true);
+        }
+        // Cancelled before the future was assigned: cancel() could not dequeue it, so do it here
+        if (job.state == JobState.CANCELLED) {
+            dequeue(job);
+        }
+        return job;
+    }
+
+    /**
+     * The job if it exists and the caller may see it; admins see every job.
+     */
+    public Optional<ReportJob> find(String jobId, String owner, boolean admin) {
+        ReportJob job = jobs.get(jobId);
+        return job != null && (admin || job.owner.equals(owner)) ? Optional.of(job) : Optional.empty();
+    }
+
+    public List<ReportJob> list(String owner, boolean admin) {
+        return jobs.values().stream()
+            .filter(job -> admin || job.owner.equals(owner))
+            .sorted(Comparator.comparing(ReportJob::getSubmittedAt).reversed())
+            .toList();
+    }
+
+    public boolean cancel(String jobId, String owner, boolean admin) {
+        Optional<ReportJob> found = find(jobId, owner, admin);
+        if (found.isEmpty()) {
+            return false;
+        }
+        ReportJob job = found.get();
+        synchronized (job) {
+            JobState previous = job.state;
+            if (previous == JobState.QUEUED || previous == JobState.RUNNING) {
+                job.state = JobState.CANCELLED;
+                job.completedAt = LocalDateTime.now();
+                job.expiresAt = job.completedAt.plusMinutes(ttlMinutes);
+                // The future is assigned just after submit; a job cancelled before that skips itself in run()
+                if (job.future != null) {
+                    job.future.cancel(true);
+                }
+                // A running job gives its slot back when the worker unwinds; a queued one never runs,
+                // and gives back its queue slot too rather than holding it until a worker reaches it
+                if (previous == JobState.QUEUED) {
+                    activeByOwner.get(job.owner).decrementAndGet();
+                    dequeue(job);
+                }
+            }
+        }
+        removeIfDeleted(job);
+        return true;
+    }
+
+    private void dequeue(ReportJob job) {
+        // submit() queues the returned FutureTask itself, so it is the element to remove
+        if (job.future instanceof Runnable task) {
+            executor.remove(task);
+        }
+    }
+
+    @NodeLocal("report files on this node's disk")
+    @Scheduled(fixedDelayString = "${reports.jobs.sweep-ms:60000}")
+    public void expireResults() {
+        LocalDateTime now = LocalDateTime.now();
+        for (ReportJob job : jobs.values()) {
+            synchronized (job) {
+                if (job.expiresAt == null || job.expiresAt.isAfter(now)) {
+                    continue;
+                }
+                job.state = JobState.EXPIRED;
+            }
+            removeIfDeleted(job);
+        }
+    }
+
+    private void run(ReportJob job) {
+        synchronized (job) {
+            if (job.state != JobState.QUEUED) {
+                return;
+            }
+            job.state = JobState.RUNNING;
+            job.startedAt = LocalDateTime.now();
+        }
+        Path part = resultDirectory.resolve(FILE_PREFIX + job.id + ".part");
+        Path result = resultDirectory.resolve(FILE_PREFIX + job.id + "." + job.type.extension);
+        try {
+            try (OutputStream out = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(part)), job.bytesWritten)) {
+                writeReport(job, out);
+            }
+            Files.move(part, result, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (job) {
+                if (job.state == JobState.RUNNING) {
+                    job.file = result;
+                    job.sizeBytes = Files.size(result);
+                    job.state = JobState.COMPLETED;
+                }
+            }
+            logger.info("Report {} ({}) completed: {} bytes", job.id, job.type, job.sizeBytes);
+        } catch (Exception e) {
+            synchronized (job) {
+                if (job.state == JobState.RUNNING) {
+                    job.state = JobState.FAILED;
+                    job.error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+                }
+            }
+            if (job.state == JobState.FAILED) {
+                logger.error("Report {} ({}) failed", job.id, job.type, e);
+            }
+        } finally {
+            deleteQuietly(part);
+            synchronized (job) {
+                if (job.state != JobState.COMPLETED) {
+                    deleteQuietly(result);
+                }
+                if (job.completedAt == null) {
+                    job.completedAt = LocalDateTime.now();
+                }
+                job.expiresAt = job.completedAt.plusMinutes(ttlMinutes);
+            }
+            activeByOwner.get(job.owner).decrementAndGet();
+        }
+    }
+
+    private void writeReport(ReportJob job, OutputStream out) throws IOException {
+        switch (job.type) {
+            case DETAILED_SUMMARY -> objectMapper.writeValue(out,
+                activityTrackingService.getDetailedActivitySummary(job.userId, job.startDate, job.endDate));
+            case EFFICIENCY_METRICS -> objectMapper.writeValue(out,
+                analyticsService.computeEfficiencyMetrics(job.userId, job.startDate, job.endDate));
+            case ACTIVITY_CSV -> job.rows = activityExportService.write(job.userId, job.startDate, job.endDate,
+                ActivityExportService.Format.CSV, true, out);
+            case ACTIVITY_NDJSON -> job.rows = activityExportService.write(job.userId, job.startDate, job.endDate,
+                ActivityExportService.Format.NDJSON, true, out);
+        }
+    }
+
+    // A result being downloaded on Windows cannot be deleted yet; the next sweep retries
+    private void removeIfDeleted(ReportJob job) {
+        JobState state;
+        synchronized (job) {
+            state = job.state;
+        }
+        if (state != JobState.EXPIRED && state != JobState.CANCELLED) {
+            return;
+        }
+        if (job.file == null || deleteQuietly(job.file)) {
+            jobs.remove(job.id, job);
+        }
+    }
+
+    private static boolean deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+            return true;
+        } catch (IOException e) {
+            logger.debug("Could not delete {}: {}", path, e.getMessage());
+            return false;
+        }
+    }
+
+    public static class ReportRejectedException extends RuntimeException {
+        private final boolean queueFull;
+
+        ReportRejectedException(String message, boolean queueFull) {
+            super(message);
+            this.queueFull = queueFull;
+        }
+
+        public boolean isQueueFull() {
+            return queueFull;
+        }
+    }
+
+    public static class ReportJob {
+        private final String id;
+        private final String owner;
+        private final ReportType type;
+        private final Long userId;
+        private final LocalDateTime startDate;
+        private final LocalDateTime endDate;
+        private final LocalDateTime submittedAt = LocalDateTime.now();
+        private final AtomicLong bytesWritten = new AtomicLong();
+        private volatile JobState state = JobState.QUEUED;
+        private volatile LocalDateTime startedAt;
+        private volatile LocalDateTime completedAt;
+        private volatile LocalDateTime expiresAt;
+        private volatile Path file;
+        private volatile long sizeBytes;
+        private volatile Long rows;
+        private volatile String error;
+        private volatile Future<?> future;
+
+        ReportJob(String id, String owner, ReportType type, Long userId, LocalDateTime startDate, LocalDateTime endDate) {
+            this.id = id;
+            this.owner = owner;
+            this.type = type;
+            this.userId = userId;
+            this.startDate = startDate;
+            this.endDate = endDate;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public ReportType getType() {
+            return type;
+        }
+
+        public JobState getState() {
+            return state;
+        }
+
+        public LocalDateTime getSubmittedAt() {
+            return submittedAt;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public long getSizeBytes() {
+            return sizeBytes;
+        }
+
+        public LocalDateTime getCompletedAt() {
+            return completedAt;
+        }
+
+        public String getFilename() {
+            return FILE_PREFIX + type.name().toLowerCase() + "-" + id + "." + type.extension;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> view = new LinkedHashMap<>();
+            view.put("jobId", id);
+            view.put("type", type);
+            view.put("state", state);
+            view.put("userId", userId);
+            view.put("startDate", startDate);
+            view.put("endDate", endDate);
+            view.put("submittedAt", submittedAt);
+            view.put("startedAt", startedAt);
+            view.put("completedAt", completedAt);
+            view.put("expiresAt", expiresAt);
+            view.put("bytesWritten", bytesWritten.get());
+            view.put("rows", rows);
+            view.put("sizeBytes", state == JobState.COMPLETED ? sizeBytes : null);
+            view.put("error", error);
+            return view;
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private final AtomicLong count;
+
+        CountingOutputStream(OutputStream out, AtomicLong count) {
+            super(out);
+            this.count = count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count.incrementAndGet();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count.addAndGet(len);
+        }
+    }
+}
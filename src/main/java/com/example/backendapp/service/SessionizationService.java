@@ -0,0 +1,241 @@
+package com.example.backendapp.service;
+
+import com.example.backendapp.config.NodeLocal;
+import com.example.backendapp.entity.Activity;
+import com.example.backendapp.repository.ActivityRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongPredicate;
+
+/**
+ * Merges the collector's per-minute samples into session rows.
+ *
+ * The collector reports every visible window once a minute, so an hour in one window used to become
+ * sixty rows of 60 seconds each. A sample whose (user, type, process, window title) matches an open
+ * session and starts no later than {@code ingest.session.gap-seconds} after the session's end extends
+ * that row in place: end_time moves forward and duration_seconds becomes the exact covered span.
+ * Otherwise the caller inserts the sample as a new row, which then becomes the open session. Sessions
+ * never cross midnight, so day-based queries still see each day's time on that day's rows.
+ *
+ * Open sessions live in memory. The session rows themselves are the checkpoint: they are updated on
+ * every extension, so after a restart the sessions still inside the gap are reloaded from the rows
+ * whose end_time is recent. A session row that has been deleted is detected when its update touches
+ * no row, and the sample falls back to an insert.
+ *
+ * An extension or a new session changes the cached session before its transaction commits, because
+ * listeners in the same transaction read the row's new end and duration. If the transaction rolls
+ * back, the cached session is dropped, so it never runs ahead of the row. The next sample for that
+ * key reloads the committed row, as below.
+ *
+ * A sample with no cached session first looks for a row of its key that ended within the gap, and
+ * extends that row if it finds one. This covers sessions opened on another node: with memory ingest
+ * behind a load balancer without sticky routing, a user's samples alternate between nodes, and each
+ * node would otherwise start its own row for the same minutes and count them twice. The row update
+ * only ever moves end_time forward, so a node whose cached session is behind the row (because another
+ * node extended it) cannot shorten it. Derived state (today's counters, presence) is still only kept
+ * on the node that saw a sample, so memory ingest wants sticky routing by user or shared mode. In
+ * shared ingest mode each user's samples are flushed by one node at a time, and that node drops its
+ * cached sessions for the users it takes over (see {@link #discardSessions}).
+ *
+ * Process tracks are process-tracked activity rows, so their sessions are the activity sessions;
+ * track-only rows get sessions of their own.
+ */
+@Service
+public class SessionizationService {
+    private static final Logger logger = LoggerFactory.getLogger(SessionizationService.class);
+
+    @Autowired
+    private ActivityRepository activityRepository;
+
+    @Value("${ingest.session.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ingest.session.gap-seconds:120}")
+    private long gapSeconds;
+
+    private final ConcurrentHashMap<SessionKey, OpenSession<Activity>> activitySessions = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverOpenSessions() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusSeconds(gapSeconds);
+        try {
+            activityRepository.findByEndTimeGreaterThanEqual(cutoff).forEach(this::openActivity);
+            logger.info("Recovered {} activity sessions", activitySessions.size());
+        } catch (Exception e) {
+            logger.error("Could not recover open sessions; the next samples will start new rows", e);
+        }
+    }
+
+    /**
+     * Tries to merge the sample into its open session. Returns null when the sample must be inserted.
+     */
+    public Extension<Activity> extendActivity(Activity sample) {
+        if (!enabled || sample.getUserId() == null || sample.getProcessName() == null || Boolean.TRUE.equals(sample.getTamperAttempt())) {
+            return null;
+        }
+        SessionKey key = SessionKey.of(sample);
+        OpenSession<Activity> session = activitySessions.get(key);
+        if (session == null) {
+            session = adoptSession(key, sample);
+            if (session == null) {
+                return null;
+            }
+        }
+        long sampleIdle = sample.getIdleTimeSeconds() != null ? sample.getIdleTimeSeconds() : 0L;
+        synchronized (session) {
+            if (!session.accepts(sample.getStartTime(), sample.getEndTime(), gapSeconds)) {
+                return null;
+            }
+            LocalDateTime end = later(session.end, sample.getEndTime());
+            long duration = Duration.between(session.start, end).getSeconds();
+            // A replayed sample that lies inside the session adds nothing
+            long addedIdle = end.isAfter(session.end) ? sampleIdle : 0L;
+            if (activityRepository.extendSession(session.id, end, duration, addedIdle) == 0) {
+                activitySessions.remove(key, session);
+                return null;
+            }
+            Activity row = session.row;
+            long addedDuration = duration - session.duration;
+            session.end = end;
+            session.duration = duration;
+            row.setEndTime(end);
+            row.setDurationSeconds(duration);
+            row.setIdleTimeSeconds((row.getIdleTimeSeconds() != null ? row.getIdleTimeSeconds() : 0L) + addedIdle);
+            discardOnRollback(key, session);
+            return new Extension<>(row, addedDuration, addedIdle);
+        }
+    }
+
+    public void openActivity(Activity row) {
+        if (!enabled || row.getId() == null || row.getStartTime() == null || row.getEndTime() == null || row.getProcessName() == null) {
+            return;
+        }
+        SessionKey key = SessionKey.of(row);
+        OpenSession<Activity> opened = new OpenSession<>(row.getId(), row, row.getStartTime(), row.getEndTime(), nonNull(row.getDurationSeconds()));
+        if (activitySessions.merge(key, opened, (current, candidate) -> candidate.end.isBefore(current.end) ? current : candidate) == opened) {
+            discardOnRollback(key, opened);
+        }
+    }
+
+    // The row is committed, so the adopted session is kept even if the sample's transaction rolls back
+    private OpenSession<Activity> adoptSession(SessionKey key, Activity sample) {
+        if (sample.getStartTime() == null) {
+            return null;
+        }
+        Activity row = activityRepository
+            .findFirstByUserIdAndActivityTypeAndProcessNameAndWindowTitleAndTrackOnlyAndEndTimeGreaterThanEqualOrderByEndTimeDesc(
+                key.userId(), key.activityType(), key.processName(), key.windowTitle(), key.trackOnly(),
+                sample.getStartTime().minusSeconds(gapSeconds))
+            .orElse(null);
+        if (row == null || row.getId() == null || row.getStartTime() == null || row.getEndTime() == null) {
+            return null;
+        }
+        logger.debug("Adopted session row {} opened elsewhere for user {}", row.getId(), key.userId());
+        OpenSession<Activity> adopted = new OpenSession<>(row.getId(), row, row.getStartTime(), row.getEndTime(), nonNull(row.getDurationSeconds()));
+        return activitySessions.merge(key, adopted, (current, candidate) -> candidate.end.isBefore(current.end) ? current : candidate);
+    }
+
+    private void discardOnRollback(SessionKey key, OpenSession<Activity> session) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    activitySessions.remove(key, session);
+                }
+            }
+        });
+    }
+
+    // Sessions past the gap can no longer be extended; the rows already hold their final state
+    @NodeLocal("open sessions cached on this node")
+    @Scheduled(fixedDelayString = "${ingest.session.sweep-ms:60000}")
+    public void closeExpiredSessions() {
+        LocalDateTime cutoff = LocalDateTime.now().minusSeconds(gapSeconds);
+        activitySessions.values().removeIf(session -> session.isClosedBy(cutoff));
+    }
+
+    /**
+     * Forgets the open sessions of the matching users, so their next samples start new rows instead
+     * of extending rows another node may have moved on since.
+     */
+    public void discardSessions(LongPredicate userFilter) {
+        activitySessions.keySet().removeIf(key -> key.userId() != null && userFilter.test(key.userId()));
+    }
+
+    public int getOpenSessionCount() {
+        return activitySessions.size();
+    }
+
+    private static LocalDateTime later(LocalDateTime a, LocalDateTime b) {
+        return b != null && b.isAfter(a) ? b : a;
+    }
+
+    private static long nonNull(Long value) {
+        return value != null ? value : 0L;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Extension<T> {
+        private final T row;
+        private final long addedDurationSeconds;
+        private final long addedIdleSeconds;
+    }
+
+    // Track-only rows are kept apart so a process sample never extends an activity row, or the reverse
+    private record SessionKey(Long userId, String activityType, String processName, String windowTitle, boolean trackOnly) {
+
+        static SessionKey of(Activity row) {
+            return new SessionKey(row.getUserId(), row.getActivityType(), row.getProcessName(), row.getWindowTitle(),
+                Boolean.TRUE.equals(row.getTrackOnly()));
+        }
+    }
+
+    private static final class OpenSession<T> {
+        private final long id;
+        private final T row;
+        private final LocalDateTime start;
+        private LocalDateTime end;
+        private long duration;
+
+        OpenSession(long id, T row, LocalDateTime start, LocalDateTime end, long duration) {
+            this.id = id;
+            this.row = row;
+            this.start = start;
+            this.end = end;
+            this.duration = duration;
+        }
+
+        boolean accepts(LocalDateTime sampleStart, LocalDateTime sampleEnd, long gapSeconds) {
+            return sampleStart != null && sampleEnd != null
+                && !sampleStart.isBefore(start)
+                && !sampleStart.isAfter(end.plusSeconds(gapSeconds))
+                && Objects.equals(sampleEnd.toLocalDate(), start.toLocalDate());
+        }
+
+        synchronized boolean isClosedBy(LocalDateTime cutoff) {
+            return end.isBefore(cutoff);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.backendapp.service;
+
+import com.example.backendapp.config.NodeLocal;
+import com.example.backendapp.entity.Activity;
+import com.example.backendapp.event.ActivityPersistedEvent;
+import com.example.backendapp.repository.ActivityRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Per-user counters for the current day, so the "today" endpoints never re-read today's rows.
+ *
+ * Each user holds primitive arrays indexed through a shared application/category dictionary. A
+ * user's counters reset the first time a row from a later day arrives, and reads for a day that has
+ * already ended return empty results, so rollover needs no coordination. The schema has no per-user
+ * time zone, so the day boundary is midnight in {@code activity.today.zone} (the server zone by default).
+ *
+ * Counters are rebuilt from today's rows at startup. Writes that commit while the rebuild streams are
+ * held back and applied afterwards unless the stream already counted them. Live writes add the
+ * event's deltas, since a session extension re-publishes a row whose totals were partly counted.
+ */
+@Service
+public class TodayCountersService {
+    private static final Logger logger = LoggerFactory.getLogger(TodayCountersService.class);
+
+    private static final String APPLICATION_USAGE = "APPLICATION_USAGE";
+    private static final String PRODUCTIVE = "PRODUCTIVE";
+
+    @Autowired
+    private ActivityRepository activityRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${activity.today.zone:}")
+    private String zoneId;
+
+    private ZoneId zone;
+    private final ZoneId serverZone = ZoneId.systemDefault();
+
+    private final ConcurrentHashMap<Long, DayCounters> countersByUser = new ConcurrentHashMap<>();
+    private final NameDictionary applications = new NameDictionary();
+    private final NameDictionary categories = new NameDictionary();
+
+    private final Object rebuildLock = new Object();
+    private volatile boolean rebuilding = true;
+    private final List<ActivityPersistedEvent> heldDuringRebuild = new ArrayList<>();
+    private final Set<Long> streamedDuringRebuild = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    protected void init() {
+        zone = zoneId == null || zoneId.isBlank() ? serverZone : ZoneId.of(zoneId);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        LocalDateTime startOfToday = today().atStartOfDay(zone).withZoneSameInstant(serverZone).toLocalDateTime();
+        Long highWaterMark = activityRepository.findMaxId();
+        long startingMaxId = highWaterMark != null ? highWaterMark : 0L;
+
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<Activity> activities = activityRepository.streamActivitiesByDateRange(
+                        startOfToday, LocalDateTime.now().plusDays(1))) {
+                    activities.forEach(activity -> {
+                        if (activity.getId() != null && activity.getId() > startingMaxId) {
+                            streamedDuringRebuild.add(activity.getId());
+                        }
+                        apply(activity, nonNull(activity.getDurationSeconds()), nonNull(activity.getIdleTimeSeconds()));
+                    });
+                }
+            });
+            logger.info("Rebuilt today's counters for {} users", countersByUser.size());
+        } catch (Exception e) {
+            logger.error("Could not rebuild today's counters; they will only cover new activity", e);
+        } finally {
+            synchronized (rebuildLock) {
+                rebuilding = false;
+                heldDuringRebuild.forEach(this::applyOnce);
+                heldDuringRebuild.clear();
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onActivityPersisted(ActivityPersistedEvent event) {
+        if (Boolean.TRUE.equals(event.getActivity().getTrackOnly())) {
+            return;
+        }
+        if (rebuilding) {
+            synchronized (rebuildLock) {
+                if (rebuilding) {
+                    heldDuringRebuild.add(event);
+                    return;
+                }
+            }
+        }
+        applyOnce(event);
+    }
+
+    // Drop users who have had no activity since the last midnight; their reads are already empty
+    @NodeLocal("this node's daily counters")
+    @Scheduled(cron = "0 5 * * * *")
+    public void evictPreviousDays() {
+        LocalDate today = today();
+        countersByUser.values().removeIf(counters -> counters.isBefore(today));
+        streamedDuringRebuild.clear();
+    }
+
+    public void evict(Long userId) {
+        countersByUser.remove(userId);
+    }
+
+    public Map<String, Long> getApplicationUsage(Long userId) {
+        DayCounters counters = countersByUser.get(userId);
+        return counters != null ? counters.applicationUsage(today(), applications) : new HashMap<>();
+    }
+
+    public Map<String, Long> getCategoryUsage(Long userId) {
+        DayCounters counters = countersByUser.get(userId);
+        return counters != null ? counters.categoryUsage(today(), categories) : new HashMap<>();
+    }
+
+    public long getProductiveSeconds(Long userId) {
+        DayCounters counters = countersByUser.get(userId);
+        return counters != null ? counters.productiveSeconds(today()) : 0L;
+    }
+
+    public long getIdleSeconds(Long userId) {
+        DayCounters counters = countersByUser.get(userId);
+        return counters != null ? counters.idleSeconds(today()) : 0L;
+    }
+
+    private LocalDate today() {
+        return LocalDate.now(zone);
+    }
+
+    // Only new rows can be recognized as already streamed; a session extension that commits while the
+    // rebuild is streaming its row may be counted twice, which is limited to that one sample
+    private void applyOnce(ActivityPersistedEvent event) {
+        Activity activity = event.getActivity();
+        if (!event.isExtension() && !streamedDuringRebuild.isEmpty() && activity.getId() != null
+                && streamedDuringRebuild.remove(activity.getId())) {
+            return;
+        }
+        apply(activity, event.getAddedDurationSeconds(), event.getAddedIdleSeconds());
+    }
+
+    private void apply(Activity activity, long durationSeconds, long idleSeconds) {
+        if (activity.getUserId() == null || activity.getCreatedAt() == null) {
+            return;
+        }
+        LocalDate day = activity.getCreatedAt().atZone(serverZone).withZoneSameInstant(zone).toLocalDate();
+        // Rows from earlier days, or stamped ahead by a skewed collector clock, are not today's
+        if (!day.equals(today())) {
+            return;
+        }
+        int application = APPLICATION_USAGE.equals(activity.getActivityType()) && activity.getApplicationName() != null
+            ? applications.indexOf(activity.getApplicationName()) : -1;
+        int category = activity.getApplicationCategory() != null
+            ? categories.indexOf(activity.getApplicationCategory()) : -1;
+
+        countersByUser.computeIfAbsent(activity.getUserId(), id -> new DayCounters(day))
+            .add(day, application, category,
+                PRODUCTIVE.equals(activity.getActivityType()),
+                durationSeconds, idleSeconds);
+    }
+
+    private static long nonNull(Long value) {
+        return value != null ? value : 0L;
+    }
+
+    private static final class DayCounters {
+        private LocalDate day;
+        private long[] applicationSeconds = new long[8];
+        private long[] categorySeconds = new long[8];
+        private long productiveSeconds;
+        private long idleSeconds;
+
+        DayCounters(LocalDate day) {
+            this.day = day;
+        }
+
+        synchronized void add(LocalDate activityDay, int application, int category, boolean productive, long duration, long idle) {
+            if (activityDay.isBefore(day)) {
+                return;
+            }
+            if (activityDay.isAfter(day)) {
+                day = activityDay;
+                Arrays.fill(applicationSeconds, 0L);
+                Arrays.fill(categorySeconds, 0L);
+                productiveSeconds = 0L;
+                idleSeconds = 0L;
+            }
+            if (application >= 0) {
+                applicationSeconds = ensureCapacity(applicationSeconds, application);
+                applicationSeconds[application] += duration;
+            }
+            if (category >= 0) {
+                categorySeconds = ensureCapacity(categorySeconds, category);
+                categorySeconds[category] += duration;
+            }
+            if (productive) {
+                productiveSeconds += duration;
+            }
+            idleSeconds += idle;
+        }
+
+        synchronized boolean isBefore(LocalDate today) {
+            return day.isBefore(today);
+        }
+
+        synchronized Map<String, Long> applicationUsage(LocalDate today, NameDictionary names) {
+            return day.equals(today) ? toMap(applicationSeconds, names) : new HashMap<>();
+        }
+
+        synchronized Map<String, Long> categoryUsage(LocalDate today, NameDictionary names) {
+            return day.equals(today) ? toMap(categorySeconds, names) : new HashMap<>();
+        }
+
+        synchronized long productiveSeconds(LocalDate today) {
+            return day.equals(today) ? productiveSeconds : 0L;
+        }
+
+        synchronized long idleSeconds(LocalDate today) {
+            return day.equals(today) ? idleSeconds : 0L;
+        }
+
+        private static Map<String, Long> toMap(long[] seconds, NameDictionary names) {
+            Map<String, Long> result = new HashMap<>();
+            for (int i = 0; i < seconds.length; i++) {
+                if (seconds[i] != 0) {
+                    result.put(names.nameOf(i), seconds[i]);
+                }
+            }
+            return result;
+        }
+
+        private static long[] ensureCapacity(long[] array, int index) {
+            return index < array.length ? array : Arrays.copyOf(array, Math.max(index + 1, array.length * 2));
+        }
+    }
+
+    /**
+     * Application and category names shared by every user's counters; ids are never reused.
+     */
+    private static final class NameDictionary {
+        private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+        private final List<String> names = new ArrayList<>();
+
+        int indexOf(String name) {
+            Integer id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            synchronized (names) {
+                return ids.computeIfAbsent(name, key -> {
+                    names.add(key);
+                    return names.size() - 1;
+                });
+            }
+        }
+
+        String nameOf(int id) {
+            synchronized (names) {
+                return names.get(id);
+            }
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package com.example.backendapp.service;
 
 import com.example.backendapp.entity.User;
+import com.example.backendapp.repository.ActivityRepository;
 import com.example.backendapp.repository.UserRepository;
+import com.example.backendapp.security.TokenRevocationCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -34,6 +37,15 @@ public class UserService implements UserDetailsService {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private TokenRevocationCache tokenRevocationCache;
+
+    @Autowired
+    private ActivityRepository activityRepository;
+
+    @Autowired
+    private ChangeFeedService changeFeedService;
+
     // Register a new user
     public User registerUser(User user) {
         // Format and validate role
@@ -83,6 +95,9 @@ public class UserService implements UserDetailsService {
     // Update user details
     public Optional<User> updateUser(Long id, User updatedUser) {
         return userRepository.findById(id).map(user -> {
+            String previousUsername = user.getUsername();
+            String previousPassword = user.getPassword();
+            String previousRole = user.getRole();
             user.setUsername(updatedUser.getUsername());
             
             // Update email if provided and validate uniqueness
@@ -108,7 +123,19 @@ public class UserService implements UserDetailsService {
             }
             
             user.setActive(updatedUser.isActive());
-            return userRepository.save(user);
+            User saved = userRepository.save(user);
+
+            // Tokens carry the username and role, so they must not outlive a change to either
+            if (!saved.isActive()) {
+                tokenRevocationCache.userDeactivated(id);
+            } else {
+                tokenRevocationCache.userActivated(id);
+            }
+            if (!saved.getUsername().equals(previousUsername) || !saved.getPassword().equals(previousPassword)
+                    || !saved.getRole().equals(previousRole)) {
+                tokenRevocationCache.userChanged(id);
+            }
+            return saved;
         });
     }
 
@@ -119,15 +146,22 @@ public class UserService implements UserDetailsService {
             User user = userOptional.get();
             user.setPassword(passwordEncoder.encode(newPassword));
             userRepository.save(user);
+            tokenRevocationCache.userChanged(id);
             return true;
         }
         return false;
     }
 
     // Delete a user by ID
+    // The user's activities go with the foreign key's ON DELETE CASCADE, which the change feed never
+    // sees, so their DELETE entries are recorded here. The user row is locked first so no activity can
+    // be inserted between reading the ids and the cascade.
+    @Transactional
     public boolean deleteUser(Long id) {
-        if (userRepository.existsById(id)) {
+        if (userRepository.lockById(id).isPresent()) {
+            changeFeedService.recordDeletedRows(activityRepository.findDeletionRefsByUserId(id));
             userRepository.deleteById(id);
+            tokenRevocationCache.userDeactivated(id);
             return true;
         }
         return false;
@@ -149,6 +183,7 @@ public class UserService implements UserDetailsService {
         return userRepository.findById(id).map(user -> {
             user.setActive(false);
             userRepository.save(user);
+            tokenRevocationCache.userDeactivated(id);
             return true;
         }).orElse(false);
     }
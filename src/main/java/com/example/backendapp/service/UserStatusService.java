@@ -0,0 +1,160 @@
+package com.example.backendapp.service;
+
+import com.example.backendapp.config.NodeLocal;
+import com.example.backendapp.entity.Activity;
+import com.example.backendapp.event.ActivityPersistedEvent;
+import com.example.backendapp.event.UserStatusChangedEvent;
+import com.example.backendapp.repository.ActivityRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latest known status per user, kept in memory so status reads never touch the activities table.
+ *
+ * The map is warmed at startup from one latest-row-per-user query and then advanced by committed
+ * activity writes. An update only replaces the entry if it is not older than what is already held,
+ * so out-of-order batches cannot move a user's status backwards.
+ *
+ * Collector writes double as heartbeats: a user with no activity for
+ * {@code presence.offline-after-seconds} is marked OFFLINE. Every change of status or current
+ * application is published as a {@link UserStatusChangedEvent}.
+ */
+@Service
+public class UserStatusService {
+    private static final Logger logger = LoggerFactory.getLogger(UserStatusService.class);
+
+    private static final int LOOKUP_CHUNK_SIZE = 1000;
+
+    @Autowired
+    private ActivityRepository activityRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${presence.offline-after-seconds:300}")
+    private long offlineAfterSeconds;
+
+    private final ConcurrentHashMap<Long, UserStatus> statuses = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            activityRepository.findLatestActivityPerUser().forEach(activity -> record(activity, lastSeen(activity)));
+            logger.info("Loaded latest status for {} users", statuses.size());
+        } catch (Exception e) {
+            logger.error("Could not warm the user status map; statuses will load on first read", e);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onActivityPersisted(ActivityPersistedEvent event) {
+        if (Boolean.TRUE.equals(event.getActivity().getTrackOnly())) {
+            return;
+        }
+        record(event.getActivity(), event.getLastSeenAt());
+    }
+
+    /**
+     * Returns the user's latest status. A user missing from the map (no activity yet, or a failed
+     * warm-up) is looked up once with an indexed top-1 query and then served from memory.
+     */
+    public Optional<UserStatus> getStatus(Long userId) {
+        UserStatus status = statuses.get(userId);
+        if (status != null) {
+            return Optional.of(status);
+        }
+        return activityRepository.findFirstByUserIdAndTrackOnlyFalseOrderByCreatedAtDesc(userId)
+            .map(activity -> record(activity, lastSeen(activity)));
+    }
+
+    /**
+     * Statuses for many users in one call; users with no recorded activity are left out. Users
+     * missing from the map are looked up together, as {@link #getStatus} does one at a time.
+     */
+    public Map<Long, UserStatus> getStatuses(Collection<Long> userIds) {
+        Map<Long, UserStatus> result = new LinkedHashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long userId : userIds) {
+            UserStatus status = statuses.get(userId);
+            result.put(userId, status);
+            if (status == null) {
+                missing.add(userId);
+            }
+        }
+        // Stays well under SQL Server's 2100 parameters per statement
+        for (int from = 0; from < missing.size(); from += LOOKUP_CHUNK_SIZE) {
+            List<Long> chunk = missing.subList(from, Math.min(from + LOOKUP_CHUNK_SIZE, missing.size()));
+            for (Activity activity : activityRepository.findLatestActivityForUsers(chunk)) {
+                UserStatus status = record(activity, lastSeen(activity));
+                if (status != null) {
+                    result.put(activity.getUserId(), status);
+                }
+            }
+        }
+        result.values().removeIf(Objects::isNull);
+        return result;
+    }
+
+    public void evict(Long userId) {
+        statuses.remove(userId);
+    }
+
+    @NodeLocal("this node's presence map")
+    @Scheduled(fixedRateString = "${presence.offline-check-ms:15000}")
+    public void detectOffline() {
+        LocalDateTime cutoff = LocalDateTime.now().minusSeconds(offlineAfterSeconds);
+        statuses.forEach((userId, current) -> {
+            if (current.status() != Activity.ActivityStatus.OFFLINE && current.lastActive().isBefore(cutoff)) {
+                UserStatus offline = new UserStatus(Activity.ActivityStatus.OFFLINE, current.lastActive(), null);
+                // A concurrent write wins: only replace the exact status that was judged stale
+                if (statuses.replace(userId, current, offline)) {
+                    eventPublisher.publishEvent(new UserStatusChangedEvent(userId, current, offline));
+                }
+            }
+        });
+    }
+
+    private UserStatus record(Activity activity, LocalDateTime lastSeen) {
+        if (activity.getUserId() == null || lastSeen == null) {
+            return null;
+        }
+        UserStatus candidate = new UserStatus(activity.getStatus(), lastSeen, activity.getApplicationName());
+        UserStatus[] previous = new UserStatus[1];
+        UserStatus result = statuses.compute(activity.getUserId(), (userId, current) -> {
+            previous[0] = current;
+            return current != null && candidate.lastActive().isBefore(current.lastActive()) ? current : candidate;
+        });
+        if (result == candidate && candidate.isTransitionFrom(previous[0])) {
+            eventPublisher.publishEvent(new UserStatusChangedEvent(activity.getUserId(), previous[0], candidate));
+        }
+        return result;
+    }
+
+    // A session row starts at createdAt but stays current until its end_time
+    private static LocalDateTime lastSeen(Activity activity) {
+        LocalDateTime createdAt = activity.getCreatedAt();
+        LocalDateTime endTime = activity.getEndTime();
+        return endTime != null && (createdAt == null || endTime.isAfter(createdAt)) ? endTime : createdAt;
+    }
+
+    public record UserStatus(Activity.ActivityStatus status, LocalDateTime lastActive, String applicationName) {
+
+        boolean isTransitionFrom(UserStatus previous) {
+            return previous == null
+                || previous.status() != status
+                || !Objects.equals(previous.applicationName(), applicationName);
+        }
+    }
+}
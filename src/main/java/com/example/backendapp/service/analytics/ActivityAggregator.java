@@ -0,0 +1,441 @@
+package com.example.backendapp.service.analytics;
+
+import com.example.backendapp.dto.analytics.ProductivityAnalyticsDTO;
+import com.example.backendapp.dto.analytics.WorkspaceAnalyticsDTO;
+import com.example.backendapp.entity.Activity;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Single-pass accumulator for the activity metrics behind the productivity and workspace analytics.
+ * Each row is visited once by {@link #accept(Activity)}; the totals are kept in primitive arrays
+ * indexed by day, hour of day, application id and workspace id, and the DTOs are built from them.
+ *
+ * Aggregators are mergeable: partial results built over disjoint sets of rows (for example one per
+ * chunk of users) combine through {@link #merge(ActivityAggregator)} into the same totals a single
+ * aggregator over all rows would produce.
+ */
+public class ActivityAggregator {
+
+    private static final int HOURS = 24;
+    private static final int MAX_PRESIZED_DAYS = 1024;
+    private static final String[] HOUR_LABELS = new String[HOURS];
+
+    static {
+        for (int hour = 0; hour < HOURS; hour++) {
+            HOUR_LABELS[hour] = String.format("%02d:00-%02d:00", hour, (hour + 1) % 24);
+        }
+    }
+
+    private final NameIndex applications = new NameIndex();
+    private final NameIndex workspaces = new NameIndex();
+    private final NameIndex categories = new NameIndex();
+
+    // Per-day accumulators, index = epochDay - baseDay
+    private long baseDay;
+    private boolean hasBaseDay;
+    private int[] dayRows;
+    private int[] dayActiveRows;
+    private long[] dayTotalSeconds;
+    private long[] dayActiveSeconds;
+
+    // Per-hour accumulators
+    private final int[] hourRows = new int[HOURS];
+    private final int[] hourActiveRows = new int[HOURS];
+
+    // Per-application and per-workspace accumulators
+    private long[] applicationSeconds = new long[16];
+    private int[] workspaceRows = new int[4];
+    private int[] workspaceActiveRows = new int[4];
+    private long[][] workspaceApplicationSeconds = new long[4][];
+    private BitSet[] workspaceApplicationsSeen = new BitSet[4];
+    private long[] categorySeconds = new long[8];
+
+    private long activeSeconds;
+    private long idleSeconds;
+    private long rowCount;
+
+    public ActivityAggregator() {
+        this.dayRows = new int[8];
+        this.dayActiveRows = new int[8];
+        this.dayTotalSeconds = new long[8];
+        this.dayActiveSeconds = new long[8];
+    }
+
+    /**
+     * Pre-sizes the per-day arrays for the queried window so a typical range never has to grow them.
+     */
+    public ActivityAggregator(LocalDateTime startDate, LocalDateTime endDate) {
+        long days = endDate.toLocalDate().toEpochDay() - startDate.toLocalDate().toEpochDay() + 1;
+        int capacity = (int) Math.max(1, Math.min(days, MAX_PRESIZED_DAYS));
+        this.dayRows = new int[capacity];
+        this.dayActiveRows = new int[capacity];
+        this.dayTotalSeconds = new long[capacity];
+        this.dayActiveSeconds = new long[capacity];
+        this.baseDay = startDate.toLocalDate().toEpochDay();
+        this.hasBaseDay = true;
+    }
+
+    public void accept(Activity activity) {
+        long seconds = activity.getDurationSeconds() != null ? activity.getDurationSeconds() : 0L;
+        Activity.ActivityStatus status = activity.getStatus();
+        boolean active = Activity.ActivityStatus.ACTIVE.equals(status);
+        LocalDateTime createdAt = activity.getCreatedAt();
+
+        rowCount++;
+        if (active) {
+            activeSeconds += seconds;
+        } else if (Activity.ActivityStatus.IDLE.equals(status)) {
+            idleSeconds += seconds;
+        }
+
+        int day = dayIndex(createdAt.toLocalDate().toEpochDay());
+        dayRows[day]++;
+        dayTotalSeconds[day] += seconds;
+        if (active) {
+            dayActiveRows[day]++;
+            dayActiveSeconds[day] += seconds;
+        }
+
+        int hour = createdAt.getHour();
+        hourRows[hour]++;
+        if (active) {
+            hourActiveRows[hour]++;
+        }
+
+        int application = -1;
+        if (activity.getApplicationName() != null) {
+            application = applications.indexOf(activity.getApplicationName());
+            applicationSeconds = ensureCapacity(applicationSeconds, application);
+            applicationSeconds[application] += seconds;
+        }
+
+        if (activity.getApplicationCategory() != null) {
+            int category = categories.indexOf(activity.getApplicationCategory());
+            categorySeconds = ensureCapacity(categorySeconds, category);
+            categorySeconds[category] += seconds;
+        }
+
+        if (activity.getWorkspaceType() != null) {
+            int workspace = workspaces.indexOf(activity.getWorkspaceType());
+            ensureWorkspaceCapacity(workspace);
+            workspaceRows[workspace]++;
+            if (active) {
+                workspaceActiveRows[workspace]++;
+            }
+            if (application >= 0) {
+                addWorkspaceApplicationSeconds(workspace, application, seconds);
+            }
+        }
+    }
+
+    /**
+     * Folds another aggregator's totals into this one. The other aggregator is left unchanged.
+     */
+    public ActivityAggregator merge(ActivityAggregator other) {
+        rowCount += other.rowCount;
+        activeSeconds += other.activeSeconds;
+        idleSeconds += other.idleSeconds;
+
+        for (int day = 0; day < other.dayRows.length; day++) {
+            if (other.dayRows[day] > 0) {
+                int target = dayIndex(other.baseDay + day);
+                dayRows[target] += other.dayRows[day];
+                dayActiveRows[target] += other.dayActiveRows[day];
+                dayTotalSeconds[target] += other.dayTotalSeconds[day];
+                dayActiveSeconds[target] += other.dayActiveSeconds[day];
+            }
+        }
+
+        for (int hour = 0; hour < HOURS; hour++) {
+            hourRows[hour] += other.hourRows[hour];
+            hourActiveRows[hour] += other.hourActiveRows[hour];
+        }
+
+        int[] applicationMapping = new int[other.applications.size()];
+        for (int application = 0; application < applicationMapping.length; application++) {
+            int target = applications.indexOf(other.applications.nameOf(application));
+            applicationSeconds = ensureCapacity(applicationSeconds, target);
+            applicationSeconds[target] += other.applicationSeconds[application];
+            applicationMapping[application] = target;
+        }
+
+        for (int category = 0; category < other.categories.size(); category++) {
+            int target = categories.indexOf(other.categories.nameOf(category));
+            categorySeconds = ensureCapacity(categorySeconds, target);
+            categorySeconds[target] += other.categorySeconds[category];
+        }
+
+        for (int workspace = 0; workspace < other.workspaces.size(); workspace++) {
+            int target = workspaces.indexOf(other.workspaces.nameOf(workspace));
+            ensureWorkspaceCapacity(target);
+            workspaceRows[target] += other.workspaceRows[workspace];
+            workspaceActiveRows[target] += other.workspaceActiveRows[workspace];
+            BitSet seen = other.workspaceApplicationsSeen[workspace];
+            if (seen != null) {
+                long[] perApplication = other.workspaceApplicationSeconds[workspace];
+                for (int application = seen.nextSetBit(0); application >= 0; application = seen.nextSetBit(application + 1)) {
+                    addWorkspaceApplicationSeconds(target, applicationMapping[application], perApplication[application]);
+                }
+            }
+        }
+        return this;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Seconds recorded in ACTIVE rows.
+     */
+    public long getActiveSeconds() {
+        return activeSeconds;
+    }
+
+    /**
+     * Seconds per application name; rows without one are not counted.
+     */
+    public Map<String, Long> toApplicationUsage() {
+        return applicationUsage();
+    }
+
+    public ProductivityAnalyticsDTO toProductivityAnalytics() {
+        return ProductivityAnalyticsDTO.builder()
+            .dailyProductivityScore(dailyProductivityScores())
+            .applicationUsageTime(applicationUsage())
+            .averageProductiveHoursPerDay(averageProductiveHours())
+            .totalProductiveMinutes(activeSeconds / 60)
+            .totalIdleMinutes(idleSeconds / 60)
+            .productivityByTimeOfDay(productivityByTimeOfDay())
+            .build();
+    }
+
+    public WorkspaceAnalyticsDTO toWorkspaceAnalytics() {
+        Map<String, Long> productiveTime = workspaceApplicationUsage("PRODUCTIVE");
+        Map<String, Long> localTime = workspaceApplicationUsage("LOCAL");
+
+        return WorkspaceAnalyticsDTO.builder()
+            .productiveWorkspaceTime(productiveTime)
+            .localWorkspaceTime(localTime)
+            .productiveVsLocalRatio(workspaceRatio(productiveTime, localTime))
+            .workspaceEfficiencyScores(workspaceEfficiency())
+            .applicationUsageByWorkspace(applicationUsageByWorkspace())
+            .build();
+    }
+
+    /**
+     * Seconds per application category (DEVELOPMENT, BROWSER, ...).
+     */
+    public Map<String, Long> toCategoryMix() {
+        Map<String, Long> mix = new HashMap<>();
+        for (int category = 0; category < categories.size(); category++) {
+            mix.put(categories.nameOf(category), categorySeconds[category]);
+        }
+        return mix;
+    }
+
+    /**
+     * The {@code limit} applications with the most recorded seconds, in descending order.
+     */
+    public LinkedHashMap<String, Long> topApplications(int limit) {
+        Integer[] order = new Integer[applications.size()];
+        for (int application = 0; application < order.length; application++) {
+            order[application] = application;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(applicationSeconds[b], applicationSeconds[a]));
+
+        LinkedHashMap<String, Long> top = new LinkedHashMap<>();
+        for (int i = 0; i < order.length && i < limit; i++) {
+            top.put(applications.nameOf(order[i]), applicationSeconds[order[i]]);
+        }
+        return top;
+    }
+
+    private Map<LocalDate, Double> dailyProductivityScores() {
+        Map<LocalDate, Double> scores = new LinkedHashMap<>();
+        for (int day = 0; day < dayRows.length; day++) {
+            if (dayRows[day] > 0) {
+                long total = dayTotalSeconds[day];
+                scores.put(LocalDate.ofEpochDay(baseDay + day),
+                    total > 0 ? (double) dayActiveSeconds[day] / total : 0.0);
+            }
+        }
+        return scores;
+    }
+
+    private Double averageProductiveHours() {
+        double hours = 0.0;
+        int days = 0;
+        for (int day = 0; day < dayActiveRows.length; day++) {
+            if (dayActiveRows[day] > 0) {
+                hours += dayActiveSeconds[day] / 3600.0;
+                days++;
+            }
+        }
+        return days > 0 ? hours / days : 0.0;
+    }
+
+    private Map<String, Double> productivityByTimeOfDay() {
+        Map<String, Double> productivityByHour = new LinkedHashMap<>();
+        for (int hour = 0; hour < HOURS; hour++) {
+            if (hourRows[hour] > 0) {
+                productivityByHour.put(HOUR_LABELS[hour], (double) hourActiveRows[hour] / hourRows[hour] * 100);
+            }
+        }
+        return productivityByHour;
+    }
+
+    private Map<String, Long> applicationUsage() {
+        Map<String, Long> usage = new HashMap<>();
+        for (int application = 0; application < applications.size(); application++) {
+            usage.put(applications.nameOf(application), applicationSeconds[application]);
+        }
+        return usage;
+    }
+
+    private Map<String, Long> workspaceApplicationUsage(String workspaceType) {
+        int workspace = workspaces.find(workspaceType);
+        return workspace < 0 ? new HashMap<>() : toApplicationMap(workspace);
+    }
+
+    private Map<String, Map<String, Long>> applicationUsageByWorkspace() {
+        Map<String, Map<String, Long>> usage = new HashMap<>();
+        for (int workspace = 0; workspace < workspaces.size(); workspace++) {
+            Map<String, Long> perApplication = toApplicationMap(workspace);
+            if (!perApplication.isEmpty()) {
+                usage.put(workspaces.nameOf(workspace), perApplication);
+            }
+        }
+        return usage;
+    }
+
+    private Map<String, Double> workspaceEfficiency() {
+        Map<String, Double> efficiency = new HashMap<>();
+        for (int workspace = 0; workspace < workspaces.size(); workspace++) {
+            efficiency.put(workspaces.nameOf(workspace),
+                (double) workspaceActiveRows[workspace] / workspaceRows[workspace]);
+        }
+        return efficiency;
+    }
+
+    private Double workspaceRatio(Map<String, Long> productiveTime, Map<String, Long> localTime) {
+        long totalProductive = productiveTime.values().stream().mapToLong(Long::longValue).sum();
+        long totalLocal = localTime.values().stream().mapToLong(Long::longValue).sum();
+        return totalLocal == 0 ? 0.0 : (double) totalProductive / totalLocal;
+    }
+
+    private Map<String, Long> toApplicationMap(int workspace) {
+        Map<String, Long> usage = new HashMap<>();
+        BitSet seen = workspaceApplicationsSeen[workspace];
+        if (seen == null) {
+            return usage;
+        }
+        long[] perApplication = workspaceApplicationSeconds[workspace];
+        for (int application = seen.nextSetBit(0); application >= 0; application = seen.nextSetBit(application + 1)) {
+            usage.put(applications.nameOf(application), perApplication[application]);
+        }
+        return usage;
+    }
+
+    private void addWorkspaceApplicationSeconds(int workspace, int application, long seconds) {
+        long[] perApplication = ensureCapacity(workspaceApplicationSeconds[workspace], application);
+        perApplication[application] += seconds;
+        workspaceApplicationSeconds[workspace] = perApplication;
+        if (workspaceApplicationsSeen[workspace] == null) {
+            workspaceApplicationsSeen[workspace] = new BitSet();
+        }
+        workspaceApplicationsSeen[workspace].set(application);
+    }
+
+    private int dayIndex(long epochDay) {
+        if (!hasBaseDay) {
+            baseDay = epochDay;
+            hasBaseDay = true;
+        }
+        long offset = epochDay - baseDay;
+        if (offset < 0) {
+            shiftDays((int) -offset);
+            offset = 0;
+        }
+        if (offset >= dayRows.length) {
+            int capacity = Math.max((int) offset + 1, dayRows.length * 2);
+            dayRows = Arrays.copyOf(dayRows, capacity);
+            dayActiveRows = Arrays.copyOf(dayActiveRows, capacity);
+            dayTotalSeconds = Arrays.copyOf(dayTotalSeconds, capacity);
+            dayActiveSeconds = Arrays.copyOf(dayActiveSeconds, capacity);
+        }
+        return (int) offset;
+    }
+
+    private void shiftDays(int days) {
+        int capacity = dayRows.length + days;
+        dayRows = shifted(dayRows, days, capacity);
+        dayActiveRows = shifted(dayActiveRows, days, capacity);
+        dayTotalSeconds = shifted(dayTotalSeconds, days, capacity);
+        dayActiveSeconds = shifted(dayActiveSeconds, days, capacity);
+        baseDay -= days;
+    }
+
+    private static int[] shifted(int[] source, int days, int capacity) {
+        int[] target = new int[capacity];
+        System.arraycopy(source, 0, target, days, source.length);
+        return target;
+    }
+
+    private static long[] shifted(long[] source, int days, int capacity) {
+        long[] target = new long[capacity];
+        System.arraycopy(source, 0, target, days, source.length);
+        return target;
+    }
+
+    private static long[] ensureCapacity(long[] array, int index) {
+        if (array == null) {
+            return new long[Math.max(16, index + 1)];
+        }
+        return index < array.length ? array : Arrays.copyOf(array, Math.max(index + 1, array.length * 2));
+    }
+
+    private void ensureWorkspaceCapacity(int workspace) {
+        if (workspace >= workspaceRows.length) {
+            int capacity = Math.max(workspace + 1, workspaceRows.length * 2);
+            workspaceRows = Arrays.copyOf(workspaceRows, capacity);
+            workspaceActiveRows = Arrays.copyOf(workspaceActiveRows, capacity);
+            workspaceApplicationSeconds = Arrays.copyOf(workspaceApplicationSeconds, capacity);
+            workspaceApplicationsSeen = Arrays.copyOf(workspaceApplicationsSeen, capacity);
+        }
+    }
+
+    /**
+     * Dense dictionary encoding of names so the accumulators can be plain arrays.
+     */
+    static final class NameIndex {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+
+        int indexOf(String name) {
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = names.size();
+                ids.put(name, id);
+                names.add(name);
+            }
+            return id;
+        }
+
+        int find(String name) {
+            Integer id = ids.get(name);
+            return id != null ? id : -1;
+        }
+
+        String nameOf(int id) {
+            return names.get(id);
+        }
+
+        int size() {
+            return names.size();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.backendapp.service.analytics.sketch;
+
+/**
+ * Count-Min sketch over weighted string keys.
+ *
+ * Error bounds: an estimate never undercounts, and with probability at least {@code 1 - e^-depth}
+ * it overcounts by at most {@code (e / width) * totalWeight}. With the defaults used for activity
+ * buckets (width 1024, depth 4) that is 0.27% of the total duration with 98% confidence.
+ * Sketches with the same dimensions merge by adding their counters.
+ */
+public class CountMinSketch {
+
+    private final int width;
+    private final int depth;
+    private final long[] counters;
+    private long totalWeight;
+
+    public CountMinSketch(int width, int depth) {
+        this.width = width;
+        this.depth = depth;
+        this.counters = new long[width * depth];
+    }
+
+    public void add(String key, long weight) {
+        long hash = SketchHashing.hash64(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int row = 0; row < depth; row++) {
+            counters[row * width + column(h1, h2, row)] += weight;
+        }
+        totalWeight += weight;
+    }
+
+    public long estimate(String key) {
+        long hash = SketchHashing.hash64(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[row * width + column(h1, h2, row)]);
+        }
+        return estimate;
+    }
+
+    public void merge(CountMinSketch other) {
+        if (other.width != width || other.depth != depth) {
+            throw new IllegalArgumentException("Cannot merge Count-Min sketches with different dimensions");
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += other.counters[i];
+        }
+        totalWeight += other.totalWeight;
+    }
+
+    public long getTotalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * Upper bound on the overcount of any single estimate (holds with probability {@code 1 - e^-depth}).
+     */
+    public long getErrorBound() {
+        return (long) Math.ceil(Math.E / width * totalWeight);
+    }
+
+    private int column(int h1, int h2, int row) {
+        // Kirsch-Mitzenmacher: derive each row's hash from two base hashes
+        return ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.backendapp.service.analytics.sketch;
+
+import java.util.*;
+
+/**
+ * Space-Saving heavy-hitters summary over weighted keys, holding at most {@code capacity} candidates.
+ *
+ * Any key whose weight exceeds {@code totalWeight / capacity} is guaranteed to be a candidate, and a
+ * candidate's recorded count overestimates its true weight by at most its recorded error. For ranges
+ * spanning several summaries, the union of their candidates contains every key with more than
+ * {@code 1 / capacity} of the range's total weight; the counts are then re-estimated from a merged
+ * {@link CountMinSketch}.
+ */
+public class HeavyHitters {
+
+    private final int capacity;
+    private final Map<String, long[]> counters = new HashMap<>();
+
+    public HeavyHitters(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void add(String key, long weight) {
+        long[] counter = counters.get(key);
+        if (counter != null) {
+            counter[0] += weight;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(key, new long[] {weight, 0});
+            return;
+        }
+
+        String minKey = null;
+        long minCount = Long.MAX_VALUE;
+        for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+            if (entry.getValue()[0] < minCount) {
+                minCount = entry.getValue()[0];
+                minKey = entry.getKey();
+            }
+        }
+        counters.remove(minKey);
+        counters.put(key, new long[] {minCount + weight, minCount});
+    }
+
+    public Set<String> candidates() {
+        return new HashSet<>(counters.keySet());
+    }
+}
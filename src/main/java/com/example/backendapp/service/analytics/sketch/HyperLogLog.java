@@ -0,0 +1,62 @@
+package com.example.backendapp.service.analytics.sketch;
+
+/**
+ * HyperLogLog distinct counter with {@code 2^precision} one-byte registers.
+ *
+ * Error bounds: the relative standard error is {@code 1.04 / sqrt(2^precision)}, i.e. about 1.6% at
+ * the default precision of 12 (4 KB per counter). Small cardinalities fall back to linear counting.
+ * Counters with the same precision merge by taking the register-wise maximum.
+ */
+public class HyperLogLog {
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public void add(String value) {
+        long hash = SketchHashing.hash64(value);
+        int register = (int) (hash >>> (64 - precision));
+        long remaining = hash << precision;
+        int rank = Math.min(Long.numberOfLeadingZeros(remaining), 64 - precision) + 1;
+        if (rank > registers[register]) {
+            registers[register] = (byte) rank;
+        }
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0.0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge HyperLogLog counters with different precision");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public double getRelativeStandardError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+}
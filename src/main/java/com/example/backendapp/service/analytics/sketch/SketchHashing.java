@@ -0,0 +1,25 @@
+package com.example.backendapp.service.analytics.sketch;
+
+/**
+ * 64-bit string hashing shared by the sketches: FNV-1a over the UTF-16 code units followed by the
+ * MurmurHash3 finalizer, which spreads the FNV output well enough for register and row selection.
+ */
+final class SketchHashing {
+
+    private SketchHashing() {
+    }
+
+    static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
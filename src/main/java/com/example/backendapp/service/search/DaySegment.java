@@ -0,0 +1,259 @@
+package com.example.backendapp.service.search;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Inverted index over one day of activities: window-title and process-name terms mapped to posting
+ * lists of document ordinals, plus per-document activity id, user id and timestamp for filtering.
+ *
+ * New documents go to a small mutable "live" part. {@link #merge()} seals the live part and folds it
+ * into the compact part (sorted term array with int postings, searchable by prefix through binary
+ * search) without blocking writers while the new compact part is built. Ordinals only grow, so the
+ * compact, sealing and live postings of one term are each sorted and never overlap.
+ */
+public class DaySegment {
+
+    public enum Field { TITLE, PROCESS }
+
+    private final LocalDate day;
+    private final Object lock = new Object();
+
+    private long[] activityIds = new long[256];
+    private long[] userIds = new long[256];
+    private long[] timestamps = new long[256];
+    private int documentCount;
+
+    private final EnumMap<Field, Compact> compact = new EnumMap<>(Field.class);
+    private EnumMap<Field, Map<String, IntList>> sealing;
+    private EnumMap<Field, Map<String, IntList>> live = emptyLive();
+    private boolean merging;
+
+    public DaySegment(LocalDate day) {
+        this.day = day;
+        for (Field field : Field.values()) {
+            compact.put(field, Compact.EMPTY);
+        }
+    }
+
+    public LocalDate getDay() {
+        return day;
+    }
+
+    public void add(long activityId, long userId, long epochSecond, String windowTitle, String processName) {
+        synchronized (lock) {
+            int ordinal = documentCount++;
+            if (ordinal == activityIds.length) {
+                activityIds = Arrays.copyOf(activityIds, ordinal * 2);
+                userIds = Arrays.copyOf(userIds, ordinal * 2);
+                timestamps = Arrays.copyOf(timestamps, ordinal * 2);
+            }
+            activityIds[ordinal] = activityId;
+            userIds[ordinal] = userId;
+            timestamps[ordinal] = epochSecond;
+            for (String term : Tokenizer.tokenize(windowTitle)) {
+                live.get(Field.TITLE).computeIfAbsent(term, t -> new IntList()).add(ordinal);
+            }
+            for (String term : Tokenizer.tokenize(processName)) {
+                live.get(Field.PROCESS).computeIfAbsent(term, t -> new IntList()).add(ordinal);
+            }
+        }
+    }
+
+    public int getDocumentCount() {
+        synchronized (lock) {
+            return documentCount;
+        }
+    }
+
+    public boolean hasLiveTerms() {
+        synchronized (lock) {
+            return live.values().stream().anyMatch(terms -> !terms.isEmpty());
+        }
+    }
+
+    /**
+     * Folds the live postings into the compact part. Writers keep appending to a fresh live part while
+     * the new compact part is built; readers see compact, sealing and live until the swap.
+     */
+    public void merge() {
+        EnumMap<Field, Map<String, IntList>> toSeal;
+        EnumMap<Field, Compact> base;
+        synchronized (lock) {
+            if (merging) {
+                return;
+            }
+            merging = true;
+            toSeal = live;
+            sealing = live;
+            live = emptyLive();
+            base = new EnumMap<>(compact);
+        }
+        try {
+            EnumMap<Field, Compact> merged = new EnumMap<>(Field.class);
+            for (Field field : Field.values()) {
+                merged.put(field, base.get(field).mergeWith(toSeal.get(field)));
+            }
+            synchronized (lock) {
+                compact.putAll(merged);
+            }
+        } finally {
+            synchronized (lock) {
+                sealing = null;
+                merging = false;
+            }
+        }
+    }
+
+    /**
+     * Documents matching every clause; each clause is a term (or prefix) looked up in the given fields.
+     */
+    public void search(List<Clause> clauses, Set<Long> userFilter, long fromEpochSecond, long toEpochSecond,
+                       Consumer<Match> matches) {
+        long[] ids;
+        long[] users;
+        long[] times;
+        int count;
+        BitSet result = null;
+        synchronized (lock) {
+            count = documentCount;
+            ids = activityIds;
+            users = userIds;
+            times = timestamps;
+            for (Clause clause : clauses) {
+                BitSet clauseDocs = new BitSet(count);
+                for (Field field : clause.fields()) {
+                    compact.get(field).collect(clause.term(), clause.prefix(), clauseDocs);
+                    if (sealing != null) {
+                        collectLive(sealing.get(field), clause, clauseDocs);
+                    }
+                    collectLive(live.get(field), clause, clauseDocs);
+                }
+                if (result == null) {
+                    result = clauseDocs;
+                } else {
+                    result.and(clauseDocs);
+                }
+                if (result.isEmpty()) {
+                    return;
+                }
+            }
+        }
+        if (result == null) {
+            return;
+        }
+        // Arrays are only ever replaced by larger copies, so ordinals below count stay valid outside the lock
+        for (int ordinal = result.nextSetBit(0); ordinal >= 0 && ordinal < count; ordinal = result.nextSetBit(ordinal + 1)) {
+            if (times[ordinal] < fromEpochSecond || times[ordinal] > toEpochSecond) {
+                continue;
+            }
+            if (!userFilter.isEmpty() && !userFilter.contains(users[ordinal])) {
+                continue;
+            }
+            matches.accept(new Match(ids[ordinal], users[ordinal], times[ordinal]));
+        }
+    }
+
+    private static void collectLive(Map<String, IntList> postings, Clause clause, BitSet target) {
+        if (clause.prefix()) {
+            postings.forEach((term, docs) -> {
+                if (term.startsWith(clause.term())) {
+                    docs.setBits(target);
+                }
+            });
+        } else {
+            IntList docs = postings.get(clause.term());
+            if (docs != null) {
+                docs.setBits(target);
+            }
+        }
+    }
+
+    private static EnumMap<Field, Map<String, IntList>> emptyLive() {
+        EnumMap<Field, Map<String, IntList>> parts = new EnumMap<>(Field.class);
+        for (Field field : Field.values()) {
+            parts.put(field, new HashMap<>());
+        }
+        return parts;
+    }
+
+    public record Clause(String term, boolean prefix, Set<Field> fields) {
+    }
+
+    public record Match(long activityId, long userId, long epochSecond) {
+    }
+
+    /**
+     * Immutable sorted terms with their postings; a prefix maps to a contiguous range of terms.
+     */
+    private static final class Compact {
+        static final Compact EMPTY = new Compact(new String[0], new int[0][]);
+
+        private final String[] terms;
+        private final int[][] postings;
+
+        Compact(String[] terms, int[][] postings) {
+            this.terms = terms;
+            this.postings = postings;
+        }
+
+        void collect(String term, boolean prefix, BitSet target) {
+            int index = Arrays.binarySearch(terms, term);
+            if (!prefix) {
+                if (index >= 0) {
+                    setBits(postings[index], target);
+                }
+                return;
+            }
+            for (int i = index >= 0 ? index : -index - 1; i < terms.length && terms[i].startsWith(term); i++) {
+                setBits(postings[i], target);
+            }
+        }
+
+        Compact mergeWith(Map<String, IntList> additions) {
+            if (additions.isEmpty()) {
+                return this;
+            }
+            TreeMap<String, int[]> mergedTerms = new TreeMap<>();
+            for (int i = 0; i < terms.length; i++) {
+                mergedTerms.put(terms[i], postings[i]);
+            }
+            // Additions always have higher ordinals than what is already compacted, so appending keeps order
+            additions.forEach((term, docs) -> mergedTerms.merge(term, docs.toArray(), (existing, added) -> {
+                int[] combined = Arrays.copyOf(existing, existing.length + added.length);
+                System.arraycopy(added, 0, combined, existing.length, added.length);
+                return combined;
+            }));
+            return new Compact(mergedTerms.keySet().toArray(new String[0]), mergedTerms.values().toArray(new int[0][]));
+        }
+
+        private static void setBits(int[] docs, BitSet target) {
+            for (int doc : docs) {
+                target.set(doc);
+            }
+        }
+    }
+
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void setBits(BitSet target) {
+            for (int i = 0; i < size; i++) {
+                target.set(values[i]);
+            }
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
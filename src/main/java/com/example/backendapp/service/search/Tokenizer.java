@@ -0,0 +1,42 @@
+package com.example.backendapp.service.search;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Splits window titles and process names into lower-case terms on any non letter/digit character.
+ * Single characters are dropped, and only the first {@value #MAX_TERMS} distinct terms of a field
+ * are kept so a pathological title cannot blow up the postings.
+ */
+public final class Tokenizer {
+
+    static final int MAX_TERMS = 64;
+
+    private Tokenizer() {
+    }
+
+    public static Set<String> tokenize(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null) {
+            return terms;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length() && terms.size() < MAX_TERMS; i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (i - start >= 2) {
+                    terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    public static String normalize(String term) {
+        return term.toLowerCase(Locale.ROOT);
+    }
+}
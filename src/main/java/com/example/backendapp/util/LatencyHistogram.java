@@ -0,0 +1,75 @@
+package com.example.backendapp.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two nanosecond buckets. Recording is a couple of adder
+ * increments, cheap enough for per-request hot paths; percentiles are bucket upper bounds, so they
+ * are accurate to within a factor of two.
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0L, nanos);
+        // Bucket i holds [2^(i-1), 2^i - 1]; bucket 0 holds zero
+        counts[64 - Long.numberOfLeadingZeros(value)].increment();
+        total.increment();
+        sumNanos.add(value);
+        maxNanos.accumulate(value);
+    }
+
+    public long getCount() {
+        return total.sum();
+    }
+
+    /**
+     * Upper bound (in nanoseconds) of the bucket holding the given quantile, e.g. 0.99.
+     */
+    public long percentileNanos(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts[i].sum();
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0L;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return i == 0 ? 0L : Math.min((1L << i) - 1, maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    public Map<String, Object> snapshot() {
+        long count = total.sum();
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("count", count);
+        view.put("meanNanos", count == 0 ? 0L : sumNanos.sum() / count);
+        view.put("p50Nanos", percentileNanos(0.50));
+        view.put("p99Nanos", percentileNanos(0.99));
+        view.put("p999Nanos", percentileNanos(0.999));
+        view.put("maxNanos", maxNanos.get());
+        return view;
+    }
+}
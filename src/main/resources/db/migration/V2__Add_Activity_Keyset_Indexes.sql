@@ -0,0 +1,7 @@
+-- Indexes for keyset pagination on /api/activities/all
+-- Rows are walked in (created_at, id) order, optionally restricted to one user, so both orders
+-- need a covering key that lets SQL Server seek to the cursor position instead of scanning.
+
+CREATE INDEX idx_activities_created_at_id ON activities(created_at DESC, id DESC);
+
+CREATE INDEX idx_activities_user_created_at_id ON activities(user_id, created_at DESC, id DESC);
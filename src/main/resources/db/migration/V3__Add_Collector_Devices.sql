@@ -0,0 +1,19 @@
+-- Enrolled collector machines and their HMAC signing keys (see DeviceSignatureFilter)
+-- previous_secret stays valid until previous_valid_until so requests signed just before a rotation
+-- still verify.
+
+CREATE TABLE collector_devices (
+    id BIGINT IDENTITY(1,1) PRIMARY KEY,
+    device_id VARCHAR(64) NOT NULL UNIQUE,
+    user_id BIGINT NOT NULL,
+    machine_name VARCHAR(255) NULL,
+    secret VARCHAR(255) NOT NULL,
+    previous_secret VARCHAR(255) NULL,
+    previous_valid_until DATETIME2 NULL,
+    active BIT NOT NULL DEFAULT 1,
+    enrolled_at DATETIME2 NOT NULL DEFAULT GETDATE(),
+    rotated_at DATETIME2 NULL,
+    CONSTRAINT fk_collector_devices_user_id FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_collector_devices_user_id ON collector_devices(user_id);
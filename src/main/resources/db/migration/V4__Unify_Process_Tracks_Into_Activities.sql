@@ -0,0 +1,75 @@
+-- Make activities the single event table for collector samples
+-- Each sample used to be written twice, once to activities and once to process_tracks. From now on
+-- it is one activities row with process_tracked = 1 and the process-track fields filled in, and
+-- process_tracks becomes a view over those rows, so the ProcessTrack read model and its queries are
+-- unchanged. The old table is kept as process_tracks_legacy until the fold has been checked.
+-- Tracks with no activity of their own are folded in with track_only = 1: they feed the view but
+-- stay out of activity reads, so summaries, analytics and exports see the same rows as before.
+
+ALTER TABLE activities ADD
+    process_tracked BIT NOT NULL CONSTRAINT df_activities_process_tracked DEFAULT 0,
+    track_only BIT NOT NULL CONSTRAINT df_activities_track_only DEFAULT 0,
+    process_category VARCHAR(255) NULL,
+    is_productive_app BIT NULL,
+    application_path VARCHAR(255) NULL;
+GO
+
+-- Pair each historical process track with the activity written for the same sample; sessionization
+-- merged both tables the same way, so pairs share user, process, window title and start time.
+-- Ranking on both sides keeps the pairing one-to-one.
+WITH candidates AS (
+    SELECT a.id AS activity_id, pt.id AS track_id,
+           ROW_NUMBER() OVER (PARTITION BY pt.id ORDER BY a.id) AS track_rank,
+           ROW_NUMBER() OVER (PARTITION BY a.id ORDER BY pt.id) AS activity_rank
+    FROM process_tracks pt
+    JOIN activities a
+      ON a.user_id = pt.user_id
+     AND a.process_name = pt.process_name
+     AND a.window_title = pt.window_title
+     AND a.start_time = pt.start_time
+)
+SELECT activity_id, track_id
+INTO #process_track_matches
+FROM candidates
+WHERE track_rank = 1 AND activity_rank = 1;
+
+UPDATE a
+SET process_tracked = 1,
+    process_category = pt.category,
+    is_productive_app = pt.is_productive_app,
+    application_path = pt.application_path
+FROM activities a
+JOIN #process_track_matches m ON m.activity_id = a.id
+JOIN process_tracks pt ON pt.id = m.track_id;
+
+-- Process tracks with no activity counterpart (posted to /api/process-tracking/log) become
+-- track-only rows of their own; rows of deleted users are not carried over
+INSERT INTO activities (
+    user_id, activity_type, description, application_name, workspace_type, duration_seconds,
+    created_at, idle_time_seconds, activity_status, application_category, process_id, process_name,
+    window_title, tamper_attempt, start_time, end_time, version,
+    process_tracked, track_only, process_category, is_productive_app, application_path)
+SELECT pt.user_id, 'PROCESS_MONITORING', 'Process monitoring: ' + pt.process_name, pt.process_name, 'LOCAL', pt.duration_seconds,
+       pt.start_time, 0, CASE WHEN pt.is_productive_app = 1 THEN 'ACTIVE' ELSE 'IDLE' END, ISNULL(pt.category, 'OTHER'), pt.process_id, pt.process_name,
+       pt.window_title, 0, pt.start_time, pt.end_time, 0,
+       1, 1, pt.category, pt.is_productive_app, pt.application_path
+FROM process_tracks pt
+WHERE NOT EXISTS (SELECT 1 FROM #process_track_matches m WHERE m.track_id = pt.id)
+  AND EXISTS (SELECT 1 FROM users u WHERE u.id = pt.user_id);
+
+DROP TABLE #process_track_matches;
+
+EXEC sp_rename 'process_tracks', 'process_tracks_legacy';
+GO
+
+CREATE VIEW process_tracks AS
+SELECT id, user_id, process_name, window_title, process_id, process_category AS category,
+       start_time, end_time, duration_seconds, is_productive_app, application_path
+FROM activities
+WHERE process_tracked = 1;
+GO
+
+-- Process analytics filter by user and start time and sum durations per category or process
+CREATE INDEX idx_activities_process_tracked_user_start ON activities(user_id, start_time)
+    INCLUDE (process_name, process_category, duration_seconds, is_productive_app)
+    WHERE process_tracked = 1;
@@ -0,0 +1,11 @@
+-- Leases for cluster-wide singleton jobs (see ClusterLeaseService)
+-- A node holds a lease while expires_at is in the future; fencing_token increases with every change
+-- of holder so a node that lost the lease can be stopped from writing.
+
+CREATE TABLE scheduler_leases (
+    lease_name VARCHAR(100) NOT NULL PRIMARY KEY,
+    owner_id VARCHAR(255) NOT NULL,
+    fencing_token BIGINT NOT NULL,
+    acquired_at DATETIME2 NOT NULL,
+    expires_at DATETIME2 NOT NULL
+);
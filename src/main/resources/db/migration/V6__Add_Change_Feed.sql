@@ -0,0 +1,17 @@
+-- Transactional outbox for downstream consumers (see ChangeFeedService)
+-- One row per activity or process track written, in the same transaction as the write; consumers
+-- read it in id order through /api/changes. Rows past the retention window are compacted.
+
+CREATE TABLE change_feed (
+    id BIGINT IDENTITY(1,1) PRIMARY KEY,
+    entity_type VARCHAR(32) NOT NULL,
+    entity_id BIGINT NOT NULL,
+    user_id BIGINT NOT NULL,
+    operation VARCHAR(16) NOT NULL,
+    duration_seconds BIGINT NULL,
+    end_time DATETIME2 NULL,
+    recorded_at DATETIME2 NOT NULL CONSTRAINT df_change_feed_recorded_at DEFAULT SYSUTCDATETIME()
+);
+
+-- Compaction deletes by age
+CREATE INDEX idx_change_feed_recorded_at ON change_feed(recorded_at);
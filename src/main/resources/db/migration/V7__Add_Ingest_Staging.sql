@@ -0,0 +1,24 @@
+-- Shared ingest work queue (see IngestStagingQueue), used with ingest.queue.mode=shared
+-- Ingest nodes append one row per sample; flush workers on any node claim chunks by stamping
+-- claim_token and claimed_until, write them to activities and delete them in the same transaction.
+-- Rows that keep failing stay behind with dead = 1 until they are purged.
+-- partition_key is the user id modulo ingest.staging.partitions; each partition is flushed by one
+-- node at a time, so a user's samples are sessionized in order on a single node.
+
+CREATE TABLE ingest_staging (
+    id BIGINT IDENTITY(1,1) PRIMARY KEY,
+    payload NVARCHAR(MAX) NOT NULL,
+    receipt_id VARCHAR(64) NULL,
+    partition_key INT NOT NULL CONSTRAINT df_ingest_staging_partition_key DEFAULT 0,
+    attempts INT NOT NULL CONSTRAINT df_ingest_staging_attempts DEFAULT 0,
+    dead BIT NOT NULL CONSTRAINT df_ingest_staging_dead DEFAULT 0,
+    enqueued_at DATETIME2 NOT NULL,
+    claim_token VARCHAR(64) NULL,
+    claimed_until DATETIME2 NULL
+);
+
+-- Receipts count their rows still staged
+CREATE INDEX idx_ingest_staging_receipt ON ingest_staging(receipt_id, dead) WHERE receipt_id IS NOT NULL;
+
+-- Claims read the oldest free rows of one partition
+CREATE INDEX idx_ingest_staging_partition ON ingest_staging(partition_key, dead, id) INCLUDE (claimed_until);
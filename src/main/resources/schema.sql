@@ -10,3 +10,60 @@ BEGIN
         created_at DATETIME2 NOT NULL DEFAULT GETDATE()
     );
 END
+
+IF NOT EXISTS (SELECT * FROM sys.objects WHERE object_id = OBJECT_ID(N'[dbo].[collector_devices]') AND type in (N'U'))
+BEGIN
+    CREATE TABLE collector_devices (
+        id BIGINT IDENTITY(1,1) PRIMARY KEY,
+        device_id VARCHAR(64) NOT NULL UNIQUE,
+        user_id BIGINT NOT NULL,
+        machine_name VARCHAR(255) NULL,
+        secret VARCHAR(255) NOT NULL,
+        previous_secret VARCHAR(255) NULL,
+        previous_valid_until DATETIME2 NULL,
+        active BIT NOT NULL DEFAULT 1,
+        enrolled_at DATETIME2 NOT NULL DEFAULT GETDATE(),
+        rotated_at DATETIME2 NULL
+    );
+END
+
+IF NOT EXISTS (SELECT * FROM sys.objects WHERE object_id = OBJECT_ID(N'[dbo].[scheduler_leases]') AND type in (N'U'))
+BEGIN
+    CREATE TABLE scheduler_leases (
+        lease_name VARCHAR(100) NOT NULL PRIMARY KEY,
+        owner_id VARCHAR(255) NOT NULL,
+        fencing_token BIGINT NOT NULL,
+        acquired_at DATETIME2 NOT NULL,
+        expires_at DATETIME2 NOT NULL
+    );
+END
+
+IF NOT EXISTS (SELECT * FROM sys.objects WHERE object_id = OBJECT_ID(N'[dbo].[change_feed]') AND type in (N'U'))
+BEGIN
+    CREATE TABLE change_feed (
+        id BIGINT IDENTITY(1,1) PRIMARY KEY,
+        entity_type VARCHAR(32) NOT NULL,
+        entity_id BIGINT NOT NULL,
+        user_id BIGINT NOT NULL,
+        operation VARCHAR(16) NOT NULL,
+        duration_seconds BIGINT NULL,
+        end_time DATETIME2 NULL,
+        recorded_at DATETIME2 NOT NULL DEFAULT SYSUTCDATETIME()
+    );
+    CREATE INDEX idx_change_feed_recorded_at ON change_feed(recorded_at);
+END
+
+IF NOT EXISTS (SELECT * FROM sys.objects WHERE object_id = OBJECT_ID(N'[dbo].[ingest_staging]') AND type in (N'U'))
+BEGIN
+    CREATE TABLE ingest_staging (
+        id BIGINT IDENTITY(1,1) PRIMARY KEY,
+        payload NVARCHAR(MAX) NOT NULL,
+        receipt_id VARCHAR(64) NULL,
+        attempts INT NOT NULL DEFAULT 0,
+        dead BIT NOT NULL DEFAULT 0,
+        enqueued_at DATETIME2 NOT NULL,
+        claim_token VARCHAR(64) NULL,
+        claimed_until DATETIME2 NULL
+    );
+    CREATE INDEX idx_ingest_staging_receipt ON ingest_staging(receipt_id, dead) WHERE receipt_id IS NOT NULL;
+END
@@ -0,0 +1,189 @@
+package com.example.backendapp;
+
+import com.example.backendapp.dto.analytics.ProductivityAnalyticsDTO;
+import com.example.backendapp.dto.analytics.WorkspaceAnalyticsDTO;
+import com.example.backendapp.entity.Activity;
+import com.example.backendapp.service.analytics.ActivityAggregator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the single-pass {@link ActivityAggregator} against the stream pipelines that
+ * /efficiency-metrics used to run (workspace analytics followed by productivity analytics).
+ *
+ * Run with: mvn test-compile exec:java -Dexec.mainClass=com.example.backendapp.ActivityAggregationBenchmark -Dexec.classpathScope=test
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class ActivityAggregationBenchmark {
+
+    private static final String[] APPLICATIONS = {
+        "code", "chrome", "teams", "outlook", "excel", "slack", "explorer", "spotify", "idea64", "firefox",
+        "winword", "powershell", "zoom", "notepad", "vlc", "steam", "powerpnt", "onenote", "cmd", "edge"
+    };
+    private static final String[] WORKSPACES = {"LOCAL", "PRODUCTIVE", "REMOTE"};
+
+    @Param({"10000", "100000", "1000000"})
+    private int rows;
+
+    private LocalDateTime startDate;
+    private LocalDateTime endDate;
+    private List<Activity> activities;
+
+    @Setup(Level.Trial)
+    public void generateActivities() {
+        Random random = new Random(42);
+        startDate = LocalDate.of(2025, 1, 1).atStartOfDay();
+        endDate = startDate.plusDays(30);
+        activities = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            Activity activity = new Activity();
+            activity.setUserId(1L);
+            activity.setApplicationName(APPLICATIONS[random.nextInt(APPLICATIONS.length)]);
+            activity.setWorkspaceType(WORKSPACES[random.nextInt(WORKSPACES.length)]);
+            activity.setStatus(random.nextInt(4) == 0 ? Activity.ActivityStatus.IDLE : Activity.ActivityStatus.ACTIVE);
+            activity.setDurationSeconds(60L);
+            activity.setCreatedAt(startDate.plusSeconds(random.nextInt(30 * 24 * 3600)));
+            activities.add(activity);
+        }
+    }
+
+    @Benchmark
+    public void streamPipelines(Blackhole blackhole) {
+        blackhole.consume(StreamPipelines.workspaces(activities));
+        blackhole.consume(StreamPipelines.productivity(activities));
+    }
+
+    @Benchmark
+    public void singlePassAggregator(Blackhole blackhole) {
+        ActivityAggregator aggregator = new ActivityAggregator(startDate, endDate);
+        for (Activity activity : activities) {
+            aggregator.accept(activity);
+        }
+        blackhole.consume(aggregator.toWorkspaceAnalytics());
+        blackhole.consume(aggregator.toProductivityAnalytics());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+            .include(ActivityAggregationBenchmark.class.getSimpleName())
+            .build();
+        new Runner(options).run();
+    }
+
+    /**
+     * The per-metric stream pipelines AnalyticsService ran before the aggregator, kept as the baseline.
+     */
+    static final class StreamPipelines {
+
+        static ProductivityAnalyticsDTO productivity(List<Activity> activities) {
+            return ProductivityAnalyticsDTO.builder()
+                .dailyProductivityScore(activities.stream()
+                    .collect(Collectors.groupingBy(
+                        activity -> activity.getCreatedAt().toLocalDate(),
+                        Collectors.collectingAndThen(
+                            Collectors.toList(),
+                            daily -> {
+                                long productive = activeSeconds(daily);
+                                long total = daily.stream().mapToLong(Activity::getDurationSeconds).sum();
+                                return total > 0 ? (double) productive / total : 0.0;
+                            }
+                        )
+                    )))
+                .applicationUsageTime(activities.stream()
+                    .filter(a -> a.getApplicationName() != null)
+                    .collect(Collectors.groupingBy(
+                        Activity::getApplicationName,
+                        Collectors.summingLong(Activity::getDurationSeconds)
+                    )))
+                .averageProductiveHoursPerDay(activities.stream()
+                    .filter(a -> Activity.ActivityStatus.ACTIVE.equals(a.getStatus()))
+                    .collect(Collectors.groupingBy(
+                        a -> a.getCreatedAt().toLocalDate(),
+                        Collectors.summingLong(Activity::getDurationSeconds)
+                    ))
+                    .values().stream()
+                    .mapToDouble(seconds -> seconds / 3600.0)
+                    .average()
+                    .orElse(0.0))
+                .totalProductiveMinutes(activeSeconds(activities) / 60)
+                .totalIdleMinutes(activities.stream()
+                    .filter(a -> Activity.ActivityStatus.IDLE.equals(a.getStatus()))
+                    .mapToLong(Activity::getDurationSeconds)
+                    .sum() / 60)
+                .productivityByTimeOfDay(byTimeOfDay(activities))
+                .build();
+        }
+
+        static WorkspaceAnalyticsDTO workspaces(List<Activity> activities) {
+            Map<String, Long> productiveTime = workspaceTime(activities, "PRODUCTIVE");
+            Map<String, Long> localTime = workspaceTime(activities, "LOCAL");
+            long totalProductive = productiveTime.values().stream().mapToLong(Long::longValue).sum();
+            long totalLocal = localTime.values().stream().mapToLong(Long::longValue).sum();
+
+            return WorkspaceAnalyticsDTO.builder()
+                .productiveWorkspaceTime(productiveTime)
+                .localWorkspaceTime(localTime)
+                .productiveVsLocalRatio(totalLocal == 0 ? 0.0 : (double) totalProductive / totalLocal)
+                .workspaceEfficiencyScores(activities.stream()
+                    .filter(a -> a.getWorkspaceType() != null)
+                    .collect(Collectors.groupingBy(
+                        Activity::getWorkspaceType,
+                        Collectors.averagingDouble(a ->
+                            Activity.ActivityStatus.ACTIVE.equals(a.getStatus()) ? 1.0 : 0.0)
+                    )))
+                .applicationUsageByWorkspace(activities.stream()
+                    .filter(a -> a.getApplicationName() != null && a.getWorkspaceType() != null)
+                    .collect(Collectors.groupingBy(
+                        Activity::getWorkspaceType,
+                        Collectors.groupingBy(
+                            Activity::getApplicationName,
+                            Collectors.summingLong(Activity::getDurationSeconds)
+                        )
+                    )))
+                .build();
+        }
+
+        private static long activeSeconds(List<Activity> activities) {
+            return activities.stream()
+                .filter(a -> Activity.ActivityStatus.ACTIVE.equals(a.getStatus()))
+                .mapToLong(Activity::getDurationSeconds)
+                .sum();
+        }
+
+        private static Map<String, Double> byTimeOfDay(List<Activity> activities) {
+            Map<String, Double> productivityByHour = new HashMap<>();
+            activities.stream()
+                .collect(Collectors.groupingBy(
+                    activity -> activity.getCreatedAt().getHour(),
+                    Collectors.averagingDouble(activity ->
+                        Activity.ActivityStatus.ACTIVE.equals(activity.getStatus()) ? 1.0 : 0.0)
+                ))
+                .forEach((hour, productivity) -> productivityByHour.put(
+                    String.format("%02d:00-%02d:00", hour, (hour + 1) % 24), productivity * 100));
+            return productivityByHour;
+        }
+
+        private static Map<String, Long> workspaceTime(List<Activity> activities, String workspaceType) {
+            return activities.stream()
+                .filter(a -> workspaceType.equals(a.getWorkspaceType()))
+                .collect(Collectors.groupingBy(
+                    Activity::getApplicationName,
+                    Collectors.summingLong(Activity::getDurationSeconds)
+                ));
+        }
+    }
+}
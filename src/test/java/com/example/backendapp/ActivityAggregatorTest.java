@@ -0,0 +1,105 @@
+package com.example.backendapp;
+
+import com.example.backendapp.dto.analytics.ProductivityAnalyticsDTO;
+import com.example.backendapp.dto.analytics.WorkspaceAnalyticsDTO;
+import com.example.backendapp.entity.Activity;
+import com.example.backendapp.service.analytics.ActivityAggregator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that {@link ActivityAggregator} produces the same analytics as the stream pipelines it
+ * replaced (kept in {@link ActivityAggregationBenchmark.StreamPipelines}), on a fixed dataset.
+ */
+public class ActivityAggregatorTest {
+
+    private static final String[] APPLICATIONS = {"code", "chrome", "teams", "outlook", "excel", "spotify", "cmd"};
+    private static final String[] WORKSPACES = {"LOCAL", "PRODUCTIVE", "REMOTE", null};
+    private static final Activity.ActivityStatus[] STATUSES = {
+        Activity.ActivityStatus.ACTIVE, Activity.ActivityStatus.ACTIVE, Activity.ActivityStatus.IDLE, Activity.ActivityStatus.OFFLINE
+    };
+
+    private LocalDateTime startDate;
+    private LocalDateTime endDate;
+    private List<Activity> activities;
+
+    @BeforeEach
+    public void generateActivities() {
+        Random random = new Random(2024);
+        startDate = LocalDate.of(2025, 3, 1).atStartOfDay();
+        endDate = startDate.plusDays(10);
+        activities = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Activity activity = new Activity();
+            activity.setUserId(1L + random.nextInt(5));
+            activity.setApplicationName(APPLICATIONS[random.nextInt(APPLICATIONS.length)]);
+            activity.setWorkspaceType(WORKSPACES[random.nextInt(WORKSPACES.length)]);
+            activity.setStatus(STATUSES[random.nextInt(STATUSES.length)]);
+            activity.setDurationSeconds((long) random.nextInt(600));
+            // Some rows fall before the pre-sized window so the day arrays have to shift
+            activity.setCreatedAt(startDate.minusDays(2).plusSeconds(random.nextInt(12 * 24 * 3600)));
+            activities.add(activity);
+        }
+    }
+
+    @Test
+    public void singlePassMatchesStreamPipelines() {
+        ActivityAggregator aggregator = new ActivityAggregator(startDate, endDate);
+        activities.forEach(aggregator::accept);
+
+        assertEquals(activities.size(), aggregator.getRowCount());
+        assertProductivityEquals(ActivityAggregationBenchmark.StreamPipelines.productivity(activities),
+            aggregator.toProductivityAnalytics());
+        assertWorkspacesEqual(ActivityAggregationBenchmark.StreamPipelines.workspaces(activities),
+            aggregator.toWorkspaceAnalytics());
+    }
+
+    @Test
+    public void mergedPartialsMatchStreamPipelines() {
+        ActivityAggregator merged = new ActivityAggregator();
+        // Uneven chunks with different first days and application orders, as per-user chunks would have
+        for (int from = 0; from < activities.size(); from += 1700) {
+            ActivityAggregator partial = new ActivityAggregator();
+            activities.subList(from, Math.min(from + 1700, activities.size())).forEach(partial::accept);
+            merged.merge(partial);
+        }
+
+        assertEquals(activities.size(), merged.getRowCount());
+        assertProductivityEquals(ActivityAggregationBenchmark.StreamPipelines.productivity(activities),
+            merged.toProductivityAnalytics());
+        assertWorkspacesEqual(ActivityAggregationBenchmark.StreamPipelines.workspaces(activities),
+            merged.toWorkspaceAnalytics());
+    }
+
+    private static void assertProductivityEquals(ProductivityAnalyticsDTO expected, ProductivityAnalyticsDTO actual) {
+        assertClose(expected.getDailyProductivityScore(), actual.getDailyProductivityScore());
+        assertEquals(expected.getApplicationUsageTime(), actual.getApplicationUsageTime());
+        assertEquals(expected.getAverageProductiveHoursPerDay(), actual.getAverageProductiveHoursPerDay(), 1e-9);
+        assertEquals(expected.getTotalProductiveMinutes(), actual.getTotalProductiveMinutes());
+        assertEquals(expected.getTotalIdleMinutes(), actual.getTotalIdleMinutes());
+        assertClose(expected.getProductivityByTimeOfDay(), actual.getProductivityByTimeOfDay());
+    }
+
+    private static void assertWorkspacesEqual(WorkspaceAnalyticsDTO expected, WorkspaceAnalyticsDTO actual) {
+        assertEquals(expected.getProductiveWorkspaceTime(), actual.getProductiveWorkspaceTime());
+        assertEquals(expected.getLocalWorkspaceTime(), actual.getLocalWorkspaceTime());
+        assertEquals(expected.getProductiveVsLocalRatio(), actual.getProductiveVsLocalRatio(), 1e-9);
+        assertClose(expected.getWorkspaceEfficiencyScores(), actual.getWorkspaceEfficiencyScores());
+        assertEquals(expected.getApplicationUsageByWorkspace(), actual.getApplicationUsageByWorkspace());
+    }
+
+    // Averages are summed in a different order, so the last bits may differ
+    private static <K> void assertClose(Map<K, Double> expected, Map<K, Double> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((key, value) -> assertEquals(value, actual.get(key), 1e-9, "Mismatch for " + key));
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.backendapp;
+
+import com.example.backendapp.service.AnalyticsResultCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Closed days are loaded once and merged from their buckets; today and partial days are always
+ * loaded, and a write drops only the bucket of the day it lands on.
+ */
+public class AnalyticsResultCacheTest {
+
+    private static final String ENDPOINT = AnalyticsResultCache.PRODUCTIVITY;
+    private static final Long USER = 3L;
+
+    private AnalyticsResultCache cache;
+    private List<LocalDateTime[]> loads;
+
+    @BeforeEach
+    public void setUp() {
+        cache = new AnalyticsResultCache();
+        ReflectionTestUtils.setField(cache, "maxEntries", 100);
+        ReflectionTestUtils.setField(cache, "maxDays", 31);
+        loads = new ArrayList<>();
+    }
+
+    @Test
+    public void closedDaysAreLoadedOnceAndTodayEveryTime() {
+        LocalDate today = LocalDate.now();
+        LocalDateTime start = today.minusDays(3).atStartOfDay();
+        LocalDateTime end = AnalyticsResultCache.endOfDay(today);
+
+        assertEquals(4L, count(start, end));
+        assertEquals(4, loads.size());
+
+        loads.clear();
+        assertEquals(4L, count(start, end));
+        assertEquals(1, loads.size());
+        assertEquals(today.atStartOfDay(), loads.get(0)[0]);
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void partialDaysAtTheEdgesAreNotCached() {
+        LocalDate first = LocalDate.now().minusDays(5);
+        LocalDateTime start = first.atTime(12, 30);
+        LocalDateTime end = first.plusDays(2).atTime(9, 0);
+
+        count(start, end);
+        assertEquals(3, loads.size());
+        assertEquals(start, loads.get(0)[0]);
+        assertEquals(AnalyticsResultCache.endOfDay(first), loads.get(0)[1]);
+        assertEquals(end, loads.get(2)[1]);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void writeDropsOnlyItsDay() {
+        LocalDate today = LocalDate.now();
+        LocalDateTime start = today.minusDays(3).atStartOfDay();
+        LocalDateTime end = AnalyticsResultCache.endOfDay(today.minusDays(1));
+        count(start, end);
+
+        cache.invalidate(USER, today.minusDays(2).atTime(15, 0), Set.of(ENDPOINT));
+        cache.invalidate(USER, today.minusDays(3).atTime(15, 0), Set.of(AnalyticsResultCache.PROCESS_ANALYTICS));
+
+        loads.clear();
+        count(start, end);
+        assertEquals(1, loads.size());
+        assertEquals(today.minusDays(2).atStartOfDay(), loads.get(0)[0]);
+    }
+
+    @Test
+    public void longWindowIsLoadedInOneQuery() {
+        LocalDateTime start = LocalDate.now().minusDays(60).atStartOfDay();
+        LocalDateTime end = LocalDateTime.now();
+
+        assertEquals(1L, count(start, end));
+        assertEquals(1, loads.size());
+        assertEquals(0, cache.size());
+    }
+
+    // Each load is one unit; the result is how many partials were merged
+    private Long count(LocalDateTime start, LocalDateTime end) {
+        return cache.get(ENDPOINT, USER, start, end,
+            (from, to) -> {
+                loads.add(new LocalDateTime[] {from, to});
+                return new long[] {1};
+            },
+            () -> new long[1],
+            (total, partial) -> total[0] += partial[0],
+            total -> total[0]);
+    }
+}
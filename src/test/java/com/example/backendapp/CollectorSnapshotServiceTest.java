@@ -0,0 +1,157 @@
+package com.example.backendapp;
+
+import com.example.backendapp.service.CollectorSnapshotService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Delta frames are applied to a copy of the device snapshot, which is kept only once ingest has
+ * accepted the samples; retried and rejected uploads must leave the snapshot as it was.
+ */
+public class CollectorSnapshotServiceTest {
+
+    private static final String DEVICE = "device-1";
+    private static final Long USER = 7L;
+
+    private CollectorSnapshotService service;
+
+    @BeforeEach
+    public void setUp() {
+        service = new CollectorSnapshotService();
+        ReflectionTestUtils.setField(service, "maxProcesses", 3);
+        ReflectionTestUtils.setField(service, "idleMinutes", 60L);
+    }
+
+    @Test
+    public void failedIngestDoesNotAdvanceTheSnapshot() {
+        apply(frame(0, true, List.of(opened("1", "code", "main.java")), List.of(), List.of()));
+
+        Map<String, Object> delta = frame(1, false, List.of(opened("2", "chrome", "docs")), List.of(), List.of("1"));
+        assertThrows(IllegalStateException.class, () -> service.apply(DEVICE, USER, List.of(delta), samples -> {
+            throw new IllegalStateException("ingest unavailable");
+        }));
+        assertEquals(0, service.getLastSequence(DEVICE));
+
+        // The retry of the same frame is applied, not skipped as a duplicate
+        List<Map<String, Object>> retried = apply(delta);
+        assertEquals(List.of("chrome"), processNames(retried));
+        assertEquals(1, service.getLastSequence(DEVICE));
+
+        // Once committed, the same frame is a duplicate
+        assertTrue(apply(delta).isEmpty());
+    }
+
+    @Test
+    public void replayedFullFrameIsSkipped() {
+        apply(inRun("run-1", frame(0, true, List.of(opened("1", "code", "main.java")), List.of(), List.of())));
+        apply(inRun("run-1", frame(1, false, List.of(opened("2", "chrome", "docs")), List.of(), List.of())));
+
+        List<Map<String, Object>> replayed = apply(inRun("run-1", frame(0, true, List.of(opened("9", "notepad", "old")), List.of(), List.of())));
+        assertTrue(replayed.isEmpty());
+        assertEquals(1, service.getLastSequence(DEVICE));
+        assertEquals(List.of("code", "chrome"), processNames(apply(inRun("run-1", frame(2, false, List.of(), List.of(), List.of())))));
+    }
+
+    @Test
+    public void restartedCollectorStartsOverFromItsFullFrame() {
+        apply(inRun("run-1", frame(1, true, List.of(opened("1", "code", "main.java")), List.of(), List.of())));
+        for (long sequence = 2; sequence <= 5; sequence++) {
+            apply(inRun("run-1", frame(sequence, false, List.of(), List.of(), List.of())));
+        }
+        assertEquals(5, service.getLastSequence(DEVICE));
+
+        // The collector restarts within the idle window and counts from 1 again under a new epoch
+        List<Map<String, Object>> restarted = service.apply(DEVICE, USER, List.of(
+            inRun("run-2", frame(1, true, List.of(opened("7", "teams", "standup")), List.of(), List.of())),
+            inRun("run-2", frame(2, false, List.of(opened("8", "chrome", "docs")), List.of(), List.of()))), Function.identity());
+        assertEquals(List.of("teams", "teams", "chrome"), processNames(restarted));
+        assertEquals(2, service.getLastSequence(DEVICE));
+
+        // A late delta of the old run no longer applies
+        assertThrows(CollectorSnapshotService.ResyncRequiredException.class,
+            () -> apply(inRun("run-1", frame(6, false, List.of(), List.of(), List.of()))));
+        assertEquals(2, service.getLastSequence(DEVICE));
+    }
+
+    @Test
+    public void collectorWithoutEpochRestartsWhenItsFullFrameGoesBackwards() {
+        apply(frame(1, true, List.of(opened("1", "code", "main.java")), List.of(), List.of()));
+        apply(frame(2, false, List.of(), List.of(), List.of()));
+        apply(frame(3, false, List.of(), List.of(), List.of()));
+
+        List<Map<String, Object>> restarted = apply(frame(1, true, List.of(opened("7", "teams", "standup")), List.of(), List.of()));
+        assertEquals(List.of("teams"), processNames(restarted));
+        assertEquals(1, service.getLastSequence(DEVICE));
+    }
+
+    @Test
+    public void unknownChangedProcessLeavesSnapshotUntouched() {
+        apply(frame(0, true, List.of(opened("1", "code", "main.java")), List.of(), List.of()));
+
+        // Closes 1 and opens 2 before reaching the change to a process the server never saw
+        Map<String, Object> inconsistent = frame(1, false, List.of(opened("2", "chrome", "docs")),
+            List.of(Map.of("processId", "5", "windowTitle", "new")), List.of("1"));
+        CollectorSnapshotService.ResyncRequiredException resync = assertThrows(CollectorSnapshotService.ResyncRequiredException.class,
+            () -> apply(inconsistent));
+        assertEquals(0, resync.getLastSequence());
+        assertEquals(0, service.getLastSequence(DEVICE));
+
+        List<Map<String, Object>> next = apply(frame(1, false, List.of(), List.of(Map.of("processId", "1", "windowTitle", "test.java")), List.of()));
+        assertEquals(1, next.size());
+        assertEquals("test.java", next.get(0).get("windowTitle"));
+    }
+
+    @Test
+    public void oversizedSnapshotIsRejectedWithoutLosingTheCurrentOne() {
+        apply(frame(0, true, List.of(opened("1", "code", "main.java")), List.of(), List.of()));
+
+        Map<String, Object> tooMany = frame(1, false,
+            List.of(opened("2", "a", ""), opened("3", "b", ""), opened("4", "c", "")), List.of(), List.of());
+        assertThrows(IllegalArgumentException.class, () -> apply(tooMany));
+        assertEquals(0, service.getLastSequence(DEVICE));
+        assertEquals(List.of("code"), processNames(apply(frame(1, false, List.of(), List.of(), List.of()))));
+    }
+
+    @Test
+    public void deltaWithoutSnapshotRequiresResync() {
+        CollectorSnapshotService.ResyncRequiredException resync = assertThrows(CollectorSnapshotService.ResyncRequiredException.class,
+            () -> apply(frame(4, false, List.of(opened("1", "code", "")), List.of(), List.of())));
+        assertEquals(-1, resync.getLastSequence());
+        assertEquals(-1, service.getLastSequence(DEVICE));
+    }
+
+    private List<Map<String, Object>> apply(Map<String, Object> frame) {
+        return service.apply(DEVICE, USER, List.of(frame), Function.identity());
+    }
+
+    private static Map<String, Object> inRun(String epoch, Map<String, Object> frame) {
+        frame.put("epoch", epoch);
+        return frame;
+    }
+
+    private static List<String> processNames(List<Map<String, Object>> samples) {
+        return samples.stream().map(sample -> (String) sample.get("processName")).toList();
+    }
+
+    private static Map<String, Object> opened(String processId, String processName, String windowTitle) {
+        return Map.of("processId", processId, "processName", processName, "windowTitle", windowTitle);
+    }
+
+    private static Map<String, Object> frame(long sequence, boolean full, List<Map<String, Object>> opened,
+                                             List<Map<String, Object>> changed, List<String> closed) {
+        Map<String, Object> frame = new HashMap<>();
+        frame.put("sequence", sequence);
+        frame.put("full", full);
+        frame.put("sampledAt", "2025-03-01T10:00:00");
+        frame.put("opened", opened);
+        frame.put("changed", changed);
+        frame.put("closed", closed);
+        return frame;
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.backendapp;
+
+import com.example.backendapp.service.IngestStagingQueue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the shared ingest queue against an embedded H2 database, where claims use SKIP LOCKED, with
+ * several workers claiming at once.
+ */
+public class IngestStagingQueueTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transaction;
+    private IngestStagingQueue queue;
+
+    @BeforeEach
+    public void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:ingest_staging;DB_CLOSE_DELAY=-1", "sa", "");
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transaction = new TransactionTemplate(transactionManager);
+        jdbcTemplate.execute("CREATE TABLE ingest_staging (" +
+            "id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+            "payload VARCHAR(4000) NOT NULL, " +
+            "receipt_id VARCHAR(64), " +
+            "partition_key INT DEFAULT 0 NOT NULL, " +
+            "attempts INT DEFAULT 0 NOT NULL, " +
+            "dead BOOLEAN DEFAULT FALSE NOT NULL, " +
+            "enqueued_at TIMESTAMP NOT NULL, " +
+            "claim_token VARCHAR(64), " +
+            "claimed_until TIMESTAMP)");
+
+        queue = new IngestStagingQueue();
+        ReflectionTestUtils.setField(queue, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(queue, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(queue, "claimTimeoutMillis", 60000L);
+        ReflectionTestUtils.setField(queue, "partitions", 1);
+        ReflectionTestUtils.invokeMethod(queue, "init");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.execute("DROP TABLE ingest_staging");
+    }
+
+    @Test
+    public void concurrentWorkersWriteEveryRowExactlyOnce() throws Exception {
+        List<String> payloads = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            payloads.add("row-" + i);
+        }
+        for (int i = 0; i < payloads.size(); i += 250) {
+            queue.append("receipt-" + (i / 250), rows(payloads.subList(i, i + 250)));
+        }
+
+        Map<String, AtomicInteger> written = new ConcurrentHashMap<>();
+        Map<String, AtomicInteger> chunksPerWorker = new ConcurrentHashMap<>();
+        ExecutorService workers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (int w = 0; w < 8; w++) {
+                running.add(workers.submit(() -> {
+                    while (true) {
+                        IngestStagingQueue.Claim claim = queue.claim(0, 50);
+                        if (claim.isEmpty()) {
+                            // Rows still claimed by another worker count as pending until it completes them
+                            if (queue.countPending() == 0) {
+                                return null;
+                            }
+                            Thread.sleep(1);
+                            continue;
+                        }
+                        assertTrue(claim.rows().size() <= 50);
+                        transaction.executeWithoutResult(status -> {
+                            claim.rows().forEach(row -> written.computeIfAbsent(row.payload(), key -> new AtomicInteger()).incrementAndGet());
+                            queue.complete(claim, claim.rows());
+                        });
+                        chunksPerWorker.computeIfAbsent(Thread.currentThread().getName(), key -> new AtomicInteger()).incrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> worker : running) {
+                worker.get();
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+
+        assertEquals(payloads.size(), written.size());
+        written.forEach((payload, count) -> assertEquals(1, count.get(), payload + " was written more than once"));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ingest_staging", Integer.class));
+        assertTrue(chunksPerWorker.size() > 1, "Only one worker ever got a chunk");
+    }
+
+    @Test
+    public void lateCompletionOfAnExpiredClaimRollsBack() throws Exception {
+        ReflectionTestUtils.setField(queue, "claimTimeoutMillis", 0L);
+        queue.append("receipt", rows(List.of("a", "b")));
+
+        IngestStagingQueue.Claim stale = queue.claim(0, 10);
+        assertEquals(2, stale.rows().size());
+        Thread.sleep(5);
+        IngestStagingQueue.Claim current = queue.claim(0, 10);
+        assertEquals(2, current.rows().size());
+        assertEquals(2, current.rows().get(0).attempts());
+
+        jdbcTemplate.execute("CREATE TABLE written (payload VARCHAR(64))");
+        try {
+            assertThrows(IngestStagingQueue.ClaimLostException.class, () -> transaction.executeWithoutResult(status -> {
+                stale.rows().forEach(row -> jdbcTemplate.update("INSERT INTO written VALUES (?)", row.payload()));
+                queue.complete(stale, stale.rows());
+            }));
+            assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM written", Integer.class));
+
+            transaction.executeWithoutResult(status -> {
+                current.rows().forEach(row -> jdbcTemplate.update("INSERT INTO written VALUES (?)", row.payload()));
+                queue.complete(current, current.rows());
+            });
+            assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM written", Integer.class));
+            assertEquals(0, queue.countPending());
+        } finally {
+            jdbcTemplate.execute("DROP TABLE written");
+        }
+    }
+
+    @Test
+    public void releasedRowsAreRetriedAndDeadLettersAreLeftAlone() {
+        queue.append("receipt", rows(List.of("flaky", "broken")));
+        IngestStagingQueue.Claim first = queue.claim(0, 10);
+        assertTrue(queue.claim(0, 10).isEmpty(), "Claimed rows must not be handed out twice");
+
+        queue.release(first, first.rows().get(0), false);
+        queue.release(first, first.rows().get(1), true);
+
+        IngestStagingQueue.Claim retry = queue.claim(0, 10);
+        assertEquals(1, retry.rows().size());
+        assertEquals("flaky", retry.rows().get(0).payload());
+        assertEquals(2, retry.rows().get(0).attempts());
+
+        int[] counts = queue.countByReceipt("receipt");
+        assertEquals(1, counts[0]);
+        assertEquals(1, counts[1]);
+        assertEquals(0, queue.purgeDeadLetters(LocalDateTime.now().minusHours(1)));
+        assertEquals(1, queue.purgeDeadLetters(LocalDateTime.now().plusSeconds(1)));
+    }
+
+    @Test
+    public void claimsStayWithinOnePartitionInOrder() {
+        ReflectionTestUtils.setField(queue, "partitions", 4);
+        queue.append("receipt", List.of(
+            new IngestStagingQueue.NewRow(1L, "user1-a"),
+            new IngestStagingQueue.NewRow(2L, "user2-a"),
+            new IngestStagingQueue.NewRow(5L, "user5-a"),
+            new IngestStagingQueue.NewRow(1L, "user1-b")));
+
+        assertEquals(Set.of(1, 2), new HashSet<>(queue.findClaimablePartitions()));
+        IngestStagingQueue.Claim claim = queue.claim(queue.partitionOf(1L), 10);
+        assertEquals(List.of("user1-a", "user5-a", "user1-b"), claim.rows().stream().map(IngestStagingQueue.StagedRow::payload).toList());
+        assertEquals(List.of(2), queue.findClaimablePartitions());
+        assertTrue(queue.claim(3, 10).isEmpty());
+    }
+
+    private static List<IngestStagingQueue.NewRow> rows(List<String> payloads) {
+        return payloads.stream().map(payload -> new IngestStagingQueue.NewRow(1L, payload)).toList();
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.backendapp;
+
+import com.example.backendapp.service.analytics.sketch.CountMinSketch;
+import com.example.backendapp.service.analytics.sketch.HeavyHitters;
+import com.example.backendapp.service.analytics.sketch.HyperLogLog;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProbabilisticSketchesTest {
+
+    @Test
+    public void countMinEstimatesStayWithinErrorBoundAcrossMergedBuckets() {
+        Random random = new Random(7);
+        Map<String, Long> exact = new HashMap<>();
+        CountMinSketch merged = new CountMinSketch(1024, 4);
+        Set<String> candidates = new HashSet<>();
+
+        // 24 hourly buckets with a skewed (Zipf-like) application mix
+        for (int hour = 0; hour < 24; hour++) {
+            CountMinSketch bucket = new CountMinSketch(1024, 4);
+            HeavyHitters heavyHitters = new HeavyHitters(64);
+            for (int i = 0; i < 5000; i++) {
+                String application = "app-" + (int) Math.floor(Math.pow(random.nextDouble(), 3) * 500);
+                long seconds = 1 + random.nextInt(120);
+                bucket.add(application, seconds);
+                heavyHitters.add(application, seconds);
+                exact.merge(application, seconds, Long::sum);
+            }
+            merged.merge(bucket);
+            candidates.addAll(heavyHitters.candidates());
+        }
+
+        long total = exact.values().stream().mapToLong(Long::longValue).sum();
+        assertEquals(total, merged.getTotalWeight());
+        for (Map.Entry<String, Long> entry : exact.entrySet()) {
+            long estimate = merged.estimate(entry.getKey());
+            assertTrue(estimate >= entry.getValue(), "Count-Min must never undercount");
+            assertTrue(estimate - entry.getValue() <= merged.getErrorBound(), "Overcount exceeds bound for " + entry.getKey());
+        }
+
+        // Every application above 1/capacity of the total must survive as a candidate
+        exact.forEach((application, seconds) -> {
+            if (seconds > total / 64) {
+                assertTrue(candidates.contains(application), application + " missing from heavy hitters");
+            }
+        });
+    }
+
+    @Test
+    public void hyperLogLogMergeMatchesUnionWithinThreeStandardErrors() {
+        HyperLogLog first = new HyperLogLog(12);
+        HyperLogLog second = new HyperLogLog(12);
+        for (int i = 0; i < 60000; i++) {
+            first.add("machine-" + i);
+        }
+        for (int i = 40000; i < 100000; i++) {
+            second.add("machine-" + i);
+        }
+        first.merge(second);
+
+        double relativeError = Math.abs(first.estimate() - 100000) / 100000.0;
+        assertTrue(relativeError <= 3 * first.getRelativeStandardError(), "Relative error " + relativeError);
+
+        HyperLogLog small = new HyperLogLog(12);
+        for (int i = 0; i < 50; i++) {
+            small.add("app-" + i);
+            small.add("app-" + i);
+        }
+        assertEquals(50, small.estimate(), 2);
+    }
+}
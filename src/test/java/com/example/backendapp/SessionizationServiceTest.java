@@ -0,0 +1,126 @@
+package com.example.backendapp;
+
+import com.example.backendapp.entity.Activity;
+import com.example.backendapp.repository.ActivityRepository;
+import com.example.backendapp.service.SessionizationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Which samples extend an open session row and which fall back to an insert. The repository is a
+ * mock; extendSession reports one updated row unless a test says otherwise.
+ */
+public class SessionizationServiceTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 3, 10);
+
+    private ActivityRepository activityRepository;
+    private SessionizationService sessionization;
+
+    @BeforeEach
+    public void setUp() {
+        activityRepository = mock(ActivityRepository.class);
+        when(activityRepository.extendSession(anyLong(), any(), anyLong(), anyLong())).thenReturn(1);
+        sessionization = new SessionizationService();
+        ReflectionTestUtils.setField(sessionization, "activityRepository", activityRepository);
+        ReflectionTestUtils.setField(sessionization, "enabled", true);
+        ReflectionTestUtils.setField(sessionization, "gapSeconds", 120L);
+    }
+
+    @Test
+    public void sampleWithinTheGapExtendsTheSession() {
+        sessionization.openActivity(row(1L, DAY.atTime(10, 0), DAY.atTime(10, 1)));
+
+        SessionizationService.Extension<Activity> extension =
+            sessionization.extendActivity(sample(DAY.atTime(10, 2), DAY.atTime(10, 3), 5L));
+
+        assertNotNull(extension);
+        assertEquals(120, extension.getAddedDurationSeconds());
+        assertEquals(5, extension.getAddedIdleSeconds());
+        assertEquals(DAY.atTime(10, 3), extension.getRow().getEndTime());
+        verify(activityRepository).extendSession(1L, DAY.atTime(10, 3), 180L, 5L);
+    }
+
+    @Test
+    public void sampleAfterTheGapStartsANewRow() {
+        sessionization.openActivity(row(1L, DAY.atTime(10, 0), DAY.atTime(10, 1)));
+
+        assertNull(sessionization.extendActivity(sample(DAY.atTime(10, 3, 1), DAY.atTime(10, 4), 0L)));
+        verify(activityRepository, never()).extendSession(anyLong(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void replayedSampleInsideTheSessionAddsNothing() {
+        sessionization.openActivity(row(1L, DAY.atTime(10, 0), DAY.atTime(10, 5)));
+
+        SessionizationService.Extension<Activity> extension =
+            sessionization.extendActivity(sample(DAY.atTime(10, 1), DAY.atTime(10, 2), 30L));
+
+        assertNotNull(extension);
+        assertEquals(0, extension.getAddedDurationSeconds());
+        assertEquals(0, extension.getAddedIdleSeconds());
+        assertEquals(DAY.atTime(10, 5), extension.getRow().getEndTime());
+    }
+
+    @Test
+    public void sampleEndingAfterMidnightStartsANewRow() {
+        sessionization.openActivity(row(1L, DAY.atTime(23, 58), DAY.atTime(23, 59)));
+
+        assertNull(sessionization.extendActivity(sample(DAY.atTime(23, 59, 30), DAY.plusDays(1).atTime(0, 0, 30), 0L)));
+        verify(activityRepository, never()).extendSession(anyLong(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void deletedSessionRowFallsBackToAnInsert() {
+        sessionization.openActivity(row(1L, DAY.atTime(10, 0), DAY.atTime(10, 1)));
+        when(activityRepository.extendSession(eq(1L), any(), anyLong(), anyLong())).thenReturn(0);
+
+        assertNull(sessionization.extendActivity(sample(DAY.atTime(10, 1), DAY.atTime(10, 2), 0L)));
+        assertEquals(0, sessionization.getOpenSessionCount());
+    }
+
+    @Test
+    public void sessionOpenedOnAnotherNodeIsExtendedInsteadOfDuplicated() {
+        when(activityRepository.findFirstByUserIdAndActivityTypeAndProcessNameAndWindowTitleAndTrackOnlyAndEndTimeGreaterThanEqualOrderByEndTimeDesc(
+                eq(7L), eq("APPLICATION"), eq("code"), eq("main.java"), eq(false), eq(DAY.atTime(10, 0))))
+            .thenReturn(Optional.of(row(4L, DAY.atTime(9, 50), DAY.atTime(10, 1))));
+
+        SessionizationService.Extension<Activity> extension =
+            sessionization.extendActivity(sample(DAY.atTime(10, 2), DAY.atTime(10, 3), 0L));
+
+        assertNotNull(extension);
+        assertEquals(4L, extension.getRow().getId());
+        assertEquals(120, extension.getAddedDurationSeconds());
+        assertEquals(1, sessionization.getOpenSessionCount());
+    }
+
+    private static Activity row(Long id, LocalDateTime start, LocalDateTime end) {
+        Activity row = sample(start, end, 0L);
+        row.setId(id);
+        row.setDurationSeconds(Duration.between(start, end).getSeconds());
+        return row;
+    }
+
+    private static Activity sample(LocalDateTime start, LocalDateTime end, long idleSeconds) {
+        Activity sample = new Activity();
+        sample.setUserId(7L);
+        sample.setActivityType("APPLICATION");
+        sample.setProcessName("code");
+        sample.setWindowTitle("main.java");
+        sample.setStartTime(start);
+        sample.setEndTime(end);
+        sample.setIdleTimeSeconds(idleSeconds);
+        return sample;
+    }
+}
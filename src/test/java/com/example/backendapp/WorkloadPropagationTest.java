@@ -0,0 +1,138 @@
+package com.example.backendapp;
+
+import com.example.backendapp.config.WorkloadClass;
+import com.example.backendapp.config.WorkloadContext;
+import com.example.backendapp.config.WorkloadRoutingDataSource;
+import com.example.backendapp.repository.ActivityRepository;
+import com.example.backendapp.service.CompositeAnalyticsExecutor;
+import com.example.backendapp.service.OrganizationAnalyticsService;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Checks that work fanned out to other threads queries through the caller's connection pool rather
+ * than the default one. Each pool points at its own in-memory H2 database, so the URL of the
+ * connection a task got tells which pool served it.
+ */
+public class WorkloadPropagationTest {
+
+    private WorkloadRoutingDataSource dataSource;
+
+    @BeforeEach
+    public void setUp() {
+        Map<WorkloadClass, HikariDataSource> classPools = new EnumMap<>(WorkloadClass.class);
+        for (WorkloadClass workloadClass : List.of(WorkloadClass.ANALYTICS, WorkloadClass.REPORTS)) {
+            classPools.put(workloadClass, pool(workloadClass.name().toLowerCase()));
+        }
+        dataSource = new WorkloadRoutingDataSource(pool("default"), classPools);
+        dataSource.afterPropertiesSet();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dataSource.destroy();
+        WorkloadContext.restore(null);
+    }
+
+    @Test
+    public void compositePartsQueryThroughTheCallersPool() {
+        CompositeAnalyticsExecutor executor = new CompositeAnalyticsExecutor();
+        ReflectionTestUtils.setField(executor, "deadlineMillis", 10000L);
+        ReflectionTestUtils.setField(executor, "maxConcurrentQueries", 4);
+        ReflectionTestUtils.setField(executor, "maxParallelPerRequest", 2);
+        ReflectionTestUtils.invokeMethod(executor, "init");
+
+        Map<String, Callable<?>> parts = new LinkedHashMap<>();
+        for (int i = 0; i < 4; i++) {
+            parts.put("part-" + i, this::poolOfNewConnection);
+        }
+
+        WorkloadContext.enter(WorkloadClass.REPORTS);
+        CompositeAnalyticsExecutor.CompositeResult fromReports = executor.run(parts);
+        fromReports.getResults().values().forEach(pool -> assertEquals("reports", pool));
+
+        // A caller outside any request (a scheduler, a test) still keeps analytics off the default pool
+        WorkloadContext.restore(null);
+        CompositeAnalyticsExecutor.CompositeResult untagged = executor.run(parts);
+        untagged.getResults().values().forEach(pool -> assertEquals("analytics", pool));
+        assertNull(WorkloadContext.current());
+    }
+
+    @Test
+    public void organizationChunksQueryThroughTheCallersPool() {
+        Queue<String> pools = new ConcurrentLinkedQueue<>();
+        Set<Thread> threads = Collections.synchronizedSet(new HashSet<>());
+        ActivityRepository activityRepository = mock(ActivityRepository.class);
+        when(activityRepository.streamActivitiesByUserIdsAndDateRange(any(), any(), any())).thenAnswer(invocation -> {
+            // The chunk's read-only transaction bound its connection when it began
+            Connection connection = DataSourceUtils.getConnection(dataSource);
+            pools.add(poolOf(connection));
+            threads.add(Thread.currentThread());
+            return Stream.empty();
+        });
+
+        OrganizationAnalyticsService service = new OrganizationAnalyticsService();
+        ReflectionTestUtils.setField(service, "activityRepository", activityRepository);
+        ReflectionTestUtils.setField(service, "transactionManager", new DataSourceTransactionManager(dataSource));
+        ReflectionTestUtils.setField(service, "parallelism", 4);
+        ReflectionTestUtils.setField(service, "chunkSize", 2);
+        ReflectionTestUtils.invokeMethod(service, "init");
+        try {
+            List<Long> userIds = LongStream.rangeClosed(1, 32).boxed().toList();
+            LocalDateTime end = LocalDateTime.of(2025, 3, 1, 0, 0);
+
+            WorkloadContext.enter(WorkloadClass.ANALYTICS);
+            service.analyzeUsers(userIds, end.minusDays(7), end, 5);
+            assertEquals(WorkloadClass.ANALYTICS, WorkloadContext.current());
+            assertEquals(16, pools.size());
+            assertTrue(pools.stream().allMatch("analytics"::equals), "Chunks used " + pools);
+            assertTrue(threads.stream().anyMatch(thread -> thread != Thread.currentThread()), "No chunk ran on a pool worker");
+
+            pools.clear();
+            WorkloadContext.enter(WorkloadClass.REPORTS);
+            service.analyzeUsers(userIds, end.minusDays(7), end, 5);
+            assertTrue(pools.stream().allMatch("reports"::equals), "Chunks used " + pools);
+        } finally {
+            ReflectionTestUtils.invokeMethod(service, "shutdown");
+        }
+    }
+
+    private String poolOfNewConnection() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            return poolOf(connection);
+        }
+    }
+
+    private static String poolOf(Connection connection) throws SQLException {
+        String url = connection.getMetaData().getURL();
+        return url.substring("jdbc:h2:mem:workload_".length(), url.indexOf(';') > 0 ? url.indexOf(';') : url.length());
+    }
+
+    private static HikariDataSource pool(String name) {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setJdbcUrl("jdbc:h2:mem:workload_" + name + ";DB_CLOSE_DELAY=-1");
+        pool.setUsername("sa");
+        pool.setPassword("");
+        pool.setPoolName("pool-" + name);
+        pool.setMaximumPoolSize(4);
+        return pool;
+    }
+}